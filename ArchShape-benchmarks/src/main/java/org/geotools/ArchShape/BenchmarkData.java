@@ -0,0 +1,55 @@
+package org.geotools.ArchShape;
+
+import java.util.Random;
+
+/**
+ * Deterministic location tags and descriptions for the benchmarks, shaped like ArchLocateR output
+ */
+final class BenchmarkData {
+
+    private static final String[] DESCRIPTIONS = {
+            "ceramic sherd", "charcoal", "post mold", "red brick fragment", "lithic flake",
+            "hearth feature", "nail", "glass bead", "bone fragment", "trench wall"
+    };
+
+    private BenchmarkData() {
+    }
+
+    static String[] pointTags(int size, long seed) {
+        Random random = new Random(seed);
+        String[] tags = new String[size];
+        for (int i = 0; i < size; i++) {
+            tags[i] = direction(random, "N", "S") + random.nextInt(200) + direction(random, "E", "W") + random.nextInt(200);
+        }
+        return tags;
+    }
+
+    static String[] lineTags(int size, long seed) {
+        Random random = new Random(seed);
+        String[] tags = new String[size];
+        for (int i = 0; i < size; i++) {
+            int n = random.nextInt(200);
+            tags[i] = direction(random, "N", "S") + n + "-" + (n + 2) + direction(random, "E", "W") + random.nextInt(200);
+        }
+        return tags;
+    }
+
+    static String[] polygonTags(int size, long seed) {
+        Random random = new Random(seed);
+        String[] tags = new String[size];
+        for (int i = 0; i < size; i++) {
+            int n = random.nextInt(200);
+            int e = random.nextInt(200);
+            tags[i] = direction(random, "N", "S") + n + "-" + (n + 2) + direction(random, "E", "W") + e + "-" + (e + 2);
+        }
+        return tags;
+    }
+
+    static String description(int i) {
+        return DESCRIPTIONS[i % DESCRIPTIONS.length];
+    }
+
+    private static String direction(Random random, String positive, String negative) {
+        return random.nextBoolean() ? positive : negative;
+    }
+}
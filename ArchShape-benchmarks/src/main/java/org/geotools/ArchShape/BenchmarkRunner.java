@@ -0,0 +1,31 @@
+package org.geotools.ArchShape;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached, so allocation rates (gc.alloc.rate.norm is bytes
+ * allocated per operation) are reported next to the timings. Results are also written to
+ * jmh-result.json for comparison between runs.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar [benchmark regex]
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        String include = args.length > 0 ? args[0] : "org\\.geotools\\.ArchShape\\..*Benchmark";
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-result.json")
+                .build();
+        new Runner(options).run();
+    }
+}
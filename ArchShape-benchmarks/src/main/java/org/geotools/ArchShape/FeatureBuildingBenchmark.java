@@ -0,0 +1,95 @@
+package org.geotools.ArchShape;
+
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.opengis.feature.simple.SimpleFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of wrapping already converted geometries into SimpleFeatures
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FeatureBuildingBenchmark {
+
+    @Param({"1000", "100000"})
+    int size;
+
+    private String[] pointTags;
+    private String[] lineTags;
+    private String[] polygonTags;
+    private Point[] points;
+    private LineString[] lines;
+    private Polygon[] polygons;
+    private int next;
+
+    private SimpleFeatureBuilder coordBuilder;
+    private SimpleFeatureBuilder lineBuilder;
+    private SimpleFeatureBuilder polygonBuilder;
+
+    @Setup
+    public void setUp() throws Exception {
+        LocalProjection siteDatum = new LocalProjection(-93.2650, 44.9778);
+        GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+
+        pointTags = BenchmarkData.pointTags(size, 1);
+        lineTags = BenchmarkData.lineTags(size, 2);
+        polygonTags = BenchmarkData.polygonTags(size, 3);
+        points = new Point[size];
+        lines = new LineString[size];
+        polygons = new Polygon[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = geometryFactory.createPoint(CSV2Shape.getCoordinateFromDatum(siteDatum, pointTags[i]));
+            lines[i] = CSV2Shape.getLineFromDatum(geometryFactory, siteDatum, lineTags[i]);
+            polygons[i] = CSV2Shape.getPolygonFromDatum(geometryFactory, siteDatum, polygonTags[i]);
+        }
+
+        coordBuilder = new SimpleFeatureBuilder(CSV2Shape.createCoordType());
+        lineBuilder = new SimpleFeatureBuilder(CSV2Shape.createLineType());
+        polygonBuilder = new SimpleFeatureBuilder(CSV2Shape.createPolygonType());
+    }
+
+    private int next() {
+        int i = next;
+        next = i + 1 == size ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public SimpleFeature addCoordinate() {
+        int i = next();
+        return CSV2Shape.addCoordinate(coordBuilder, points[i], pointTags[i], BenchmarkData.description(i));
+    }
+
+    @Benchmark
+    public SimpleFeature addLine() {
+        int i = next();
+        return CSV2Shape.addLine(lineBuilder, lines[i], lineTags[i], BenchmarkData.description(i));
+    }
+
+    @Benchmark
+    public SimpleFeature addPolygon() {
+        int i = next();
+        return CSV2Shape.addPolygon(polygonBuilder, polygons[i], polygonTags[i], BenchmarkData.description(i));
+    }
+}
@@ -0,0 +1,52 @@
+package org.geotools.ArchShape;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost per point of converting metre offsets to degrees, in batches, through LocalProjection
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProjectionBenchmark {
+
+    private static final int BATCH = 1024;
+
+    private LocalProjection projection;
+    private double[] offsets;
+    private double[] out;
+
+    @Setup
+    public void setUp() {
+        projection = new LocalProjection(-93.2650, 44.9778);
+        Random random = new Random(7);
+        offsets = new double[2 * BATCH];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = random.nextDouble() * 400 - 200;
+        }
+        out = new double[2 * BATCH];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public double[] projectBatch() {
+        projection.project(offsets, 0, out, 0, BATCH);
+        return out;
+    }
+}
@@ -0,0 +1,107 @@
+package org.geotools.ArchShape;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to write a whole polygon shapefile, either from a collection held in memory, streamed through
+ * StreamingShapefileWriter, or handed to a writer thread through QueuedFeatureSink (as conversion
+ * jobs do)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ShapefileWriteBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int size;
+
+    private SimpleFeatureType schema;
+    private SimpleFeature[] features;
+    private DefaultFeatureCollection collection;
+    private File dir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        LocalProjection siteDatum = new LocalProjection(-93.2650, 44.9778);
+        GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+        schema = CSV2Shape.createPolygonType();
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(schema);
+
+        String[] tags = BenchmarkData.polygonTags(size, 3);
+        features = new SimpleFeature[size];
+        collection = new DefaultFeatureCollection();
+        for (int i = 0; i < size; i++) {
+            features[i] = CSV2Shape.addPolygon(builder,
+                    CSV2Shape.getPolygonFromDatum(geometryFactory, siteDatum, tags[i]), tags[i], BenchmarkData.description(i));
+            collection.add(features[i]);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createDirectory() throws IOException {
+        dir = Files.createTempDirectory("archshape-bench").toFile();
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteDirectory() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void writeCollection() throws IOException {
+        CSV2Shape.writeShapeFile(new File(dir, "Polygon.shp"), schema, collection);
+    }
+
+    @Benchmark
+    public long writeStreaming() throws IOException {
+        StreamingShapefileWriter writer = new StreamingShapefileWriter(new File(dir, "Polygon.shp"), schema);
+        for (SimpleFeature feature : features) {
+            writer.add(feature);
+        }
+        writer.close();
+        return writer.getWrittenCount();
+    }
+
+    @Benchmark
+    public long writeQueued() throws IOException {
+        StreamingShapefileWriter writer = new StreamingShapefileWriter(new File(dir, "Polygon.shp"), schema);
+        QueuedFeatureSink queue = new QueuedFeatureSink(writer, "write Polygon.shp");
+        for (SimpleFeature feature : features) {
+            queue.add(feature);
+        }
+        queue.close();
+        return writer.getWrittenCount();
+    }
+}
@@ -0,0 +1,90 @@
+package org.geotools.ArchShape;
+
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of turning location tags into coordinates, lines and polygons. The dataset size controls
+ * how many distinct tags are cycled through.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TagParsingBenchmark {
+
+    @Param({"1000", "100000"})
+    int size;
+
+    private String[] points;
+    private String[] lines;
+    private String[] polygons;
+    private int next;
+
+    private LocalProjection siteDatum;
+    private GeometryFactory geometryFactory;
+    private LocationTagParser parser;
+    private GeometryCache cache;
+
+    @Setup
+    public void setUp() {
+        points = BenchmarkData.pointTags(size, 1);
+        lines = BenchmarkData.lineTags(size, 2);
+        polygons = BenchmarkData.polygonTags(size, 3);
+        siteDatum = new LocalProjection(-93.2650, 44.9778);
+        geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+        parser = new LocationTagParser();
+        cache = new GeometryCache(size);
+    }
+
+    private int next() {
+        int i = next;
+        next = i + 1 == size ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public LocationTagParser.Kind parseOnly() {
+        return parser.parse(polygons[next()]);
+    }
+
+    @Benchmark
+    public Coordinate coordinateFromDatum() {
+        return CSV2Shape.getCoordinateFromDatum(siteDatum, points[next()]);
+    }
+
+    @Benchmark
+    public LineString lineFromDatum() {
+        return CSV2Shape.getLineFromDatum(geometryFactory, siteDatum, lines[next()]);
+    }
+
+    @Benchmark
+    public Polygon polygonFromDatum() {
+        return CSV2Shape.getPolygonFromDatum(geometryFactory, siteDatum, polygons[next()]);
+    }
+
+    @Benchmark
+    public Geometry polygonFromCache() {
+        parser.parse(polygons[next()]);
+        return cache.get(geometryFactory, siteDatum, parser);
+    }
+}
@@ -0,0 +1,226 @@
+package org.geotools.ArchShape;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless command line entry point which converts many sites at once, without any dialogs.
+ *
+ * <p>The input is either a manifest csv file with one job per line (datum csv, tag csv, output
+ * directory; relative paths are resolved against the manifest's directory), or a directory in which
+ * every {@code <site>_datum.csv} is paired with {@code <site>_tags.csv}, or failing that with the field
+ * notes in {@code <site>_notes.txt}, and written back to the same directory. Jobs run concurrently on a fixed pool, one worker per core unless told otherwise.
+ * With --incremental, shapefiles left by an earlier incremental run are updated in place with only
+ * the rows that changed. With --fault-tolerant, bad rows are set aside in a reject file instead of
+ * stopping the job, and jobs commit and checkpoint as they go so that a rerun resumes an interrupted
+ * job. With --hilbert, the features of each shapefile are written in Hilbert curve order of their
+ * locations, which makes spatial indexes and window reads of the shapefiles faster. With --footprints,
+ * the units of the Polygon shapefile are also dissolved into a Footprint shapefile, and with
+ * --footprints-by-type only units of the same type are dissolved together. With --crs=code, such as
+ * --crs=EPSG:32615 or --crs=utm for the UTM zone of each site's datum, the shapefiles are written in that
+ * coordinate reference system instead of WGS 84 longitude and latitude. With --index, a
+ * {@link SpatialIndex} of the features is written next to the shapefiles for {@link SpatialQuery}. Each job leaves a JSON report of its metrics next to its shapefiles.
+ *
+ * <pre>
+ * BatchConverter [--incremental] [--fault-tolerant] [--hilbert] [--footprints | --footprints-by-type]
+ *                [--crs=&lt;code | utm&gt;] [--index] &lt;manifest.csv | directory&gt; [threads]
+ * </pre>
+ */
+public class BatchConverter {
+
+    static final String DATUM_SUFFIX = "_datum.csv";
+    static final String TAGS_SUFFIX = "_tags.csv";
+    static final String NOTES_SUFFIX = "_notes.txt";
+
+    //options shared with WatchDaemon and, without the leading dashes, with ConversionServer
+    static final List<String> OPTIONS = Arrays.asList("--incremental", "--fault-tolerant", "--hilbert",
+            "--footprints", "--footprints-by-type", "--index");
+    static final String CRS_OPTION = "--crs="; //followed by the code of the output CRS
+    static final String OPTIONS_USAGE = "[--incremental] [--fault-tolerant] [--hilbert] [--footprints | --footprints-by-type]"
+            + " [--crs=<code | utm>] [--index]";
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<String>();
+        List<String> arguments = new ArrayList<String>();
+        for (String arg : args) {
+            if (isOption(arg)) {
+                options.add(arg);
+            } else {
+                arguments.add(arg);
+            }
+        }
+        if (arguments.size() < 1 || arguments.size() > 2) {
+            System.out.println("Usage: BatchConverter " + OPTIONS_USAGE + " <manifest.csv | directory> [threads]");
+            System.exit(2);
+        }
+
+        File input = new File(arguments.get(0));
+        int threads = arguments.size() > 1 ? Integer.parseInt(arguments.get(1))
+                : Runtime.getRuntime().availableProcessors();
+
+        List<ConversionJob> jobs = input.isDirectory() ? scanDirectory(input) : readManifest(input);
+        if (jobs.isEmpty()) {
+            System.out.println("No conversion jobs found in " + input);
+            return;
+        }
+        for (ConversionJob job : jobs) {
+            configure(job, options);
+        }
+
+        int failed = runAll(jobs, threads);
+        System.out.println((jobs.size() - failed) + " of " + jobs.size() + " conversions succeeded");
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /**
+     * @param arg
+     * @return whether arg is one of {@link #OPTIONS} or a {@link #CRS_OPTION}
+     */
+    static boolean isOption(String arg) {
+        return OPTIONS.contains(arg) || (arg.startsWith(CRS_OPTION) && arg.length() > CRS_OPTION.length());
+    }
+
+    /**
+     * Apply command line options to a job
+     * @param job
+     * @param options some of {@link #OPTIONS}, and optionally a {@link #CRS_OPTION}
+     */
+    static void configure(ConversionJob job, Collection<String> options) {
+        job.setIncremental(options.contains("--incremental"));
+        job.setSpatialOrder(options.contains("--hilbert"));
+        if (options.contains("--fault-tolerant")) {
+            job.setRejectBadRows(true);
+            job.setCheckpointInterval(ConversionJob.DEFAULT_CHECKPOINT_INTERVAL);
+        }
+        boolean byType = options.contains("--footprints-by-type");
+        job.setFootprints(byType || options.contains("--footprints"), byType);
+        job.setIndexed(options.contains("--index"));
+        job.setOutputCrs(null);
+        for (String option : options) {
+            if (option.startsWith(CRS_OPTION)) {
+                job.setOutputCrs(option.substring(CRS_OPTION.length()));
+            }
+        }
+    }
+
+    /**
+     * Run every job on a pool of the given size and wait for all of them to finish
+     * @param jobs
+     * @param threads
+     * @return the number of jobs that failed
+     */
+    static int runAll(List<ConversionJob> jobs, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, jobs.size())));
+        try {
+            List<Future<File[]>> results = new ArrayList<Future<File[]>>(jobs.size());
+            for (ConversionJob job : jobs) {
+                results.add(pool.submit(job));
+            }
+
+            int failed = 0;
+            for (int i = 0; i < jobs.size(); i++) {
+                try {
+                    File[] written = results.get(i).get();
+                    ConversionJob job = jobs.get(i);
+                    System.out.println("Converted " + job + ": " + Arrays.toString(written)
+                            + (job.getUpdateSummary() == null ? "" : " " + job.getUpdateSummary())
+                            + (job.getGeometryCache() == null ? "" : " " + job.getGeometryCache()));
+                    System.out.println("  " + job.getMetrics() + ", report in " + job.getMetricsFile());
+                } catch (ExecutionException e) {
+                    failed++;
+                    System.out.println("Failed " + jobs.get(i) + ": " + e.getCause()
+                            + ", report in " + jobs.get(i).getMetricsFile());
+                }
+            }
+            return failed;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Pair every datum file in the directory with the tag file of the same site
+     * @param dir
+     * @return
+     */
+    static List<ConversionJob> scanDirectory(File dir) {
+        List<ConversionJob> jobs = new ArrayList<ConversionJob>();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return jobs;
+        }
+        Arrays.sort(files);
+
+        for (File datum : files) {
+            String name = datum.getName();
+            if (!datum.isFile() || !name.endsWith(DATUM_SUFFIX)) {
+                continue;
+            }
+            File tags = tagFileFor(datum);
+            if (tags.isFile()) {
+                jobs.add(new ConversionJob(datum, tags, dir));
+            } else {
+                System.out.println("Skipping " + datum + ": no matching " + tags.getName());
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * @param datum a {@code <site>_datum.csv} file
+     * @return the site's tag csv file, or its field notes if there is no tag csv file but there are notes
+     */
+    static File tagFileFor(File datum) {
+        String name = datum.getName();
+        String site = name.substring(0, name.length() - DATUM_SUFFIX.length());
+        File tags = new File(datum.getParentFile(), site + TAGS_SUFFIX);
+        File notes = new File(datum.getParentFile(), site + NOTES_SUFFIX);
+        return !tags.isFile() && notes.isFile() ? notes : tags;
+    }
+
+    /**
+     * Read a manifest of jobs. Each non blank line holds a datum csv, a tag csv and an output directory.
+     * Lines starting with # are comments.
+     * @param manifest
+     * @return
+     * @throws IOException
+     */
+    static List<ConversionJob> readManifest(File manifest) throws IOException {
+        List<ConversionJob> jobs = new ArrayList<ConversionJob>();
+        File base = manifest.getAbsoluteFile().getParentFile();
+
+        BufferedReader reader = new BufferedReader(new FileReader(manifest));
+        try {
+            int lineNumber = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lineNumber++;
+                if (line.trim().length() == 0 || line.trim().startsWith("#")) {
+                    continue;
+                }
+                String tokens[] = line.split("\\,");
+                if (tokens.length < 3) {
+                    throw new IOException(manifest + ":" + lineNumber + ": expected datum csv, tag csv and output directory");
+                }
+                jobs.add(new ConversionJob(resolve(base, tokens[0]), resolve(base, tokens[1]), resolve(base, tokens[2])));
+            }
+        } finally {
+            reader.close();
+        }
+        return jobs;
+    }
+
+    private static File resolve(File base, String path) {
+        File file = new File(path.trim().replace("\"", ""));
+        return file.isAbsolute() ? file : new File(base, file.getPath());
+    }
+}
@@ -2,14 +2,16 @@ package org.geotools.ArchShape;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.StringTokenizer;
-import org.apache.commons.lang3.StringUtils;
 
 import org.geotools.data.DataUtilities;
 import org.geotools.data.DefaultTransaction;
@@ -20,9 +22,9 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.data.simple.SimpleFeatureStore;
 import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.SchemaException;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
-import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.swing.data.JFileDataStoreChooser;
 import org.opengis.feature.simple.SimpleFeature;
@@ -33,11 +35,6 @@ import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
 
-import net.sf.geographiclib.Geodesic;
-import net.sf.geographiclib.GeodesicData;
-import net.sf.geographiclib.GeodesicLine;
-import net.sf.geographiclib.GeodesicMask;
-
 /**
  * This class reads a datum coordinate and relational location tags (following the format N1E1) from a comma separated values (CSV) file
  * 	 and converts them into true coordinates based on their relationship to the datum coordinate.
@@ -46,8 +43,9 @@ import net.sf.geographiclib.GeodesicMask;
  */
 public class CSV2Shape {
 	
-	private static org.locationtech.jts.geom.Coordinate siteDatum; //the datum point of the site, which all other points are defined in relation to
-	private static final double conversion = 111319.5; //the conversion of coordinate degrees to meters
+    //bytes of the tag file parsed by each task, and held as features at once by one conversion
+    static final int FEATURE_CHUNK_SIZE = 256 * 1024;
+    static final long FEATURE_BYTES_IN_FLIGHT = 4L * 1024 * 1024;
 
 	/**
 	 * Open a GUI window to allow the user to input a csv files containing their datum coordinate
@@ -59,85 +57,138 @@ public class CSV2Shape {
             return;
         }
         
+        File datumFile = file;
+
+        //Now, open another GUI window to allow the user to input file containing relational location tags,
+        //either a csv file or the field notes themselves as text
+        JFileDataStoreChooser tagChooser = new JFileDataStoreChooser(new String[] {"csv", "txt"});
+        file = tagChooser.showOpenDialog(null) == JFileDataStoreChooser.APPROVE_OPTION ? tagChooser.getSelectedFile() : null;
+        
+        //if file is empty, stop
+        if (file == null) {
+            return;
+        }
+        
         /*
-         * Use the DataUtilities class to create a FeatureType that will describe the data in the shapefile.
-         * In this case, the shapefile will include a coordinate, a description ("point type") and a location tag ("excCoord").
+         * Choose the new shapefiles--one for each type--before reading, so that each can be written
+         * on its own thread while the tag file is still being parsed
          */
-        final SimpleFeatureType COORD = DataUtilities.createType("Location",
-                "the_geom:Point:srid=4326," + // <- the geometry attribute: Point type
+        File[] shapefiles = new File[] {
+        		getNewShapeFile(file, createCoordType().getTypeName()),
+        		getNewShapeFile(file, createLineType().getTypeName()),
+        		getNewShapeFile(file, createPolygonType().getTypeName())
+        };
+        
+        try {
+        	new ConversionJob(datumFile, file, shapefiles).call();
+        } catch (IOException exception) {
+        	exception.printStackTrace();
+        }
+
+        System.exit(0); // success!
+    }
+    
+    /**
+     * Use the DataUtilities class to create a FeatureType that will describe the data in the shapefile.
+     * In this case, the shapefile will include a coordinate, a description ("point type") and a location tag ("excCoord").
+     * @return
+     * @throws SchemaException
+     */
+    static SimpleFeatureType createCoordType() throws SchemaException {
+    	return withCrs(DataUtilities.createType("Location",
+                "the_geom:Point," + // <- the geometry attribute: Point type
         		"point type:String," +
                 "excCoord:String"
-        );
-        
-        /*
-         * Use the DataUtilities class to create a FeatureType that will describe the data in the shapefile.
-         * In this case, the shapefile will include a line, a description ("line type") and a location tag ("excCoord").
-         */
-        final SimpleFeatureType LINE = DataUtilities.createType("Line", 
-        		"the_geom:LineString:srid=32615," + 
+        ), 4326);
+    }
+    
+    /**
+     * Use the DataUtilities class to create a FeatureType that will describe the data in the shapefile.
+     * In this case, the shapefile will include a line, a description ("line type") and a location tag ("excCoord").
+     * @return
+     * @throws SchemaException
+     */
+    static SimpleFeatureType createLineType() throws SchemaException {
+    	return withCrs(DataUtilities.createType("Line", 
+        		"the_geom:LineString," + 
         		"line type:String," + 
         		"excCoord:String"
-        );
-        
-        /*
-         * Use the DataUtilities class to create a FeatureType that will describe the data in the shapefile.
-         * In this case, the shapefile will include a polygon, a description ("type") and a location tag ("excCoord").
-         */
-        final SimpleFeatureType POLYGON = DataUtilities.createType("Polygon", 
-        		"the_geom:Polygon:srid=32615," + 
+        ), 4326); //the features are built in longitudes and latitudes, as points are
+    }
+    
+    /**
+     * Use the DataUtilities class to create a FeatureType that will describe the data in the shapefile.
+     * In this case, the shapefile will include a polygon, a description ("type") and a location tag ("excCoord").
+     * @return
+     * @throws SchemaException
+     */
+    static SimpleFeatureType createPolygonType() throws SchemaException {
+    	return withCrs(DataUtilities.createType("Polygon", 
+        		"the_geom:Polygon," + 
         		"type:String," + 
         		"excCoord:String"
-        );
-        
-        /*
-         * We create a FeatureCollection into which we will put each Feature created from a record
-         * in the input csv data file
-         * One collection for each type of shapefile feature. All features of that type will be stored in this FeatureCollection
-         */
-        DefaultFeatureCollection coordCollection = new DefaultFeatureCollection();
-        DefaultFeatureCollection lineCollection = new DefaultFeatureCollection();
-        DefaultFeatureCollection polygonCollection = new DefaultFeatureCollection();
-        
-        /*
-         * GeometryFactory will be used to create the geometry attribute of each feature (a Point
-         * object for the location, or a line object, or a polygon)
-         */
-        org.locationtech.jts.geom.GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
-
-        /*
-         * These objects give the program instructions to build the feature, based on the SimpleFeatureType from above
-         */
-        SimpleFeatureBuilder coordFeatureBuilder = new SimpleFeatureBuilder(COORD);
-        SimpleFeatureBuilder lineFeatureBuilder = new SimpleFeatureBuilder(LINE);
-        SimpleFeatureBuilder polygonFeatureBuilder = new SimpleFeatureBuilder(POLYGON);
-
+        ), 4326);
+    }
+    
+    /**
+     * Set the CRS of a FeatureType from the embedded well known text rather than with an ":srid=" in its
+     * spec, which would look the code up in the EPSG database the first time a conversion runs.
+     * @param type
+     * @param srid
+     * @return
+     * @throws SchemaException
+     */
+    static SimpleFeatureType withCrs(SimpleFeatureType type, int srid) throws SchemaException {
+    	try {
+    		return SimpleFeatureTypeBuilder.retype(type, EmbeddedCrs.forSrid(srid));
+    	} catch (org.opengis.referencing.FactoryException e) {
+    		throw new SchemaException("Cannot set the CRS of " + type.getTypeName() + " to EPSG:" + srid, e);
+    	}
+    }
+    
+    /**
+     * Reads the datum csv file, saving each datum to the coordinates sink as "N0E0".
+     * The file may list the datums of several sites, each named by its label.
+     * @param file
+     * @param geometryFactory
+     * @param coordFeatureBuilder
+     * @param coordSink
+     * @return the datum of every site in the file
+     * @throws IOException
+     */
+    static DatumRegistry readDatumFile(File file, 
+    		org.locationtech.jts.geom.GeometryFactory geometryFactory,
+    		SimpleFeatureBuilder coordFeatureBuilder,
+    		FeatureSink coordSink) throws IOException {
+    	DatumRegistry datums = new DatumRegistry();
+    	
         //To read in the file
         BufferedReader reader = new BufferedReader(new FileReader(file));
-        
-        //Retrieve datum coordinate values
         try {
             /* First line of the data file is the header */
             String line = reader.readLine();
             System.out.println("Header: " + line);
 
             //Loop through all lines
+            CsvFields tokens = new CsvFields();
             for (line = reader.readLine(); line != null; line = reader.readLine()) {
                 if (line.trim().length() > 0) { // skip blank lines
-                    String tokens[] = line.split("\\,");
+                    tokens.split(line);
 
                     //Assumes table contains three columns: latitude, longitude, and label
                     //TODO: make this more flexible
-                    double latitude = Double.parseDouble(tokens[0].replaceAll("\"", ""));
-                    double longitude = Double.parseDouble(tokens[1].replaceAll("\"", ""));
-                    String label = tokens[2].replaceAll("\"", "");
+                    double latitude = Double.parseDouble(tokens.get(0).trim());
+                    double longitude = Double.parseDouble(tokens.get(1).trim());
+                    String label = tokens.get(2);
                     
                     /* Longitude (= x coord) first ! */
-                    //Retrieve datum coordinate, the only one in this file
-                    siteDatum = new org.locationtech.jts.geom.Coordinate(longitude, latitude);
+                    //Retrieve datum coordinate and register it under the site's label
+                    org.locationtech.jts.geom.Coordinate siteDatum = new org.locationtech.jts.geom.Coordinate(longitude, latitude);
+                    datums.register(label, siteDatum);
                     org.locationtech.jts.geom.Point point = geometryFactory.createPoint(siteDatum);
 
                     //Save datum coordinate to the coordinates collection
-                    coordCollection.add(addCoordinate(coordFeatureBuilder, point, "N0E0", label));
+                    coordSink.add(addCoordinate(coordFeatureBuilder, point, "N0E0", label));
                 }
             }
             
@@ -145,52 +196,123 @@ public class CSV2Shape {
             reader.close();
         }
         
-        
-        //Now, open another GUI window to allow the user to input file containing relational location tags
-        file = JFileDataStoreChooser.showOpenFile("csv", null);
-        
-        //if file is empty, stop
-        if (file == null) {
-            return;
+        if (datums.size() == 0) {
+        	throw new IOException("No datum coordinate found in " + file);
         }
-        
-        //read file
-        reader = new BufferedReader(new FileReader(file));
-        try {
-            /* First line of the data file is the header */
-            String line = reader.readLine();
-            System.out.println("Header: " + line);
-
-            //read all lines
-            for (line = reader.readLine(); line != null; line = reader.readLine()) {
-                if (line.trim().length() > 0) { // skip blank lines
-                    String tokens[] = line.split("\\,");
-
-                    //Assumes that table contains two columns: a relational location tag and a description of the object found there
-                    //TODO: Make this more flexible
-                    String excCoord = tokens[1];
-                    String excObj = tokens[2];
-                    
-                    //Pass the builders, collections, and coordinate information to this handler method to determine if the "coordinate"
-                    //	is a coordinate, a line, or a polygon and handle it accordingly
-                    handleCoordinateLinePolygon(geometryFactory, coordCollection, 
-                    		coordFeatureBuilder, lineCollection, lineFeatureBuilder, polygonCollection, polygonFeatureBuilder, 
-                    		excCoord, excObj);
-                }
-            }
-            
-        } finally {
-            reader.close();
+        return datums;
+    }
+    
+    /**
+     * Reads the csv file of relational location tags, converting each one into a point, line or polygon
+     * relative to its site's datum and adding it to the matching sink. Geometries of repeated tags come from the cache, if one is given.
+     * Row counts, failures and stage times go to the metrics, if given.
+     * Without a listener a bad row stops the conversion; with one, bad rows are passed to it and the conversion keeps going.
+     * If fingerprinting, each feature carries the fingerprint of its row for FingerprintManifest.
+     * Reading starts at startOffset, which is 0 or the end offset of a row previously passed to the listener.
+     * Rows are parsed and converted in parallel chunks by MappedCsvReader and TagConverter, but reach the sinks
+     * in file order on this thread.
+     */
+    static void readTagFile(File file, 
+    		long startOffset,
+    		final DatumRegistry datums,
+    		final GeometryCache cache,
+    		final ConversionMetrics metrics,
+    		final RowListener listener,
+    		final boolean fingerprinting,
+    		final org.locationtech.jts.geom.GeometryFactory geometryFactory,
+    		final FeatureSink coordSink,
+    		final SimpleFeatureType coordType,
+    		final FeatureSink lineSink,
+    		final SimpleFeatureType lineType,
+    		final FeatureSink polygonSink,
+    		final SimpleFeatureType polygonType) throws IOException {
+    	MappedCsvReader reader = new MappedCsvReader(file.toPath());
+    	
+    	/* First line of the data file is the header */
+    	reader.setHasHeader(true);
+    	
+    	//a row of a few dozen bytes becomes a feature and geometry of around a kilobyte, so keep the
+    	//chunks waiting to be handed over small
+    	reader.setChunkSize(FEATURE_CHUNK_SIZE);
+    	reader.setMaxBytesInFlight(FEATURE_BYTES_IN_FLIGHT);
+    	
+    	//each chunk gets its own converter, since parsers and builders cannot be shared between threads
+        reader.read(startOffset, 
+        		() -> new TagConverter(datums, cache, metrics, listener != null, fingerprinting, geometryFactory, coordType, lineType, polygonType), 
+        		(Object value, long endOffset) -> {
+        	if (value instanceof TagConverter.Reject) {
+        		listener.rejected((TagConverter.Reject) value, endOffset);
+        	} else {
+	        	//route the feature to the sink of its type
+	        	SimpleFeature feature = (SimpleFeature) value;
+	        	SimpleFeatureType type = feature.getFeatureType();
+	        	if (type == polygonType) {
+	        		polygonSink.add(feature);
+	        	} else if (type == lineType) {
+	        		lineSink.add(feature);
+	        	} else {
+	        		coordSink.add(feature);
+	        	}
+        	}
+        	if (listener != null) {
+        		listener.rowDone(endOffset);
+        	}
+        });
+        if (metrics != null) {
+        	metrics.addReadNanos(reader.getChunkNanos());
         }
-        
-        /*
-         * Create the new shapefiles--one for each type
-         */
-        createShapeFile(file, COORD, coordCollection);
-        createShapeFile(file, LINE, lineCollection);
-        createShapeFile(file, POLYGON, polygonCollection);
-
-        System.exit(0); // success!
+        System.out.println("Header: " + (reader.getHeader() == null ? null : String.join(",", reader.getHeader())));
+    }
+    
+    /**
+     * Reads a plain text file of field notes, finding the location tags in the running text with FieldNotesScanner
+     * and converting each one, with the text around it as its description, relative to the last datum in the datum file.
+     * This skips writing the tags to a csv file and reading them back.
+     * Tags the parser rejects are skipped and counted in the metrics, if given.
+     */
+    static void readFieldNotes(File file, 
+    		DatumRegistry datums,
+    		GeometryCache cache,
+    		ConversionMetrics metrics,
+    		org.locationtech.jts.geom.GeometryFactory geometryFactory,
+    		FeatureSink coordSink,
+    		SimpleFeatureType coordType,
+    		FeatureSink lineSink,
+    		SimpleFeatureType lineType,
+    		FeatureSink polygonSink,
+    		SimpleFeatureType polygonType) throws IOException {
+    	LocalProjection siteDatum;
+    	try {
+    		siteDatum = datums.resolve(null);
+    	} catch (IllegalArgumentException e) {
+    		throw new IOException(e.getMessage() + " for " + file, e);
+    	}
+    	LocationTagParser parser = new LocationTagParser();
+    	SimpleFeatureBuilder coordinates = new SimpleFeatureBuilder(coordType);
+    	SimpleFeatureBuilder line = new SimpleFeatureBuilder(lineType);
+    	SimpleFeatureBuilder polygon = new SimpleFeatureBuilder(polygonType);
+    	
+    	Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+    	try {
+    		FieldNotesScanner scanner = new FieldNotesScanner(in);
+    		while (scanner.next()) {
+    			if (metrics != null) {
+    				metrics.rowRead();
+    			}
+    			try {
+    				handleCoordinateLinePolygon(geometryFactory, siteDatum, parser, cache, 
+    						coordSink, coordinates, lineSink, line, polygonSink, polygon, 
+    						scanner.getTag(), scanner.getDescription());
+    			} catch (IllegalArgumentException e) {
+    				if (metrics != null) {
+    					metrics.failure(ConversionMetrics.Failure.MALFORMED_TAG);
+    				}
+    				System.out.println("Skipping line " + scanner.getLineNumber() + " of " + file + ": " + e.getMessage());
+    			}
+    		}
+    	} finally {
+    		in.close();
+    	}
     }
     
     /**
@@ -229,22 +351,22 @@ public class CSV2Shape {
     }
     
     /**
-     * Create a shapefile at file, following the specified schema, populated by this collection
-     * @param file
+     * Write a shapefile to newFile, following the specified schema, populated by this collection.
+     * It never prompts the user, so it can be used by batch jobs.
+     * @param newFile
      * @param schema
      * @param collection
+     * @throws IOException if the shapefile cannot be created or the transaction fails
      */
-    private static void createShapeFile(File file, SimpleFeatureType schema, DefaultFeatureCollection collection) {
-    	try {
-	    	File newFile = getNewShapeFile(file, schema.getTypeName());
-	
-	        ShapefileDataStoreFactory dataStoreFactory = new ShapefileDataStoreFactory();
-	
-	        Map<String, Serializable> params = new HashMap<String, Serializable>();
-	        params.put("url", newFile.toURI().toURL());
-	        params.put("create spatial index", Boolean.TRUE);
-	
-	        ShapefileDataStore newDataStore = (ShapefileDataStore) dataStoreFactory.createNewDataStore(params);
+    static void writeShapeFile(File newFile, SimpleFeatureType schema, DefaultFeatureCollection collection) throws IOException {
+        ShapefileDataStoreFactory dataStoreFactory = new ShapefileDataStoreFactory();
+
+        Map<String, Serializable> params = new HashMap<String, Serializable>();
+        params.put("url", newFile.toURI().toURL());
+        params.put("create spatial index", Boolean.TRUE);
+
+        ShapefileDataStore newDataStore = (ShapefileDataStore) dataStoreFactory.createNewDataStore(params);
+        try {
 	        newDataStore.createSchema(schema);
 	
 	        /*
@@ -261,28 +383,27 @@ public class CSV2Shape {
 	        String typeName = newDataStore.getTypeNames()[0];
 	        SimpleFeatureSource featureSource = newDataStore.getFeatureSource(typeName);
 	
-	        if (featureSource instanceof SimpleFeatureStore) {
-	            SimpleFeatureStore featureStore = (SimpleFeatureStore) featureSource;
+	        if (!(featureSource instanceof SimpleFeatureStore)) {
+	        	transaction.close();
+	            throw new IOException(typeName + " does not support read/write access");
+	        }
+	        SimpleFeatureStore featureStore = (SimpleFeatureStore) featureSource;
 	
-	            featureStore.setTransaction(transaction);
-	            try {
-	                featureStore.addFeatures(collection);
-	                transaction.commit();
+	        featureStore.setTransaction(transaction);
+	        try {
+	            featureStore.addFeatures(collection);
+	            transaction.commit();
 	
-	            } catch (Exception problem) {
-	                problem.printStackTrace();
-	                transaction.rollback();
+	        } catch (IOException problem) {
+	            transaction.rollback();
+	            throw problem;
 	
-	            } finally {
-	                transaction.close();
-	            }
-	        } else {
-	            System.out.println(typeName + " does not support read/write access");
-	            System.exit(1);
+	        } finally {
+	            transaction.close();
 	        }
-    	} catch (IOException exception) {
-    		exception.printStackTrace();
-    	}
+        } finally {
+        	newDataStore.dispose();
+        }
     }
     
     /**
@@ -294,7 +415,7 @@ public class CSV2Shape {
      * @param lbl
      * @return
      */
-    private static SimpleFeature addCoordinate(SimpleFeatureBuilder ftBuild, org.locationtech.jts.geom.Point pt, String coord, String lbl) {
+    static SimpleFeature addCoordinate(SimpleFeatureBuilder ftBuild, org.locationtech.jts.geom.Point pt, String coord, String lbl) {
 
         ftBuild.add(pt);
         ftBuild.add(lbl);
@@ -311,7 +432,7 @@ public class CSV2Shape {
      * @param lbl
      * @return
      */
-    private static SimpleFeature addLine(SimpleFeatureBuilder ftBuild, org.locationtech.jts.geom.LineString ln, String coord, String lbl) {
+    static SimpleFeature addLine(SimpleFeatureBuilder ftBuild, org.locationtech.jts.geom.LineString ln, String coord, String lbl) {
 
         ftBuild.add(ln);
         ftBuild.add(lbl);
@@ -328,7 +449,7 @@ public class CSV2Shape {
      * @param lbl
      * @return
      */
-    private static SimpleFeature addPolygon(SimpleFeatureBuilder ftBuild, org.locationtech.jts.geom.Polygon pg, String coord, String lbl) {
+    static SimpleFeature addPolygon(SimpleFeatureBuilder ftBuild, org.locationtech.jts.geom.Polygon pg, String coord, String lbl) {
 
         ftBuild.add(pg);
         ftBuild.add(lbl);
@@ -341,159 +462,216 @@ public class CSV2Shape {
      * or a polygon (i.e. N2-4 W2-4).
      * 
      */
-    private static void handleCoordinateLinePolygon(org.locationtech.jts.geom.GeometryFactory geomFact, 
-    		DefaultFeatureCollection coordColl,
+    static void handleCoordinateLinePolygon(org.locationtech.jts.geom.GeometryFactory geomFact, 
+    		LocalProjection siteDatum,
+    		LocationTagParser parser,
+    		GeometryCache cache,
+    		FeatureSink coordColl,
+    		SimpleFeatureBuilder coordinates,
+    		FeatureSink lineColl,
+    		SimpleFeatureBuilder line,
+    		FeatureSink polygonColl,
+    		SimpleFeatureBuilder polygon,
+    		String coord,
+    		String obj) throws IOException {
+    	
+    	SimpleFeature feature = buildFeature(geomFact, siteDatum, parser, cache, coordinates, line, polygon, coord, obj);
+    	switch(parser.getKind()) {
+    	case POLYGON:
+    		polygonColl.add(feature);
+    		break;
+    	case LINE:
+    		lineColl.add(feature);
+    		break;
+    	default:
+    		coordColl.add(feature); //datum and relational points will all be written to one shapefile
+    		break;
+    	}
+    }
+    
+    /**
+     * Parses the location tag and builds a point, line or polygon feature from it, with the builder of that type.
+     * If a cache is given, features for the same place at the same datum share one geometry
+     * @return the feature. The parser's kind tells which type it is
+     */
+    static SimpleFeature buildFeature(org.locationtech.jts.geom.GeometryFactory geomFact, 
+    		LocalProjection siteDatum,
+    		LocationTagParser parser,
+    		GeometryCache cache,
     		SimpleFeatureBuilder coordinates,
-    		DefaultFeatureCollection lineColl,
     		SimpleFeatureBuilder line,
-    		DefaultFeatureCollection polygonColl,
     		SimpleFeatureBuilder polygon,
     		String coord,
     		String obj) {
     	
-    	if(coord.contains("-")) {
-    		//handle as line or polygon
-    		if(StringUtils.countMatches(coord, "-") == 2) {
-    			//handle as polygon
-    			polygonColl.add(addPolygon(polygon, getPolygonFromDatum(geomFact, coord), coord, obj));
-    		} else {
-    			//handle as line
-    			lineColl.add(addLine(line, getLineFromDatum(geomFact, coord), coord, obj));
-    		}
-    	} else {
-    		//handle as coordinate
+    	parser.parse(coord);
+    	return addFeature(parser.getKind(), coordinates, line, polygon, 
+    			buildGeometry(geomFact, siteDatum, parser, cache), coord, obj);
+    }
+    
+    /**
+     * Builds the geometry of the tag last parsed by parser, or takes it from the cache
+     * @param geomFact
+     * @param siteDatum
+     * @param parser a parser holding a successfully parsed tag
+     * @param cache geometries of tags already converted, or null to build the geometry
+     * @return a point, line or polygon, depending on the kind of tag
+     */
+    static org.locationtech.jts.geom.Geometry buildGeometry(org.locationtech.jts.geom.GeometryFactory geomFact, 
+    		LocalProjection siteDatum,
+    		LocationTagParser parser,
+    		GeometryCache cache) {
+    	if (cache != null) {
+    		return cache.get(geomFact, siteDatum, parser);
+    	}
+    	
+    	switch(parser.getKind()) {
+    	case POLYGON:
+    		return getPolygonFromDatum(geomFact, siteDatum, parser);
+    	case LINE:
+    		return getLineFromDatum(geomFact, siteDatum, parser);
+    	default:
+    		return geomFact.createPoint(getCoordinateFromDatum(siteDatum, parser));
+    	}
+    }
+    
+    /**
+     * Builds a feature of the given kind from its geometry, location tag and description
+     * @param kind
+     * @param coordinates
+     * @param line
+     * @param polygon
+     * @param geometry
+     * @param coord
+     * @param obj
+     * @return
+     */
+    static SimpleFeature addFeature(LocationTagParser.Kind kind,
+    		SimpleFeatureBuilder coordinates,
+    		SimpleFeatureBuilder line,
+    		SimpleFeatureBuilder polygon,
+    		org.locationtech.jts.geom.Geometry geometry,
+    		String coord,
+    		String obj) {
+    	switch(kind) {
+    	case POLYGON:
+    		return addPolygon(polygon, (org.locationtech.jts.geom.Polygon) geometry, coord, obj);
+    	case LINE:
+    		return addLine(line, (org.locationtech.jts.geom.LineString) geometry, coord, obj);
+    	default:
             //Add coordinate, location tag, and description to the shapefile
-    		coordColl.add(addCoordinate(coordinates, geomFact.createPoint(getCoordinateFromDatum(coord)), coord, obj)); //datum and relational points will all be written to one shapefile
+    		return addCoordinate(coordinates, (org.locationtech.jts.geom.Point) geometry, coord, obj);
     	}
     }
     
     
     /**
      * Converts a relational location tag into a true coordinate using a datum coordinate, bearing, and distance
+     * @param siteDatum the projection around the datum point of the site, which all other points are defined in relation to
      * @param datum
      * @return a coordinate representing the location referred to by the relational location tag
      */
-    private static org.locationtech.jts.geom.Coordinate getCoordinateFromDatum(String datum) {
-    	StringTokenizer parser = new StringTokenizer(datum, "NEWS");
-    	
-    	//parse location tags into two tokens, each indicating a longitudinal or latitudinal distance
-    	double NSCoor = Double.parseDouble(parser.nextToken());
-    	double EWCoor = Double.parseDouble(parser.nextToken());
-    	
-    	//have to account for direction
-    	NSCoor = datum.contains("S") || datum.contains("s") ? 0 - NSCoor : NSCoor;
-    	EWCoor = datum.contains("W") || datum.contains("w") ? 0 - EWCoor : EWCoor;
-    	
-    	//increment or decrement the site datum accordingly to calculate the coordinate of this point
-    	double endLat =  siteDatum.y + (NSCoor/conversion);
-    	double endLong = siteDatum.x + (EWCoor/conversion);
-   
-    	//return the coordinate
-    	return new org.locationtech.jts.geom.Coordinate(endLong, endLat);   	
+    static org.locationtech.jts.geom.Coordinate getCoordinateFromDatum(LocalProjection siteDatum, String datum) {
+    	LocationTagParser parser = new LocationTagParser();
+    	parser.parse(datum);
+    	return getCoordinateFromDatum(siteDatum, parser);
+    }
+    
+    /**
+     * Converts an already parsed location tag into a true coordinate using a datum coordinate
+     * @param siteDatum
+     * @param tag
+     * @return a coordinate representing the location referred to by the relational location tag
+     */
+    static org.locationtech.jts.geom.Coordinate getCoordinateFromDatum(LocalProjection siteDatum, LocationTagParser tag) {
+    	//offset the site datum accordingly to calculate the coordinate of this point
+    	return siteDatum.toCoordinate(tag.getEastFrom(), tag.getNorthFrom());
     }
     
     /**
      * Handler to convert string coordinate into a LineString
      * @param geoFact
+     * @param siteDatum
      * @param datum
      * @return
      */
-    private static org.locationtech.jts.geom.LineString getLineFromDatum(org.locationtech.jts.geom.GeometryFactory geoFact, String datum) {
-    	StringTokenizer parser = new StringTokenizer(datum, "NEWS");
-    	//parse location tags into two tokens, each indicating a longitudinal or latitudinal distance
-    	String ns = parser.nextToken();
-    	String ew = parser.nextToken();
-    	
-    	double NSCoor1 = 0.0;
-    	double NSCoor2 = 0.0;
-    	double EWCoor1 = 0.0;
-    	double EWCoor2 = 0.0;
-    	
-    	//find which direction includes the range
-    	if(ns.contains("-")) {
-    		//if n/s has the range, set NSCoor1 and NSCoor2. Then set EWCoor1 and set EWCoor2 equal to it
-        	StringTokenizer rangeParser = new StringTokenizer(ns, " - ");    
-        	NSCoor1 = Double.parseDouble(rangeParser.nextToken());
-        	NSCoor2 = Double.parseDouble(rangeParser.nextToken());
-        	EWCoor1 = Double.parseDouble(ew);
-        	EWCoor2 = EWCoor1;
-    	} else if(ew.contains("-")) {
-    		//if e/w has the range, set EWCoor1 and EWCoor2. Then set NSCoor1 and set NSCoor2 equal to it
-        	StringTokenizer rangeParser = new StringTokenizer(ew, " - ");   
-        	EWCoor1 = Double.parseDouble(rangeParser.nextToken());
-        	EWCoor2 = Double.parseDouble(rangeParser.nextToken());
-        	NSCoor1 = Double.parseDouble(ns);
-        	NSCoor2 = NSCoor1;
-    	}
-    	
-    	//have to account for direction
-    	NSCoor1 = datum.contains("S") || datum.contains("s") ? 0 - NSCoor1 : NSCoor1;
-    	NSCoor2 = datum.contains("S") || datum.contains("s") ? 0 - NSCoor2 : NSCoor2;
-    	EWCoor1 = datum.contains("W") || datum.contains("w") ? 0 - EWCoor1 : EWCoor1;
-    	EWCoor2 = datum.contains("W") || datum.contains("w") ? 0 - EWCoor2 : EWCoor2;
+    static org.locationtech.jts.geom.LineString getLineFromDatum(org.locationtech.jts.geom.GeometryFactory geoFact, 
+    		LocalProjection siteDatum, String datum) {
+    	LocationTagParser parser = new LocationTagParser();
+    	parser.parse(datum);
+    	return getLineFromDatum(geoFact, siteDatum, parser);
+    }
+    
+    /**
+     * Handler to convert an already parsed location tag into a LineString
+     * @param geoFact
+     * @param siteDatum
+     * @param tag
+     * @return
+     */
+    static org.locationtech.jts.geom.LineString getLineFromDatum(org.locationtech.jts.geom.GeometryFactory geoFact, 
+    		LocalProjection siteDatum, LocationTagParser tag) {
+    	//start and end of the line as east, north offsets from the datum
+    	double[] points = {
+    			tag.getEastFrom(), tag.getNorthFrom(),
+    			tag.getEastTo(), tag.getNorthTo()
+    	};
     	
-    	//increment or decrement the site datum accordingly to calculate the coordinate of these points
-    	double startLat =  siteDatum.y + (NSCoor1/conversion);
-    	double endLat = siteDatum.y + (NSCoor2/conversion);
-    	double startLong = siteDatum.x + (EWCoor1/conversion);
-    	double endLong = siteDatum.x + (EWCoor2/conversion);
+    	//offset the site datum accordingly to calculate the coordinate of these points
+    	siteDatum.project(points, 0, points, 0, 2);
     	
-    	//create start and end coords
-    	org.locationtech.jts.geom.Coordinate start = new org.locationtech.jts.geom.Coordinate(startLong, startLat);
-    	org.locationtech.jts.geom.Coordinate end = new org.locationtech.jts.geom.Coordinate(endLong, endLat);
-    	org.locationtech.jts.geom.Coordinate[] coords = new org.locationtech.jts.geom.Coordinate[] {start, end};
-   
-    	//return the coordinate
-    	return geoFact.createLineString(coords); 	
+    	//return the line
+    	return geoFact.createLineString(toCoordinates(points));
     }
     
     /**
      * Handler method to turn the string coordinate into a Polygon
      * @param geoFact
+     * @param siteDatum
      * @param datum
      * @return
      */
-    private static org.locationtech.jts.geom.Polygon getPolygonFromDatum(org.locationtech.jts.geom.GeometryFactory geoFact, String datum) {
-    	StringTokenizer parser = new StringTokenizer(datum, "NEWS");
-    	//parse location tags into two tokens, each indicating a longitudinal or latitudinal distance
-    	String ns = parser.nextToken();
-    	String ew = parser.nextToken();
-    	
-    	double NSCoor1 = 0.0;
-    	double NSCoor2 = 0.0;
-    	double EWCoor1 = 0.0;
-    	double EWCoor2 = 0.0;
-    	
-
-    	//split ns string and ew string into two doubles
-    	StringTokenizer rangeParser = new StringTokenizer(ns, " - ");    
-    	NSCoor1 = Double.parseDouble(rangeParser.nextToken());
-    	NSCoor2 = Double.parseDouble(rangeParser.nextToken());
-    	
-    	rangeParser = new StringTokenizer(ew, " - ");   
-    	EWCoor1 = Double.parseDouble(rangeParser.nextToken());
-    	EWCoor2 = Double.parseDouble(rangeParser.nextToken());
-    	
-    	//have to account for direction
-    	NSCoor1 = datum.contains("S") || datum.contains("s") ? 0 - NSCoor1 : NSCoor1;
-    	NSCoor2 = datum.contains("S") || datum.contains("s") ? 0 - NSCoor2 : NSCoor2;
-    	EWCoor1 = datum.contains("W") || datum.contains("w") ? 0 - EWCoor1 : EWCoor1;
-    	EWCoor2 = datum.contains("W") || datum.contains("w") ? 0 - EWCoor2 : EWCoor2;
-    	
-    	//increment or decrement the site datum accordingly to calculate the coordinate of these points
-    	double startLat =  siteDatum.y + (NSCoor1/conversion);
-    	double endLat = siteDatum.y + (NSCoor2/conversion);
-    	double startLong = siteDatum.x + (EWCoor1/conversion);
-    	double endLong = siteDatum.x + (EWCoor2/conversion);
+    static org.locationtech.jts.geom.Polygon getPolygonFromDatum(org.locationtech.jts.geom.GeometryFactory geoFact, 
+    		LocalProjection siteDatum, String datum) {
+    	LocationTagParser parser = new LocationTagParser();
+    	parser.parse(datum);
+    	return getPolygonFromDatum(geoFact, siteDatum, parser);
+    }
+    
+    /**
+     * Handler method to turn an already parsed location tag into a Polygon
+     * @param geoFact
+     * @param siteDatum
+     * @param tag
+     * @return
+     */
+    static org.locationtech.jts.geom.Polygon getPolygonFromDatum(org.locationtech.jts.geom.GeometryFactory geoFact, 
+    		LocalProjection siteDatum, LocationTagParser tag) {
+    	//corners as east, north offsets from the datum. Have to follow this order or the polygons will be X-shaped instead of rectilinear
+    	double[] points = {
+    			tag.getEastFrom(), tag.getNorthFrom(),
+    			tag.getEastFrom(), tag.getNorthTo(),
+    			tag.getEastTo(), tag.getNorthTo(),
+    			tag.getEastTo(), tag.getNorthFrom(),
+    			tag.getEastFrom(), tag.getNorthFrom()
+    	};
     	
-    	//create coords from points. Have to follow this order or the polygons will be X-shaped instead of rectilinear
-    	org.locationtech.jts.geom.Coordinate coord1 = new org.locationtech.jts.geom.Coordinate(startLong, startLat);
-    	org.locationtech.jts.geom.Coordinate coord2 = new org.locationtech.jts.geom.Coordinate(startLong, endLat);
-    	org.locationtech.jts.geom.Coordinate coord3 = new org.locationtech.jts.geom.Coordinate(endLong, endLat);
-    	org.locationtech.jts.geom.Coordinate coord4 = new org.locationtech.jts.geom.Coordinate(endLong, startLat);
-    	org.locationtech.jts.geom.Coordinate[] coords = new org.locationtech.jts.geom.Coordinate[] {coord1, coord2, coord3, coord4, coord1};
+    	//offset the site datum accordingly to calculate the coordinate of these points
+    	siteDatum.project(points, 0, points, 0, 5);
    
-    	//return the coordinate
-    	return geoFact.createPolygon(coords); 	
+    	//return the polygon
+    	return geoFact.createPolygon(toCoordinates(points)); 	
+    }
+    
+    /**
+     * @param points longitude, latitude pairs
+     * @return the pairs as coordinates
+     */
+    private static org.locationtech.jts.geom.Coordinate[] toCoordinates(double[] points) {
+    	org.locationtech.jts.geom.Coordinate[] coords = new org.locationtech.jts.geom.Coordinate[points.length / 2];
+    	for (int i = 0; i < coords.length; i++) {
+    		coords[i] = new org.locationtech.jts.geom.Coordinate(points[2 * i], points[2 * i + 1]);
+    	}
+    	return coords;
     }
-}
\ No newline at end of file
+}
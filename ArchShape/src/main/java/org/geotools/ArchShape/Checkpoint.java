@@ -0,0 +1,174 @@
+package org.geotools.ArchShape;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.geotools.data.DefaultTransaction;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.factory.CommonFactoryFinder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.identity.FeatureId;
+
+/**
+ * How far a conversion had got when it last committed: the offset in the tag file up to which every
+ * row has been committed, the number of features then in each shapefile, and the number of rejected
+ * rows and length of the reject file. A conversion interrupted after a checkpoint resumes from it.
+ *
+ * <p>The checkpoint also records the size and modification time of the input files, so that it is
+ * not used once they have changed. It is stored as a properties file.
+ */
+final class Checkpoint {
+
+    final long offset;
+    final long[] counts;
+    final long rejects;
+    final long rejectsLength;
+    private final String inputs;
+
+    Checkpoint(long offset, long[] counts, long rejects, long rejectsLength, File datumFile, File tagFile) {
+        this(offset, counts, rejects, rejectsLength, describe(datumFile, tagFile));
+    }
+
+    private Checkpoint(long offset, long[] counts, long rejects, long rejectsLength, String inputs) {
+        this.offset = offset;
+        this.counts = counts.clone();
+        this.rejects = rejects;
+        this.rejectsLength = rejectsLength;
+        this.inputs = inputs;
+    }
+
+    private static String describe(File datumFile, File tagFile) {
+        return datumFile.length() + ":" + datumFile.lastModified() + "," + tagFile.length() + ":" + tagFile.lastModified();
+    }
+
+    /**
+     * @param datumFile
+     * @param tagFile
+     * @return whether the checkpoint was taken while converting these files, as they are now
+     */
+    boolean matches(File datumFile, File tagFile) {
+        return inputs.equals(describe(datumFile, tagFile));
+    }
+
+    /**
+     * @param file
+     * @return the checkpoint in the file, or null if there is none
+     * @throws IOException if the file cannot be read
+     */
+    static Checkpoint read(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        try {
+            String[] counts = properties.getProperty("counts").split(",");
+            long[] parsed = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                parsed[i] = Long.parseLong(counts[i].trim());
+            }
+            return new Checkpoint(Long.parseLong(properties.getProperty("offset")), parsed,
+                    Long.parseLong(properties.getProperty("rejects")),
+                    Long.parseLong(properties.getProperty("rejectsLength")),
+                    properties.getProperty("inputs"));
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed checkpoint " + file, e);
+        }
+    }
+
+    /**
+     * Replace the checkpoint file with this checkpoint. The checkpoint is written next to the file and
+     * then moved over it, so the file always holds a whole checkpoint.
+     * @param file
+     * @throws IOException
+     */
+    void write(File file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("offset", Long.toString(offset));
+        StringBuilder counts = new StringBuilder();
+        for (long count : this.counts) {
+            counts.append(counts.length() == 0 ? "" : ",").append(count);
+        }
+        properties.setProperty("counts", counts.toString());
+        properties.setProperty("rejects", Long.toString(rejects));
+        properties.setProperty("rejectsLength", Long.toString(rejectsLength));
+        properties.setProperty("inputs", inputs);
+
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            properties.store(out, "ArchShape conversion checkpoint");
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Remove the features a shapefile has gained since the checkpoint. The stores are committed one
+     * after another before the checkpoint is written, so an interruption in between can leave some
+     * of them ahead of it.
+     * @param shapefile
+     * @param count number of features the shapefile had at the checkpoint
+     * @throws IOException if the shapefile has fewer features than that
+     */
+    static void truncate(File shapefile, long count) throws IOException {
+        ShapefileDataStore store = new ShapefileDataStore(shapefile.toURI().toURL());
+        Transaction transaction = new DefaultTransaction("truncate");
+        try {
+            String typeName = store.getTypeNames()[0];
+            SimpleFeatureStore featureStore = (SimpleFeatureStore) store.getFeatureSource(typeName);
+            featureStore.setTransaction(transaction);
+
+            FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+            Set<FeatureId> excess = new HashSet<FeatureId>();
+            long record = 0;
+            SimpleFeatureIterator iterator = featureStore.getFeatures(
+                    new Query(typeName, Filter.INCLUDE, Query.NO_NAMES)).features();
+            try {
+                while (iterator.hasNext()) {
+                    SimpleFeature feature = iterator.next();
+                    if (record++ >= count) {
+                        excess.add(ff.featureId(feature.getID()));
+                    }
+                }
+            } finally {
+                iterator.close();
+            }
+            if (record < count) {
+                throw new IOException(shapefile + " has " + record + " features but the checkpoint expects " + count);
+            }
+
+            if (!excess.isEmpty()) {
+                featureStore.removeFeatures(ff.id(excess));
+                transaction.commit();
+            }
+        } catch (IOException e) {
+            transaction.rollback();
+            throw e;
+        } finally {
+            transaction.close();
+            store.dispose();
+        }
+    }
+}
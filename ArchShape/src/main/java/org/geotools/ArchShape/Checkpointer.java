@@ -0,0 +1,114 @@
+package org.geotools.ArchShape;
+
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Follows a conversion row by row, sending bad rows to the reject file and, every interval rows,
+ * committing all three shapefiles and writing a {@link Checkpoint} of how far the conversion got.
+ *
+ * <p>The shapefiles are only committed here, at row boundaries, so a checkpoint's offset and counts
+ * always describe the same rows. Each commit rewrites the shapefiles, so checkpoints are also spaced at
+ * least a quarter of the features written so far apart, which keeps the rewriting linear in their size.
+ */
+final class Checkpointer implements RowListener {
+
+    private final File checkpointFile;
+    private final File datumFile;
+    private final File tagFile;
+    private final int interval;
+    private final RejectWriter rejects;
+    private final long[] counts;
+
+    private QueuedFeatureSink[] queues;
+    private Flushable[] buffers = new Flushable[0];
+    private int rows; //rows since the last checkpoint
+
+    /**
+     * @param checkpointFile
+     * @param datumFile
+     * @param tagFile
+     * @param interval rows between checkpoints, or 0 to only handle rejects
+     * @param rejects receives bad rows, or null to stop at the first one
+     * @param resumed the checkpoint the conversion resumes from, or null
+     */
+    Checkpointer(File checkpointFile, File datumFile, File tagFile, int interval, RejectWriter rejects,
+            Checkpoint resumed) {
+        this.checkpointFile = checkpointFile;
+        this.datumFile = datumFile;
+        this.tagFile = tagFile;
+        this.interval = interval;
+        this.rejects = rejects;
+        this.counts = resumed != null ? resumed.counts.clone() : new long[3];
+    }
+
+    /**
+     * @param queues the Point, Line and Polygon writers to commit at each checkpoint
+     */
+    void setQueues(QueuedFeatureSink[] queues) {
+        this.queues = queues;
+    }
+
+    /**
+     * @param buffers sinks holding features back from the writers, flushed before each checkpoint
+     */
+    void setBuffers(Flushable... buffers) {
+        this.buffers = buffers;
+    }
+
+    /**
+     * @param sink
+     * @param index 0, 1 or 2 for the Point, Line or Polygon shapefile
+     * @return a sink which counts the features written to the shapefile
+     */
+    FeatureSink counting(final FeatureSink sink, final int index) {
+        return feature -> {
+            sink.add(feature);
+            counts[index]++;
+        };
+    }
+
+    @Override
+    public void rejected(TagConverter.Reject reject, long endOffset) throws IOException {
+        if (rejects == null) {
+            throw new IOException(reject.message + " at offset " + endOffset + " of " + tagFile + ": "
+                    + String.join(",", reject.fields));
+        }
+        rejects.write(reject, endOffset);
+    }
+
+    @Override
+    public void rowDone(long endOffset) throws IOException {
+        if (interval > 0 && ++rows >= interval && rows >= (counts[0] + counts[1] + counts[2]) / 4) {
+            checkpoint(endOffset);
+        }
+    }
+
+    /**
+     * Commit the shapefiles and record that every row up to offset is in them
+     * @param offset
+     * @throws IOException
+     */
+    void checkpoint(long offset) throws IOException {
+        for (Flushable buffer : buffers) {
+            buffer.flush();
+        }
+        QueuedFeatureSink.commitAll(queues);
+        long rejectCount = 0;
+        long rejectsLength = 0;
+        if (rejects != null) {
+            rejectsLength = rejects.sync();
+            rejectCount = rejects.getCount();
+        }
+        new Checkpoint(offset, counts, rejectCount, rejectsLength, datumFile, tagFile).write(checkpointFile);
+        rows = 0;
+    }
+
+    /**
+     * @return number of rows rejected so far, including any before the checkpoint resumed from
+     */
+    long getRejectCount() {
+        return rejects == null ? 0 : rejects.getCount();
+    }
+}
@@ -0,0 +1,632 @@
+package org.geotools.ArchShape;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+
+/**
+ * One headless conversion of a datum csv file and a relational location tag csv file into the
+ * Point, Line and Polygon shapefiles. Everything the conversion needs, including the site datums,
+ * belongs to the job so that many jobs can run side by side on a worker pool.
+ *
+ * <p>Parsing routes each feature into one of three bounded queues, each drained by a writer thread of
+ * its own, so the three shapefiles are written concurrently with each other and with the parsing.
+ *
+ * <p>While the job runs its {@link ConversionMetrics} are registered over JMX, and when it ends they
+ * are written next to the shapefiles as {@code <tag file name>.metrics.json}.
+ *
+ * <p>A job can be made to keep going past bad rows, which are written to
+ * {@code <tag file name>.rejects.csv} with the reason, and to commit and record a checkpoint every
+ * so many rows in {@code <tag file name>.checkpoint}. A job that finds a checkpoint for the same input
+ * files resumes from it instead of starting over; the checkpoint is removed when the job succeeds.
+ *
+ * <p>The tag file may also be a text file of field notes, whose tags are found in the running text by
+ * {@link FieldNotesScanner}. Field notes are always read from the start, without checkpoints.
+ *
+ * <p>A job can also write each shapefile in Hilbert curve order of its features, see {@link HilbertSorter},
+ * and dissolve the units of the Polygon shapefile into a Footprint shapefile, see {@link FootprintDissolver}.
+ *
+ * <p>The shapefiles are in WGS 84 longitude and latitude unless an output coordinate reference system
+ * is set, such as the UTM zone of the site, in which case features are reprojected in batches on their
+ * way to the writers, see {@link ReprojectingSink}.
+ *
+ * <p>Once converted in full, the text fields of each shapefile's .dbf file are narrowed to their
+ * longest value, see {@link DbfFieldSizer}.
+ */
+public class ConversionJob implements Callable<File[]> {
+
+    private final File datumFile; //csv file containing the datum coordinate of the site
+    private final File tagFile; //csv file containing relational location tags and descriptions
+    private final File outputDir; //directory the shapefiles are written to
+    private final File[] outputFiles; //Point, Line and Polygon shapefiles, if chosen by the user
+    static final int DEFAULT_GEOMETRY_CACHE_SIZE = 100000;
+    static final int DEFAULT_CHECKPOINT_INTERVAL = 50000;
+
+    private int commitInterval = StreamingShapefileWriter.DEFAULT_COMMIT_INTERVAL;
+    private int geometryCacheSize = DEFAULT_GEOMETRY_CACHE_SIZE;
+    private int queueCapacity = QueuedFeatureSink.DEFAULT_CAPACITY;
+    private GeometryCache geometryCache;
+    private boolean incremental;
+    private boolean rejectBadRows;
+    private int checkpointInterval;
+    private boolean spatialOrder;
+    private boolean footprints;
+    private boolean footprintsByType;
+    private boolean indexed;
+    private String outputCrs;
+    private CoordinateReferenceSystem crs; //of the last run's shapefiles
+    private MathTransform toCrs; //from WGS 84 to crs, or null if crs is WGS 84
+    private String updateSummary;
+    private boolean monitored = true;
+    private ConversionMetrics metrics;
+
+    public ConversionJob(File datumFile, File tagFile, File outputDir) {
+        this.datumFile = datumFile;
+        this.tagFile = tagFile;
+        this.outputDir = outputDir;
+        this.outputFiles = null;
+    }
+
+    /**
+     * @param datumFile
+     * @param tagFile
+     * @param outputFiles the Point, Line and Polygon shapefiles to write
+     */
+    public ConversionJob(File datumFile, File tagFile, File[] outputFiles) {
+        if (outputFiles.length != 3) {
+            throw new IllegalArgumentException("Expected Point, Line and Polygon shapefiles: " + Arrays.toString(outputFiles));
+        }
+        this.datumFile = datumFile;
+        this.tagFile = tagFile;
+        this.outputDir = outputFiles[0].getAbsoluteFile().getParentFile();
+        this.outputFiles = outputFiles.clone();
+    }
+
+    public File getDatumFile() {
+        return datumFile;
+    }
+
+    public File getTagFile() {
+        return tagFile;
+    }
+
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    /**
+     * @param commitInterval number of features written to each shapefile between commits, each of which
+     *            rewrites the whole shapefile
+     */
+    public void setCommitInterval(int commitInterval) {
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * @param queueCapacity number of features that may wait for each shapefile's writer thread
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param geometryCacheSize number of tag geometries cached during the conversion, or 0 for no cache
+     */
+    public void setGeometryCacheSize(int geometryCacheSize) {
+        this.geometryCacheSize = geometryCacheSize;
+    }
+
+    /**
+     * @return the geometry cache of the last run, with its hit and miss counts, or null if there was none
+     */
+    public GeometryCache getGeometryCache() {
+        return geometryCache;
+    }
+
+    /**
+     * In incremental mode a fingerprint manifest of the tag rows is kept next to each shapefile, and
+     * later runs only convert the rows that are new, appending their features to the shapefiles in
+     * place and flagging the records of vanished rows as deleted, see {@link IncrementalUpdate}. The
+     * shapefiles are converted in full when they or their manifests are missing, the datum file has
+     * changed, most of their records are deleted, or the input is field notes.
+     * @param incremental
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * @param rejectBadRows whether rows that cannot be converted are written to the reject file
+     *            instead of stopping the conversion
+     */
+    public void setRejectBadRows(boolean rejectBadRows) {
+        this.rejectBadRows = rejectBadRows;
+    }
+
+    /**
+     * Commit the shapefiles and write a checkpoint every checkpointInterval rows, instead of
+     * committing every commitInterval features. Checkpoints are not used in incremental mode.
+     * @param checkpointInterval rows between checkpoints, or 0 for none
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Write the features of each shapefile in Hilbert curve order of their locations rather than in
+     * the order of the tag file. The features are sorted before anything is written, spilling to
+     * temporary files in the output directory, so checkpoints are not used. Features appended by an
+     * incremental update are not sorted.
+     * @param spatialOrder
+     */
+    public void setSpatialOrder(boolean spatialOrder) {
+        this.spatialOrder = spatialOrder;
+    }
+
+    /**
+     * Also write a Footprint shapefile, in which the units of the Polygon shapefile that touch or
+     * overlap are dissolved into one polygon, see {@link FootprintDissolver}
+     * @param footprints
+     * @param byType whether only units of the same type are dissolved together
+     */
+    public void setFootprints(boolean footprints, boolean byType) {
+        this.footprints = footprints;
+        this.footprintsByType = byType;
+    }
+
+    /**
+     * Also write a {@link SpatialIndex} of the Point, Line and Polygon features, see {@link #getIndexFile()}
+     * @param indexed
+     */
+    public void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+    }
+
+    /**
+     * @param outputCrs code of the coordinate reference system to write the shapefiles in, such as
+     *            EPSG:32615, "utm" for the UTM zone of the site's datum, or null for WGS 84 longitude
+     *            and latitude
+     */
+    public void setOutputCrs(String outputCrs) {
+        this.outputCrs = outputCrs;
+    }
+
+    /**
+     * @param monitored whether the metrics are registered over JMX while the job runs; starting the
+     *            platform MBean server adds noticeably to the run time of a small job
+     */
+    public void setMonitored(boolean monitored) {
+        this.monitored = monitored;
+    }
+
+    public File getRejectFile() {
+        return new File(outputDir, baseName() + ".rejects.csv");
+    }
+
+    /**
+     * @return the spatial index written with --index, next to the Point shapefile
+     */
+    public File getIndexFile() {
+        return outputFiles != null ? SpatialIndex.fileFor(outputFiles[0]) : new File(outputDir, baseName() + SpatialIndex.EXTENSION);
+    }
+
+    public File getCheckpointFile() {
+        return new File(outputDir, baseName() + ".checkpoint");
+    }
+
+    /**
+     * @return how the last incremental run changed the shapefiles, or null if they were converted in full
+     */
+    public String getUpdateSummary() {
+        return updateSummary;
+    }
+
+    /**
+     * @return the metrics of the current or last run, or null if the job has not been run
+     */
+    public ConversionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the file the metrics of a run are written to
+     */
+    public File getMetricsFile() {
+        return new File(outputDir, baseName() + ".metrics.json");
+    }
+
+    /**
+     * Run the conversion. Each row is written to its shapefile as soon as it has been converted, so
+     * memory use does not grow with the size of the input.
+     * @return the Point, Line and Polygon shapefiles that were written, followed by the Footprint
+     *         shapefile if footprints were asked for
+     */
+    @Override
+    public File[] call() throws Exception {
+        metrics = new ConversionMetrics(toString());
+        if (monitored) {
+            metrics.register();
+        }
+        Throwable failure = null;
+        try {
+            return run();
+        } catch (Exception e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.finish(failure);
+            if (monitored) {
+                metrics.unregister();
+            }
+            try {
+                metrics.writeJson(getMetricsFile());
+            } catch (IOException e) {
+                System.out.println("Cannot write " + getMetricsFile() + ": " + e);
+            }
+        }
+    }
+
+    private File[] run() throws Exception {
+        final SimpleFeatureType COORD = CSV2Shape.createCoordType();
+        final SimpleFeatureType LINE = CSV2Shape.createLineType();
+        final SimpleFeatureType POLYGON = CSV2Shape.createPolygonType();
+
+        File[] written = getOutputFiles(COORD, LINE, POLYGON);
+        for (File file : written) {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create output directory " + dir);
+            }
+        }
+
+        crs = DefaultGeographicCRS.WGS84;
+        toCrs = null;
+        if (outputCrs != null) {
+            String code = outputCrs;
+            if (code.equalsIgnoreCase(TransformCache.UTM)) {
+                Coordinate datum = CSV2Shape.readDatumFile(datumFile, new GeometryFactory(),
+                        new SimpleFeatureBuilder(COORD), feature -> { }).resolve(null).getDatum();
+                code = TransformCache.utmCode(datum.x, datum.y);
+            }
+            crs = TransformCache.decode(code);
+            toCrs = TransformCache.get(DefaultGeographicCRS.WGS84, crs);
+            if (toCrs.isIdentity()) {
+                toCrs = null;
+            }
+        }
+
+        updateSummary = null;
+        if (!incremental || !update(written, COORD, LINE, POLYGON)) {
+            convert(written, COORD, LINE, POLYGON);
+            fitFields(written);
+        }
+        if (indexed) {
+            long count = SpatialIndex.build(written, getIndexFile());
+            System.out.println("Indexed " + count + " features in " + getIndexFile().getName());
+        }
+        if (!footprints) {
+            return written;
+        }
+
+        //dissolved from the finished Polygon shapefile, so that incremental and resumed runs get whole footprints
+        File footprintFile = outputFiles != null
+                ? new File(written[2].getAbsoluteFile().getParentFile(),
+                        written[2].getName().replaceFirst("(?i)\\.shp$", "") + FootprintDissolver.TYPE_NAME + ".shp")
+                : getOutputFile(FootprintDissolver.TYPE_NAME);
+        long count = new FootprintDissolver(ForkJoinPool.commonPool())
+                .dissolve(written[2], footprintFile, footprintsByType, commitInterval);
+        System.out.println("Dissolved " + written[2].getName() + " into " + count + " footprints");
+        fitFields(footprintFile);
+        File[] withFootprints = Arrays.copyOf(written, 4);
+        withFootprints[3] = footprintFile;
+        return withFootprints;
+    }
+
+    //write the shapefiles from scratch, each on a writer thread of its own
+    private void convert(File[] written, SimpleFeatureType COORD, SimpleFeatureType LINE, SimpleFeatureType POLYGON)
+            throws Exception {
+        SimpleFeatureType[] schemas = {COORD, LINE, POLYGON};
+        StreamingShapefileWriter[] writers = new StreamingShapefileWriter[3];
+        QueuedFeatureSink[] queues = new QueuedFeatureSink[3];
+        FingerprintManifest.Recorder[] recorders = new FingerprintManifest.Recorder[3];
+        HilbertSorter[] sorters = new HilbertSorter[3];
+        ReprojectingSink[] reprojectors = new ReprojectingSink[toCrs != null ? 3 : 0];
+
+        //the manifests of incremental mode cannot be rebuilt from part of a conversion, so it never resumes,
+        //and sorted features are only written once the whole input has been read
+        boolean recording = incremental && !readsFieldNotes();
+        boolean checkpointing = checkpointInterval > 0 && !incremental && !spatialOrder && !readsFieldNotes();
+        Checkpoint resumed = checkpointing ? Checkpoint.read(getCheckpointFile()) : null;
+        if (resumed != null && !resumed.matches(datumFile, tagFile)) {
+            System.out.println("Ignoring " + getCheckpointFile() + ": the input files have changed since");
+            resumed = null;
+        }
+        if (resumed != null && !isWrittenInCrs(written[0])) {
+            System.out.println("Ignoring " + getCheckpointFile() + ": the output CRS has changed since");
+            resumed = null;
+        }
+        if (resumed != null) {
+            for (int i = 0; i < 3; i++) {
+                Checkpoint.truncate(written[i], resumed.counts[i]);
+            }
+        }
+
+        RejectWriter rejects = null;
+        try {
+            if (rejectBadRows) {
+                rejects = resumed != null && resumed.rejectsLength > 0
+                        ? new RejectWriter(getRejectFile(), resumed.rejectsLength, resumed.rejects)
+                        : new RejectWriter(getRejectFile());
+            }
+            Checkpointer checkpointer = checkpointing || rejects != null
+                    ? new Checkpointer(getCheckpointFile(), datumFile, tagFile, checkpointing ? checkpointInterval : 0,
+                            rejects, resumed)
+                    : null;
+
+            //with checkpoints, the shapefiles are only committed at checkpoints
+            int interval = checkpointing ? Integer.MAX_VALUE : commitInterval;
+            FeatureSink[] sinks = new FeatureSink[3];
+            for (int i = 0; i < 3; i++) {
+                writers[i] = resumed != null ? StreamingShapefileWriter.append(written[i], interval)
+                        : new StreamingShapefileWriter(written[i], schemas[i], interval, crs);
+                writers[i].setMetrics(metrics);
+                queues[i] = new QueuedFeatureSink(writers[i], "write " + written[i].getName(), queueCapacity);
+                sinks[i] = queues[i];
+                if (toCrs != null) {
+                    reprojectors[i] = new ReprojectingSink(sinks[i], schemas[i], toCrs);
+                    sinks[i] = reprojectors[i];
+                }
+                if (spatialOrder) {
+                    sorters[i] = new HilbertSorter(sinks[i], schemas[i], HilbertSorter.DEFAULT_RUN_SIZE, outputDir);
+                    sinks[i] = sorters[i];
+                }
+                if (recording) {
+                    //ahead of the sorter, which rebuilds the features without the fingerprints of their rows
+                    recorders[i] = new FingerprintManifest.Recorder(sinks[i], spatialOrder);
+                    sinks[i] = recorders[i];
+                }
+                if (checkpointer != null) {
+                    sinks[i] = checkpointer.counting(sinks[i], i);
+                }
+            }
+            if (checkpointer != null) {
+                checkpointer.setQueues(queues);
+                checkpointer.setBuffers(reprojectors);
+            }
+            if (resumed != null) {
+                System.out.println("Resuming " + this + " from offset " + resumed.offset);
+            }
+            readInput(sinks, COORD, LINE, POLYGON, resumed != null ? resumed.offset : 0, resumed == null, recording,
+                    checkpointer);
+            if (spatialOrder) {
+                for (HilbertSorter sorter : sorters) {
+                    sorter.finish();
+                }
+            }
+            for (ReprojectingSink reprojector : reprojectors) {
+                reprojector.flush();
+            }
+
+            //let the final commits run side by side before waiting for any of them
+            for (QueuedFeatureSink queue : queues) {
+                queue.finish();
+            }
+            for (QueuedFeatureSink queue : queues) {
+                queue.close();
+            }
+        } catch (Exception e) {
+            for (int i = 0; i < 3; i++) {
+                if (queues[i] != null) {
+                    queues[i].abort();
+                } else if (writers[i] != null) {
+                    writers[i].abort();
+                }
+            }
+            throw e;
+        } finally {
+            if (rejects != null) {
+                rejects.close();
+            }
+            for (HilbertSorter sorter : sorters) {
+                if (sorter != null) {
+                    sorter.close();
+                }
+            }
+        }
+        getCheckpointFile().delete();
+
+        long datums = recording ? FingerprintManifest.fingerprint(datumFile) : 0;
+        for (int i = 0; i < 3; i++) {
+            if (recording) {
+                recorders[i].write(written[i], datums);
+            } else {
+                //a manifest left over from an earlier incremental run no longer describes the shapefile
+                FingerprintManifest.fileFor(written[i]).delete();
+            }
+        }
+    }
+
+    //bring existing shapefiles up to date; false if they have to be converted in full instead
+    private boolean update(File[] written, SimpleFeatureType COORD, SimpleFeatureType LINE, SimpleFeatureType POLYGON)
+            throws Exception {
+        if (readsFieldNotes()) {
+            return false; //field notes have no rows to fingerprint
+        }
+        IncrementalUpdate update = IncrementalUpdate.open(written, FingerprintManifest.fingerprint(datumFile));
+        if (update == null) {
+            return false;
+        }
+        for (File file : written) {
+            if (!isWrittenInCrs(file)) {
+                return false; //the output CRS has changed since
+            }
+        }
+
+        IncrementalUpdate.Diff[] diffs = update.newDiffs(IncrementalUpdate.DEFAULT_MAX_CHANGES);
+        SimpleFeatureType[] schemas = {COORD, LINE, POLYGON};
+        FeatureSink[] sinks = {
+                metrics.counting(diffs[0], LocationTagParser.Kind.POINT),
+                metrics.counting(diffs[1], LocationTagParser.Kind.LINE),
+                metrics.counting(diffs[2], LocationTagParser.Kind.POLYGON)};
+        GeometryFactory geometryFactory = new GeometryFactory();
+        //the datum points are in the shapefile already
+        DatumRegistry datums = CSV2Shape.readDatumFile(datumFile, geometryFactory, new SimpleFeatureBuilder(COORD),
+                feature -> { });
+        RejectWriter rejects = rejectBadRows ? new RejectWriter(getRejectFile()) : null;
+        try {
+            IncrementalUpdate.readTagFile(tagFile, diffs, sinks, schemas,
+                    () -> new TagConverter(datums, null, metrics, rejects != null, true, geometryFactory,
+                            COORD, LINE, POLYGON),
+                    rejects == null ? null : new Checkpointer(getCheckpointFile(), datumFile, tagFile, 0, rejects, null),
+                    metrics);
+        } finally {
+            if (rejects != null) {
+                rejects.close();
+            }
+        }
+        if (toCrs != null) {
+            for (int i = 0; i < 3; i++) {
+                new ReprojectingSink(feature -> { }, schemas[i], toCrs).reproject(diffs[i].getAdded());
+            }
+        }
+        long start = System.nanoTime();
+        boolean applied = update.apply(diffs);
+        metrics.addStageNanos(ConversionMetrics.Stage.COMMIT, System.nanoTime() - start);
+        if (!applied) {
+            return false;
+        }
+
+        StringBuilder summary = new StringBuilder("updated in place:");
+        for (int i = 0; i < 3; i++) {
+            summary.append(' ').append(written[i].getName())
+                    .append(" +").append(diffs[i].getAddedCount())
+                    .append(" -").append(diffs[i].getRemovedCount());
+        }
+        updateSummary = summary.toString();
+        return true;
+    }
+
+    //whether the shapefile's .prj describes the CRS of this run
+    private boolean isWrittenInCrs(File shapefile) throws IOException {
+        File prj = new File(shapefile.getPath().replaceFirst("(?i)\\.shp$", "") + ".prj");
+        if (!prj.isFile()) {
+            return false;
+        }
+        //the shapefile store writes the CRS's WKT, without its line breaks and indents
+        String written = new String(Files.readAllBytes(prj.toPath()), StandardCharsets.ISO_8859_1);
+        return written.replaceAll("\\s", "").equals(crs.toWKT().replaceAll("\\s", ""));
+    }
+
+    //narrow the text fields of the shapefiles to the longest value in each
+    private void fitFields(File... shapefiles) throws IOException {
+        long start = System.nanoTime();
+        for (File shapefile : shapefiles) {
+            DbfFieldSizer.fit(DbfFieldSizer.dbfFor(shapefile));
+        }
+        metrics.addStageNanos(ConversionMetrics.Stage.COMMIT, System.nanoTime() - start);
+    }
+
+    //convert the datum and tag files into the Point, Line and Polygon sinks, the tag file from startOffset,
+    //putting the fingerprint of each tag row into its feature if fingerprinting
+    private void readInput(FeatureSink[] sinks, SimpleFeatureType COORD, SimpleFeatureType LINE,
+            SimpleFeatureType POLYGON, long startOffset, boolean writeDatums, boolean fingerprinting,
+            RowListener listener) throws IOException {
+        //the default factory, without a search of the classpath for GeometryFactory plugins
+        GeometryFactory geometryFactory = new GeometryFactory();
+
+        SimpleFeatureBuilder coordFeatureBuilder = new SimpleFeatureBuilder(COORD);
+
+        FeatureSink points = metrics.counting(sinks[0], LocationTagParser.Kind.POINT);
+        FeatureSink lines = metrics.counting(sinks[1], LocationTagParser.Kind.LINE);
+        FeatureSink polygons = metrics.counting(sinks[2], LocationTagParser.Kind.POLYGON);
+
+        //when resuming, the datum points are already in the shapefile
+        DatumRegistry datums = CSV2Shape.readDatumFile(datumFile, geometryFactory,
+                coordFeatureBuilder, writeDatums ? points : feature -> { });
+
+        geometryCache = geometryCacheSize > 0 ? new GeometryCache(geometryCacheSize) : null;
+        if (readsFieldNotes()) {
+            CSV2Shape.readFieldNotes(tagFile, datums, geometryCache, metrics, geometryFactory,
+                    points, COORD, lines, LINE, polygons, POLYGON);
+            return;
+        }
+        CSV2Shape.readTagFile(tagFile, startOffset, datums, geometryCache, metrics, listener, fingerprinting,
+                geometryFactory, points, COORD, lines, LINE, polygons, POLYGON);
+    }
+
+    private File[] getOutputFiles(SimpleFeatureType COORD, SimpleFeatureType LINE, SimpleFeatureType POLYGON) {
+        return outputFiles != null ? outputFiles.clone() : new File[] {
+                getOutputFile(COORD.getTypeName()),
+                getOutputFile(LINE.getTypeName()),
+                getOutputFile(POLYGON.getTypeName())
+        };
+    }
+
+    /**
+     * @return whether all three shapefiles were written after the input files last changed, by a run
+     *         which was not interrupted
+     * @throws SchemaException
+     */
+    public boolean isUpToDate() throws SchemaException {
+        if (getCheckpointFile().exists()) {
+            return false;
+        }
+        long inputs = Math.max(datumFile.lastModified(), tagFile.lastModified());
+        for (File file : getOutputFiles(CSV2Shape.createCoordType(), CSV2Shape.createLineType(),
+                CSV2Shape.createPolygonType())) {
+            if (!file.isFile() || file.lastModified() <= inputs) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the tag file is a text file of field notes rather than a tag csv file
+     */
+    public boolean readsFieldNotes() {
+        return tagFile.getName().toLowerCase().endsWith(".txt");
+    }
+
+    /**
+     * Names the shapefile the same way the save dialog in CSV2Shape does by default: the tag file's
+     * name without its extension, followed by the type name
+     * @param type
+     * @return
+     */
+    File getOutputFile(String type) {
+        return new File(outputDir, baseName() + type + ".shp");
+    }
+
+    //the tag file's name without its extension
+    private String baseName() {
+        String name = tagFile.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return datumFile + " + " + tagFile + " -> " + (outputFiles != null ? Arrays.toString(outputFiles) : outputDir);
+    }
+}
@@ -0,0 +1,394 @@
+package org.geotools.ArchShape;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Counters and stage timers for one conversion. Every counter may be updated from any thread.
+ *
+ * <p>While a conversion runs its metrics can be registered as an MXBean under
+ * {@code org.geotools.ArchShape:type=ConversionMetrics,name=<job>}; when it has finished they can be
+ * written out as a JSON summary. Stage times are summed over the threads working on the stage, so
+ * with parallel parsing they can add up to more than the elapsed time. The peak heap is the most heap
+ * still in use after any garbage collection while the conversion ran, which leaves out garbage but
+ * includes whatever else the JVM holds, such as other conversions running at the same time.
+ */
+public class ConversionMetrics implements ConversionMetricsMXBean {
+
+    public static final String DOMAIN = "org.geotools.ArchShape";
+
+    /**
+     * Stages a row goes through on its way into a shapefile
+     */
+    public enum Stage {
+        /** splitting the mapped file into records and fields */
+        READ,
+        /** parsing location tags */
+        PARSE,
+        /** projecting tags into geometries, or finding them in the geometry cache */
+        GEOMETRY,
+        /** building features from geometries and attributes */
+        FEATURE,
+        /** handing features to the shapefile stores */
+        WRITE,
+        /** committing the stores' transactions to disk */
+        COMMIT
+    }
+
+    /**
+     * Reasons a row cannot be converted
+     */
+    public enum Failure {
+        MALFORMED_TAG, UNKNOWN_SITE, MISSING_COLUMN, CONVERSION_ERROR
+    }
+
+    private final String job;
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos;
+    private volatile String status = "running";
+    private volatile String error;
+
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder[] features = adders(LocationTagParser.Kind.values().length);
+    private final LongAdder[] failures = adders(Failure.values().length);
+    private final LongAdder[] stageNanos = adders(Stage.values().length);
+    private final LongAdder mapNanos = new LongAdder(); //time the read stage spent mapping records
+
+    private final Set<String> heapPools = new HashSet<String>();
+    private final AtomicLong peakHeapBytes = new AtomicLong();
+    private final NotificationListener collections = this::collected;
+
+    private ObjectName name;
+
+    /**
+     * Start the metrics of a conversion, listening to the JVM's garbage collections until
+     * {@link #finish(Throwable)}
+     * @param job
+     */
+    public ConversionMetrics(String job) {
+        this.job = job;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool.getName());
+            }
+        }
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                ((NotificationEmitter) collector).addNotificationListener(collections, null, null);
+            }
+        }
+    }
+
+    //the heap in use once a collection has finished, summed over the pools at that one moment
+    private void collected(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        Map<String, MemoryUsage> after = GarbageCollectionNotificationInfo
+                .from((CompositeData) notification.getUserData()).getGcInfo().getMemoryUsageAfterGc();
+        long used = 0;
+        for (Map.Entry<String, MemoryUsage> pool : after.entrySet()) {
+            if (heapPools.contains(pool.getKey())) {
+                used += pool.getValue().getUsed();
+            }
+        }
+        peakHeapBytes.accumulateAndGet(used, Math::max);
+    }
+
+    private static LongAdder[] adders(int n) {
+        LongAdder[] adders = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    void rowRead() {
+        rowsRead.increment();
+    }
+
+    void failure(Failure failure) {
+        failures[failure.ordinal()].increment();
+    }
+
+    void addStageNanos(Stage stage, long nanos) {
+        stageNanos[stage.ordinal()].add(nanos);
+    }
+
+    /**
+     * Record the time spent mapping records, which is to be taken out of the read stage
+     * @param nanos
+     */
+    void addMapNanos(long nanos) {
+        mapNanos.add(nanos);
+    }
+
+    /**
+     * Record the time the reader's tasks spent on their chunks, mapping included
+     * @param chunkNanos
+     */
+    void addReadNanos(long chunkNanos) {
+        addStageNanos(Stage.READ, Math.max(0, chunkNanos - mapNanos.sumThenReset()));
+    }
+
+    /**
+     * @param sink
+     * @param kind
+     * @return a sink which counts the features it passes on to sink as features of the given kind
+     */
+    FeatureSink counting(final FeatureSink sink, LocationTagParser.Kind kind) {
+        final LongAdder counter = features[kind.ordinal()];
+        return feature -> {
+            counter.increment();
+            sink.add(feature);
+        };
+    }
+
+    /**
+     * Mark the conversion as finished
+     * @param failure the exception the conversion failed with, or null if it succeeded
+     */
+    void finish(Throwable failure) {
+        endNanos = System.nanoTime();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                try {
+                    ((NotificationEmitter) collector).removeNotificationListener(collections);
+                } catch (ListenerNotFoundException e) {
+                    //finished already
+                }
+            }
+        }
+        if (failure == null) {
+            status = "succeeded";
+        } else {
+            status = "failed";
+            error = failure.toString();
+        }
+    }
+
+    /**
+     * Register these metrics with the platform MBean server. A conversion still runs if this fails.
+     */
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            name = new ObjectName(DOMAIN + ":type=ConversionMetrics,name=" + ObjectName.quote(job));
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            System.out.println("Cannot register metrics for " + job + ": " + e);
+            name = null;
+        }
+    }
+
+    void unregister() {
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                System.out.println("Cannot unregister metrics for " + job + ": " + e);
+            }
+            name = null;
+        }
+    }
+
+    @Override
+    public String getJob() {
+        return job;
+    }
+
+    @Override
+    public String getStatus() {
+        return status;
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+    }
+
+    @Override
+    public long getRowsRead() {
+        return rowsRead.sum();
+    }
+
+    @Override
+    public double getRowsPerSecond() {
+        long millis = getElapsedMillis();
+        return millis == 0 ? 0 : getRowsRead() * 1000.0 / millis;
+    }
+
+    @Override
+    public long getPointCount() {
+        return features[LocationTagParser.Kind.POINT.ordinal()].sum();
+    }
+
+    @Override
+    public long getLineCount() {
+        return features[LocationTagParser.Kind.LINE.ordinal()].sum();
+    }
+
+    @Override
+    public long getPolygonCount() {
+        return features[LocationTagParser.Kind.POLYGON.ordinal()].sum();
+    }
+
+    public long getFailureCount(Failure failure) {
+        return failures[failure.ordinal()].sum();
+    }
+
+    @Override
+    public Map<String, Long> getParseFailures() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (Failure failure : Failure.values()) {
+            result.put(key(failure), getFailureCount(failure));
+        }
+        return result;
+    }
+
+    public long getStageMillis(Stage stage) {
+        return TimeUnit.NANOSECONDS.toMillis(stageNanos[stage.ordinal()].sum());
+    }
+
+    @Override
+    public Map<String, Long> getStageMillis() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (Stage stage : Stage.values()) {
+            result.put(key(stage), getStageMillis(stage));
+        }
+        return result;
+    }
+
+    @Override
+    public long getPeakHeapBytes() {
+        return peakHeapBytes.get();
+    }
+
+    //MALFORMED_TAG -> malformedTag
+    private static String key(Enum<?> value) {
+        StringBuilder key = new StringBuilder();
+        boolean upper = false;
+        for (char c : value.name().toLowerCase(Locale.ROOT).toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                key.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the metrics as a JSON object
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"job\": ").append(quote(job)).append(",\n");
+        json.append("  \"status\": ").append(quote(status)).append(",\n");
+        json.append("  \"error\": ").append(error == null ? "null" : quote(error)).append(",\n");
+        json.append("  \"elapsedMillis\": ").append(getElapsedMillis()).append(",\n");
+        json.append("  \"rowsRead\": ").append(getRowsRead()).append(",\n");
+        json.append("  \"rowsPerSecond\": ").append(String.format(Locale.ROOT, "%.1f", getRowsPerSecond())).append(",\n");
+        json.append("  \"features\": {\"point\": ").append(getPointCount())
+                .append(", \"line\": ").append(getLineCount())
+                .append(", \"polygon\": ").append(getPolygonCount()).append("},\n");
+        json.append("  \"parseFailures\": ");
+        appendObject(json, getParseFailures());
+        json.append(",\n  \"stageMillis\": ");
+        appendObject(json, getStageMillis());
+        json.append(",\n  \"peakHeapBytes\": ").append(getPeakHeapBytes()).append("\n}\n");
+        return json.toString();
+    }
+
+    private static void appendObject(StringBuilder json, Map<String, Long> values) {
+        json.append('{');
+        String separator = "";
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            json.append(separator).append(quote(entry.getKey())).append(": ").append(entry.getValue());
+            separator = ", ";
+        }
+        json.append('}');
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '"':
+                quoted.append("\\\"");
+                break;
+            case '\\':
+                quoted.append("\\\\");
+                break;
+            case '\n':
+                quoted.append("\\n");
+                break;
+            case '\r':
+                quoted.append("\\r");
+                break;
+            case '\t':
+                quoted.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    quoted.append(String.format("\\u%04x", (int) c));
+                } else {
+                    quoted.append(c);
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Write the JSON summary to a file
+     * @param file
+     * @throws IOException
+     */
+    public void writeJson(File file) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        try {
+            writer.write(toJson());
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getRowsRead() + " rows in " + getElapsedMillis() + " ms ("
+                + String.format(Locale.ROOT, "%.0f", getRowsPerSecond()) + " rows/s), "
+                + getPointCount() + " points, " + getLineCount() + " lines, " + getPolygonCount() + " polygons";
+    }
+}
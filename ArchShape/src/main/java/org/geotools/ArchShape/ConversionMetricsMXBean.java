@@ -0,0 +1,41 @@
+package org.geotools.ArchShape;
+
+import java.util.Map;
+
+/**
+ * The progress of a running conversion, as seen over JMX
+ */
+public interface ConversionMetricsMXBean {
+
+    String getJob();
+
+    String getStatus();
+
+    long getElapsedMillis();
+
+    long getRowsRead();
+
+    double getRowsPerSecond();
+
+    long getPointCount();
+
+    long getLineCount();
+
+    long getPolygonCount();
+
+    /**
+     * @return number of rows that could not be converted, by reason
+     */
+    Map<String, Long> getParseFailures();
+
+    /**
+     * @return milliseconds spent in each stage, summed over the threads working on it
+     */
+    Map<String, Long> getStageMillis();
+
+    /**
+     * @return the most heap the JVM still used after a garbage collection while the conversion ran,
+     *         or 0 if there was none
+     */
+    long getPeakHeapBytes();
+}
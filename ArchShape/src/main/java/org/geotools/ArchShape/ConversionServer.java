@@ -0,0 +1,294 @@
+package org.geotools.ArchShape;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.geotools.data.shapefile.ShapefileDataStore;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP service which converts uploaded datum and tag csv files into shapefiles, so that other
+ * tools can call the converter without paying for a JVM and GeoTools start up each time.
+ *
+ * <p>{@code POST /convert} takes a multipart/form-data body with the datum file in a part named
+ * {@code datum} and the tag file in a part named {@code tags}, and answers with a zip of the Point,
+ * Line and Polygon shapefiles (.shp, .shx, .dbf, .prj and .qix) and the metrics report. The query
+ * may add {@code fault-tolerant}, to set bad rows aside in a reject file in the zip, {@code hilbert},
+ * {@code footprints} or {@code footprints-by-type} to add the Footprint shapefile, and
+ * {@code crs=EPSG:32615} (or {@code crs=utm}) to reproject the shapefiles, and {@code index} to add the
+ * {@link SpatialIndex} of the features. Uploads and outputs go through temporary files, never whole into memory.
+ * {@code GET /health} answers ok.
+ *
+ * <p>The server only listens on the loopback address. Each request is served on a virtual thread
+ * where the Java runtime has them, and at most maxConcurrent conversions run at once.
+ *
+ * <pre>
+ * ConversionServer [--port n] [--max-concurrent n]
+ * </pre>
+ */
+public class ConversionServer {
+
+    public static final int DEFAULT_PORT = 8088;
+
+    private static final String[] SHAPEFILE_EXTENSIONS = {".shp", ".shx", ".dbf", ".prj", ".qix"};
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    /**
+     * @param port to listen on, or 0 for any free port
+     * @param maxConcurrent number of conversions that may run at once
+     * @throws IOException
+     */
+    public ConversionServer(int port, int maxConcurrent) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = WatchDaemon.newExecutor();
+        this.permits = new Semaphore(maxConcurrent);
+        server.setExecutor(executor);
+        server.createContext("/convert", this::convert);
+        server.createContext("/health", exchange -> {
+            try {
+                send(exchange, 200, "ok");
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests, giving those being served up to delaySeconds to finish
+     * @param delaySeconds
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void convert(HttpExchange exchange) throws IOException {
+        File work = null;
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                send(exchange, 405, "Use POST with a multipart/form-data body holding datum and tags parts");
+                return;
+            }
+            String boundary = boundary(exchange.getRequestHeaders().getFirst("Content-Type"));
+            if (boundary == null) {
+                send(exchange, 400, "Expected a multipart/form-data body");
+                return;
+            }
+
+            work = Files.createTempDirectory("archshape").toFile();
+            File datumFile = null;
+            File tagFile = null;
+            MultipartReader parts = new MultipartReader(exchange.getRequestBody(), boundary);
+            for (Map<String, String> part = parts.nextPart(); part != null; part = parts.nextPart()) {
+                String name = part.get("name");
+                File target;
+                if ("datum".equals(name)) {
+                    target = datumFile = new File(work, "upload" + BatchConverter.DATUM_SUFFIX);
+                } else if ("tags".equals(name)) {
+                    //the shapefiles are named after the tag file, as they are everywhere else
+                    target = tagFile = new File(work, fileName(part.get("filename"), "upload" + BatchConverter.TAGS_SUFFIX));
+                } else {
+                    continue;
+                }
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(target), 1 << 16);
+                try {
+                    parts.copyBody(out);
+                } finally {
+                    out.close();
+                }
+            }
+            if (datumFile == null || tagFile == null) {
+                send(exchange, 400, "Expected datum and tags parts");
+                return;
+            }
+
+            //the query holds BatchConverter options without their dashes; nothing is kept to update incrementally
+            List<String> options = new ArrayList<String>();
+            String query = exchange.getRequestURI().getQuery();
+            for (String flag : query == null ? new String[0] : query.split("&")) {
+                if (BatchConverter.isOption("--" + flag) && !flag.equals("incremental")) {
+                    options.add("--" + flag);
+                }
+            }
+            ConversionJob job = new ConversionJob(datumFile, tagFile, work);
+            BatchConverter.configure(job, options);
+            //one conversion per request, so there is nothing to resume
+            job.setCheckpointInterval(0);
+
+            File[] written;
+            permits.acquire();
+            try {
+                written = job.call();
+            } catch (Exception e) {
+                send(exchange, 422, "Conversion failed: " + e);
+                return;
+            } finally {
+                permits.release();
+            }
+
+            List<File> files = new ArrayList<File>();
+            for (File shapefile : written) {
+                createSpatialIndex(shapefile);
+                String base = shapefile.getName().substring(0, shapefile.getName().length() - ".shp".length());
+                for (String extension : SHAPEFILE_EXTENSIONS) {
+                    File file = new File(shapefile.getParentFile(), base + extension);
+                    if (file.isFile()) {
+                        files.add(file);
+                    }
+                }
+            }
+            for (File file : new File[] {job.getIndexFile(), job.getMetricsFile(), job.getRejectFile()}) {
+                if (file.isFile()) {
+                    files.add(file);
+                }
+            }
+            sendZip(exchange, tagFile, files);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, "Interrupted");
+        } catch (IOException e) {
+            //the headers may already be gone, in which case the client sees the response cut short
+            System.out.println("Request from " + exchange.getRemoteAddress() + " failed: " + e);
+            try {
+                send(exchange, 400, e.toString());
+            } catch (IOException ignored) {
+            }
+        } finally {
+            exchange.close();
+            if (work != null) {
+                delete(work);
+            }
+        }
+    }
+
+    //the zip is sent in chunks as it is made, straight from the files
+    private static void sendZip(HttpExchange exchange, File tagFile, List<File> files) throws IOException {
+        String name = tagFile.getName().replaceFirst("\\.[^.]*$", "") + ".zip";
+        exchange.getResponseHeaders().set("Content-Type", "application/zip");
+        exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + name + "\"");
+        exchange.sendResponseHeaders(200, 0);
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(exchange.getResponseBody(), 1 << 16));
+        try {
+            for (File file : files) {
+                zip.putNextEntry(new ZipEntry(file.getName()));
+                Files.copy(file.toPath(), zip);
+                zip.closeEntry();
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    //make sure the .qix is there to send, as the shapefile writer leaves it to the first reader
+    private static void createSpatialIndex(File shapefile) {
+        try {
+            ShapefileDataStore store = new ShapefileDataStore(shapefile.toURI().toURL());
+            try {
+                store.createSpatialIndex(true);
+            } finally {
+                store.dispose();
+            }
+        } catch (IOException e) {
+            System.out.println("Cannot index " + shapefile + ": " + e);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    /**
+     * @param contentType
+     * @return the boundary of a multipart/form-data content type, or null if it is not one
+     */
+    static String boundary(String contentType) {
+        if (contentType == null || !contentType.toLowerCase().startsWith("multipart/form-data")) {
+            return null;
+        }
+        for (String parameter : contentType.split(";")) {
+            parameter = parameter.trim();
+            if (parameter.toLowerCase().startsWith("boundary=")) {
+                String boundary = parameter.substring("boundary=".length());
+                if (boundary.length() >= 2 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                }
+                return boundary.isEmpty() ? null : boundary;
+            }
+        }
+        return null;
+    }
+
+    //a file name safe to create in the work directory
+    private static String fileName(String uploaded, String fallback) {
+        if (uploaded == null) {
+            return fallback;
+        }
+        String name = new File(uploaded.replace('\\', '/')).getName().replaceAll("[^A-Za-z0-9._-]", "_");
+        boolean reserved = name.isEmpty() || name.startsWith(".") || name.endsWith(BatchConverter.DATUM_SUFFIX);
+        return reserved ? fallback : name;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = DEFAULT_PORT;
+        int maxConcurrent = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--max-concurrent") && i + 1 < args.length) {
+                maxConcurrent = Integer.parseInt(args[++i]);
+            } else {
+                System.out.println("Usage: ConversionServer [--port n] [--max-concurrent n]");
+                System.exit(2);
+            }
+        }
+        ConversionServer server = new ConversionServer(port, Math.max(1, maxConcurrent));
+        server.start();
+        System.out.println("Converting on http://localhost:" + server.getPort() + "/convert");
+    }
+}
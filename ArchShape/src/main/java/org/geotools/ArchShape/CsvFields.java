@@ -0,0 +1,110 @@
+package org.geotools.ArchShape;
+
+import java.util.Arrays;
+
+/**
+ * Splits one line of a comma separated values file into its fields in a single pass. Fields may be
+ * wrapped in double quotes, in which case they may contain commas, and a doubled quote inside a
+ * quoted field stands for one quote character.
+ *
+ * <p>The array of fields is reused from one line to the next, so an instance must not be shared
+ * between threads.
+ */
+public final class CsvFields {
+
+    private String[] fields = new String[8];
+    private int count;
+
+    /**
+     * Split a line into fields
+     * @param line
+     * @return the number of fields found
+     */
+    public int split(String line) {
+        count = 0;
+        int length = line.length();
+        int pos = 0;
+
+        while (true) {
+            String field;
+            if (pos < length && line.charAt(pos) == '"') {
+                //quoted field: read up to the closing quote
+                int start = ++pos;
+                StringBuilder escaped = null;
+                while (pos < length) {
+                    char c = line.charAt(pos);
+                    if (c == '"') {
+                        if (pos + 1 < length && line.charAt(pos + 1) == '"') {
+                            //a doubled quote is an escaped quote
+                            if (escaped == null) {
+                                escaped = new StringBuilder();
+                            }
+                            escaped.append(line, start, pos + 1);
+                            pos += 2;
+                            start = pos;
+                            continue;
+                        }
+                        break;
+                    }
+                    pos++;
+                }
+                if (escaped == null) {
+                    field = line.substring(start, pos);
+                } else {
+                    field = escaped.append(line, start, pos).toString();
+                }
+                pos++; //skip the closing quote
+
+                //anything between the closing quote and the next comma is kept, as other readers do
+                int comma = line.indexOf(',', Math.min(pos, length));
+                int fieldEnd = comma < 0 ? length : comma;
+                if (pos < fieldEnd) {
+                    field = field + line.substring(pos, fieldEnd);
+                }
+                pos = fieldEnd;
+            } else {
+                int comma = line.indexOf(',', pos);
+                int fieldEnd = comma < 0 ? length : comma;
+                field = line.substring(pos, fieldEnd);
+                pos = fieldEnd;
+            }
+
+            add(field);
+            if (pos >= length) {
+                return count;
+            }
+            pos++; //skip the comma
+            if (pos == length) {
+                //a trailing comma means there is one more, empty, field
+                add("");
+                return count;
+            }
+        }
+    }
+
+    /**
+     * @param index
+     * @return the field at index in the last line split
+     * @throws ArrayIndexOutOfBoundsException if the line had no such field
+     */
+    public String get(int index) {
+        if (index >= count) {
+            throw new ArrayIndexOutOfBoundsException("Field " + index + " requested but the line has " + count);
+        }
+        return fields[index];
+    }
+
+    /**
+     * @return the number of fields in the last line split
+     */
+    public int size() {
+        return count;
+    }
+
+    private void add(String field) {
+        if (count == fields.length) {
+            fields = Arrays.copyOf(fields, count * 2);
+        }
+        fields[count++] = field;
+    }
+}
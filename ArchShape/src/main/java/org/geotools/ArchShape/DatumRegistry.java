@@ -0,0 +1,79 @@
+package org.geotools.ArchShape;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.locationtech.jts.geom.Coordinate;
+
+/**
+ * The datum points of one or more sites, keyed by the site's label in the datum csv file. Each datum is
+ * kept as the LocalProjection around it, which is computed once when the datum is registered.
+ *
+ * <p>Datums are registered once while the datum file is read and then looked up for every row of
+ * the tag file, possibly from many threads at once. Registering therefore copies the map and
+ * publishes the copy, so that lookups are plain, lock free reads of an unchanging map.
+ */
+public final class DatumRegistry {
+
+    private volatile Map<String, LocalProjection> datums = Collections.emptyMap();
+    private volatile String defaultSite; //the last datum registered, used for rows without a site
+
+    /**
+     * Register the datum of a site, replacing any earlier datum with the same name
+     * @param site
+     * @param datum
+     */
+    public synchronized void register(String site, Coordinate datum) {
+        String key = normalize(site);
+        Map<String, LocalProjection> copy = new HashMap<String, LocalProjection>(datums);
+        copy.put(key, new LocalProjection(datum));
+        datums = Collections.unmodifiableMap(copy);
+        defaultSite = key;
+    }
+
+    /**
+     * @param site
+     * @return the projection around the site's datum, or null if there is no such site
+     */
+    public LocalProjection get(String site) {
+        return datums.get(normalize(site));
+    }
+
+    /**
+     * Find the datum a row of the tag file refers to
+     * @param site the row's site, or null or blank if the row does not name one
+     * @return the projection around the site's datum, or around the last datum registered if no site is given
+     * @throws IllegalArgumentException if the site is unknown or no datum has been registered
+     */
+    public LocalProjection resolve(String site) {
+        String key = site == null ? "" : normalize(site);
+        if (key.isEmpty()) {
+            if (defaultSite == null) {
+                throw new IllegalArgumentException("No datum has been registered");
+            }
+            key = defaultSite;
+        }
+        LocalProjection datum = datums.get(key);
+        if (datum == null) {
+            throw new IllegalArgumentException("Unknown site \"" + site + "\"");
+        }
+        return datum;
+    }
+
+    /**
+     * @return the names of all registered sites
+     */
+    public Set<String> getSites() {
+        return datums.keySet();
+    }
+
+    public int size() {
+        return datums.size();
+    }
+
+    private static String normalize(String site) {
+        return site.trim();
+    }
+}
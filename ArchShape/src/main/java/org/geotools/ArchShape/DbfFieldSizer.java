@@ -0,0 +1,291 @@
+package org.geotools.ArchShape;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Resizes the character fields of a shapefile's .dbf file. Shapefile stores give every String
+ * attribute the widest field a dBase file allows, {@link #MAX_LENGTH} bytes, so the descriptions and
+ * location tags of a site, which are rarely more than a few dozen characters, are mostly padding.
+ * {@link #fit(File)} narrows each character field to its longest value; {@link #widen(File, int)}
+ * makes room again, so that new, longer values are not cut short.
+ *
+ * <p>The file is rewritten byte for byte, so values keep whatever encoding they were written in, and
+ * replaced only once the new file is complete. Numbers, dates and the records' order are untouched.
+ */
+public final class DbfFieldSizer {
+
+    public static final int MAX_LENGTH = 254;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int FIELD_SIZE = 32;
+    private static final byte END_OF_FILE = 0x1A;
+
+    private DbfFieldSizer() {
+    }
+
+    /**
+     * @param shapefile a .shp file
+     * @return its .dbf file
+     */
+    public static File dbfFor(File shapefile) {
+        String path = shapefile.getPath();
+        if (path.toLowerCase().endsWith(".shp")) {
+            path = path.substring(0, path.length() - 4);
+        }
+        return new File(path + ".dbf");
+    }
+
+    /**
+     * Narrow every character field to the longest value in it, and at least one byte
+     * @param dbf
+     * @return number of bytes the file shrank by
+     * @throws IOException
+     */
+    public static long fit(File dbf) throws IOException {
+        Header header = Header.read(dbf);
+        int[] longest = new int[header.lengths.length];
+        InputStream in = new BufferedInputStream(new FileInputStream(dbf), 1 << 16);
+        try {
+            skipFully(in, header.headerLength);
+            byte[] record = new byte[header.recordLength];
+            for (long r = 0; r < header.records; r++) {
+                readFully(in, record, dbf);
+                int offset = 1; //after the deletion flag
+                for (int f = 0; f < header.lengths.length; f++) {
+                    if (header.types[f] == 'C') {
+                        longest[f] = Math.max(longest[f], valueLength(record, offset, header.lengths[f]));
+                    }
+                    offset += header.lengths[f];
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        int[] lengths = header.lengths.clone();
+        for (int f = 0; f < lengths.length; f++) {
+            if (header.types[f] == 'C') {
+                lengths[f] = Math.max(1, longest[f]);
+            }
+        }
+        long before = dbf.length();
+        rewrite(dbf, header, lengths);
+        return before - dbf.length();
+    }
+
+    /**
+     * Widen every character field narrower than length to length bytes
+     * @param dbf
+     * @param length at most {@link #MAX_LENGTH}
+     * @throws IOException
+     */
+    public static void widen(File dbf, int length) throws IOException {
+        if (length <= 0 || length > MAX_LENGTH) {
+            throw new IllegalArgumentException("length must be from 1 to " + MAX_LENGTH + ": " + length);
+        }
+        Header header = Header.read(dbf);
+        int[] lengths = header.lengths.clone();
+        for (int f = 0; f < lengths.length; f++) {
+            if (header.types[f] == 'C') {
+                lengths[f] = Math.max(lengths[f], length);
+            }
+        }
+        rewrite(dbf, header, lengths);
+    }
+
+    /**
+     * Widen each character field narrower than the given length to that length, leaving the file
+     * alone if every field is wide enough already
+     * @param dbf
+     * @param lengths per field, in the order of the fields; lengths above {@link #MAX_LENGTH} are
+     *        capped
+     * @throws IOException
+     */
+    static void widen(File dbf, int[] lengths) throws IOException {
+        Header header = Header.read(dbf);
+        if (lengths.length != header.lengths.length) {
+            throw new IllegalArgumentException(dbf + " has " + header.lengths.length + " fields, not " + lengths.length);
+        }
+        int[] widened = header.lengths.clone();
+        for (int f = 0; f < widened.length; f++) {
+            if (header.types[f] == 'C') {
+                widened[f] = Math.max(widened[f], Math.min(lengths[f], MAX_LENGTH));
+            }
+        }
+        rewrite(dbf, header, widened);
+    }
+
+    /**
+     * @param dbf
+     * @return the length of each field, in bytes, in the order of the fields
+     * @throws IOException
+     */
+    public static int[] getFieldLengths(File dbf) throws IOException {
+        return Header.read(dbf).lengths;
+    }
+
+    //length of a value without its padding of spaces (or, from some writers, zero bytes)
+    private static int valueLength(byte[] record, int offset, int length) {
+        int end = length;
+        while (end > 0 && (record[offset + end - 1] == ' ' || record[offset + end - 1] == 0)) {
+            end--;
+        }
+        return end;
+    }
+
+    //copy the file with the fields resized, then put the copy in its place
+    private static void rewrite(File dbf, Header header, int[] lengths) throws IOException {
+        if (Arrays.equals(lengths, header.lengths)) {
+            return;
+        }
+        int recordLength = 1;
+        for (int length : lengths) {
+            recordLength += length;
+        }
+
+        File temp = new File(dbf.getPath() + ".resize");
+        InputStream in = new BufferedInputStream(new FileInputStream(dbf), 1 << 16);
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 1 << 16);
+            try {
+                byte[] head = new byte[header.headerLength];
+                readFully(in, head, dbf);
+                head[10] = (byte) recordLength;
+                head[11] = (byte) (recordLength >>> 8);
+                //each descriptor holds the field's length and its offset in the record, after the deletion flag
+                int address = 1;
+                for (int f = 0; f < lengths.length; f++) {
+                    int descriptor = HEADER_SIZE + f * FIELD_SIZE;
+                    head[descriptor + 12] = (byte) address;
+                    head[descriptor + 13] = (byte) (address >>> 8);
+                    head[descriptor + 14] = (byte) (address >>> 16);
+                    head[descriptor + 15] = (byte) (address >>> 24);
+                    head[descriptor + 16] = (byte) lengths[f];
+                    address += lengths[f];
+                }
+                out.write(head);
+
+                byte[] record = new byte[header.recordLength];
+                byte[] resized = new byte[recordLength];
+                for (long r = 0; r < header.records; r++) {
+                    readFully(in, record, dbf);
+                    resized[0] = record[0];
+                    int from = 1;
+                    int to = 1;
+                    for (int f = 0; f < lengths.length; f++) {
+                        int copied = Math.min(header.lengths[f], lengths[f]);
+                        System.arraycopy(record, from, resized, to, copied);
+                        Arrays.fill(resized, to + copied, to + lengths[f], (byte) ' ');
+                        from += header.lengths[f];
+                        to += lengths[f];
+                    }
+                    out.write(resized);
+                }
+                out.write(END_OF_FILE);
+            } finally {
+                out.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            throw e;
+        } finally {
+            in.close();
+        }
+
+        try {
+            Files.move(temp.toPath(), dbf.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), dbf.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] bytes, File dbf) throws IOException {
+        int read = 0;
+        while (read < bytes.length) {
+            int n = in.read(bytes, read, bytes.length - read);
+            if (n < 0) {
+                throw new IOException(dbf + " ends before its last record");
+            }
+            read += n;
+        }
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * The parts of a dBase header that resizing and appending need
+     */
+    static final class Header {
+        long records;
+        int headerLength;
+        int recordLength;
+        char[] types;
+        int[] lengths;
+
+        static Header read(File dbf) throws IOException {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(dbf)));
+            try {
+                byte[] fixed = new byte[HEADER_SIZE];
+                in.readFully(fixed);
+                Header header = new Header();
+                header.records = (fixed[4] & 0xFFL) | (fixed[5] & 0xFFL) << 8 | (fixed[6] & 0xFFL) << 16
+                        | (fixed[7] & 0xFFL) << 24;
+                header.headerLength = (fixed[8] & 0xFF) | (fixed[9] & 0xFF) << 8;
+                header.recordLength = (fixed[10] & 0xFF) | (fixed[11] & 0xFF) << 8;
+
+                int fields = (header.headerLength - HEADER_SIZE) / FIELD_SIZE;
+                header.types = new char[fields];
+                header.lengths = new int[fields];
+                byte[] field = new byte[FIELD_SIZE];
+                int count = 0;
+                while (count < fields) {
+                    in.readFully(field, 0, 1);
+                    if (field[0] == 0x0D) {
+                        break; //end of the field descriptors
+                    }
+                    in.readFully(field, 1, FIELD_SIZE - 1);
+                    header.types[count] = (char) (field[11] & 0xFF);
+                    header.lengths[count] = field[16] & 0xFF;
+                    count++;
+                }
+                header.types = Arrays.copyOf(header.types, count);
+                header.lengths = Arrays.copyOf(header.lengths, count);
+
+                int recordLength = 1;
+                for (int length : header.lengths) {
+                    recordLength += length;
+                }
+                if (recordLength != header.recordLength) {
+                    throw new IOException(dbf + " has records of " + header.recordLength
+                            + " bytes but fields adding up to " + recordLength);
+                }
+                return header;
+            } catch (EOFException e) {
+                throw new IOException(dbf + " is not a complete dBase file", e);
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.geotools.ArchShape;
+
+import java.util.Locale;
+
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * The coordinate reference systems ArchShape uses, built from well known text held in the code
+ * instead of being looked up in the EPSG database. The first lookup in the database unpacks and
+ * starts an embedded HSQL database, which takes longer than converting a small site, so WGS 84 and
+ * the WGS 84 UTM zones, which are all a conversion normally needs, never touch it.
+ *
+ * <p>Axes are in x, y order: longitude before latitude, easting before northing.
+ */
+final class EmbeddedCrs {
+
+    static final CoordinateReferenceSystem WGS84 = DefaultGeographicCRS.WGS84;
+
+    private static final String UTM_WKT = "PROJCS[\"WGS 84 / UTM zone %d%s\", "
+            + "GEOGCS[\"WGS 84\", DATUM[\"World Geodetic System 1984\", "
+            + "SPHEROID[\"WGS 84\", 6378137.0, 298.257223563, AUTHORITY[\"EPSG\",\"7030\"]], AUTHORITY[\"EPSG\",\"6326\"]], "
+            + "PRIMEM[\"Greenwich\", 0.0, AUTHORITY[\"EPSG\",\"8901\"]], UNIT[\"degree\", 0.017453292519943295], "
+            + "AXIS[\"Geodetic longitude\", EAST], AXIS[\"Geodetic latitude\", NORTH], AUTHORITY[\"EPSG\",\"4326\"]], "
+            + "PROJECTION[\"Transverse_Mercator\", AUTHORITY[\"EPSG\",\"9807\"]], "
+            + "PARAMETER[\"central_meridian\", %d.0], PARAMETER[\"latitude_of_origin\", 0.0], "
+            + "PARAMETER[\"scale_factor\", 0.9996], PARAMETER[\"false_easting\", 500000.0], "
+            + "PARAMETER[\"false_northing\", %d.0], UNIT[\"m\", 1.0], AXIS[\"Easting\", EAST], AXIS[\"Northing\", NORTH], "
+            + "AUTHORITY[\"EPSG\",\"%d\"]]";
+
+    private EmbeddedCrs() {
+    }
+
+    /**
+     * @param code such as EPSG:4326 or EPSG:32615
+     * @return the coordinate reference system, or null if it is not one of those held here
+     * @throws FactoryException
+     */
+    static CoordinateReferenceSystem get(String code) throws FactoryException {
+        String upper = code.trim().toUpperCase(Locale.ROOT);
+        if (!upper.startsWith("EPSG:")) {
+            return null;
+        }
+        int srid;
+        try {
+            srid = Integer.parseInt(upper.substring("EPSG:".length()).trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return forSrid(srid);
+    }
+
+    /**
+     * @param srid
+     * @return the coordinate reference system with that EPSG code, or null if it is not one of those held here
+     * @throws FactoryException
+     */
+    static CoordinateReferenceSystem forSrid(int srid) throws FactoryException {
+        if (srid == 4326) {
+            return WGS84;
+        }
+        if (srid > 32600 && srid <= 32660) {
+            return utm(srid - 32600, true);
+        }
+        if (srid > 32700 && srid <= 32760) {
+            return utm(srid - 32700, false);
+        }
+        return null;
+    }
+
+    /**
+     * @param zone from 1 to 60
+     * @param north whether the zone is in the northern hemisphere
+     * @return the WGS 84 UTM zone
+     * @throws FactoryException
+     */
+    static CoordinateReferenceSystem utm(int zone, boolean north) throws FactoryException {
+        if (zone < 1 || zone > 60) {
+            throw new IllegalArgumentException("No UTM zone " + zone);
+        }
+        return CRS.parseWKT(String.format(Locale.ROOT, UTM_WKT, zone, north ? "N" : "S", zone * 6 - 183,
+                north ? 0 : 10000000, (north ? 32600 : 32700) + zone));
+    }
+}
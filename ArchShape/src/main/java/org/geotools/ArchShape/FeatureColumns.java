@@ -0,0 +1,323 @@
+package org.geotools.ArchShape;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Holds many features of one type in a few primitive arrays instead of as feature and geometry
+ * objects, for when a whole site has to be kept in memory. Each row's geometry is a kind byte and a
+ * run of x, y values in one shared double array, and each other attribute is an int index into a
+ * table in which every distinct value, such as a repeated description, is kept only once.
+ *
+ * <p>Points, lines and polygons without holes, which is everything a conversion produces, are stored
+ * this way; any other geometry is kept as it is. Only x and y are kept. Features are built again, with
+ * new feature ids, by {@link #materialize(int, SimpleFeatureBuilder)} when they are needed.
+ */
+final class FeatureColumns {
+
+    static final byte NONE = 0;
+    static final byte POINT = 1;
+    static final byte LINE = 2;
+    static final byte POLYGON = 3;
+    static final byte OTHER = 4;
+
+    private final SimpleFeatureType schema;
+    private final int geometryIndex; //position of the geometry among the attributes, or -1
+    private final int[][] attributes; //value ids of each other attribute, by row
+    private final List<Object> values = new ArrayList<Object>();
+    private final Map<Object, Integer> valueIds = new HashMap<Object, Integer>();
+    private final Map<Integer, Geometry> others = new HashMap<Integer, Geometry>();
+    private GeometryFactory geometryFactory;
+
+    private int size;
+    private byte[] kinds;
+    private int[] coordinateStart; //index in coordinates of each row's first x, and of the end after the last row
+    private double[] coordinates;
+
+    FeatureColumns(SimpleFeatureType schema) {
+        this.schema = schema;
+        this.geometryIndex = schema.getGeometryDescriptor() == null ? -1
+                : schema.indexOf(schema.getGeometryDescriptor().getLocalName());
+        int capacity = 16;
+        this.attributes = new int[schema.getAttributeCount() - (geometryIndex < 0 ? 0 : 1)][capacity];
+        this.kinds = new byte[capacity];
+        this.coordinateStart = new int[capacity + 1];
+        this.coordinates = new double[capacity * 2];
+    }
+
+    SimpleFeatureType getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return the geometry factory of the features added, for building their geometries again
+     */
+    GeometryFactory getGeometryFactory() {
+        if (geometryFactory == null) {
+            geometryFactory = new GeometryFactory();
+        }
+        return geometryFactory;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of distinct attribute values held for the rows
+     */
+    int valueCount() {
+        return values.size();
+    }
+
+    /**
+     * Forget every row and the values they held, keeping the arrays for the next rows. Values are not
+     * kept from one batch of rows to the next, as tags are mostly unique and the table would otherwise
+     * grow with the whole input.
+     */
+    void clear() {
+        size = 0;
+        others.clear();
+        values.clear();
+        valueIds.clear();
+    }
+
+    /**
+     * @param feature of the schema
+     * @return the row the feature was added as
+     */
+    int add(SimpleFeature feature) {
+        if (size == kinds.length) {
+            grow();
+        }
+        int row = size;
+        int end = coordinateStart[row];
+
+        Object value = geometryIndex < 0 ? null : feature.getAttribute(geometryIndex);
+        byte kind;
+        if (!(value instanceof Geometry)) {
+            kind = NONE;
+        } else {
+            Geometry geometry = (Geometry) value;
+            if (geometryFactory == null) {
+                geometryFactory = geometry.getFactory();
+            }
+            if (geometry instanceof Point && !geometry.isEmpty()) {
+                kind = POINT;
+                end = append(end, ((Point) geometry).getCoordinateSequence());
+            } else if (geometry instanceof LineString && !(geometry instanceof LinearRing) && !geometry.isEmpty()) {
+                kind = LINE;
+                end = append(end, ((LineString) geometry).getCoordinateSequence());
+            } else if (geometry instanceof Polygon && !geometry.isEmpty() && ((Polygon) geometry).getNumInteriorRing() == 0) {
+                kind = POLYGON;
+                end = append(end, ((Polygon) geometry).getExteriorRing().getCoordinateSequence());
+            } else {
+                kind = OTHER;
+                others.put(row, geometry);
+            }
+        }
+        kinds[row] = kind;
+        coordinateStart[row + 1] = end;
+
+        int column = 0;
+        for (int i = 0; i < schema.getAttributeCount(); i++) {
+            if (i != geometryIndex) {
+                attributes[column++][row] = id(feature.getAttribute(i));
+            }
+        }
+        size++;
+        return row;
+    }
+
+    private int append(int end, CoordinateSequence sequence) {
+        int needed = end + sequence.size() * 2;
+        if (needed > coordinates.length) {
+            coordinates = Arrays.copyOf(coordinates, Math.max(needed, coordinates.length * 2));
+        }
+        for (int i = 0; i < sequence.size(); i++) {
+            coordinates[end++] = sequence.getX(i);
+            coordinates[end++] = sequence.getY(i);
+        }
+        return end;
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        coordinateStart = Arrays.copyOf(coordinateStart, capacity + 1);
+        for (int i = 0; i < attributes.length; i++) {
+            attributes[i] = Arrays.copyOf(attributes[i], capacity);
+        }
+    }
+
+    //the id of the value in the table, adding it if it is new; -1 for null
+    private int id(Object value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer id = valueIds.get(value);
+        if (id == null) {
+            id = values.size();
+            values.add(value);
+            valueIds.put(value, id);
+        }
+        return id;
+    }
+
+    /**
+     * @param row
+     * @return the geometry of the row, built again from its coordinates
+     */
+    Geometry getGeometry(int row) {
+        switch (kinds[row]) {
+        case POINT:
+            return getGeometryFactory().createPoint(new Coordinate(coordinates[coordinateStart[row]],
+                    coordinates[coordinateStart[row] + 1]));
+        case LINE:
+            return getGeometryFactory().createLineString(coordinates(row));
+        case POLYGON:
+            return getGeometryFactory().createPolygon(coordinates(row));
+        case OTHER:
+            return others.get(row);
+        default:
+            return null;
+        }
+    }
+
+    private Coordinate[] coordinates(int row) {
+        int start = coordinateStart[row];
+        Coordinate[] result = new Coordinate[(coordinateStart[row + 1] - start) / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new Coordinate(coordinates[start + 2 * i], coordinates[start + 2 * i + 1]);
+        }
+        return result;
+    }
+
+    /**
+     * Build the feature of a row
+     * @param row
+     * @param builder of the schema; reused from one row to the next
+     * @return
+     */
+    SimpleFeature materialize(int row, SimpleFeatureBuilder builder) {
+        int column = 0;
+        for (int i = 0; i < schema.getAttributeCount(); i++) {
+            if (i == geometryIndex) {
+                builder.add(getGeometry(row));
+            } else {
+                int id = attributes[column++][row];
+                builder.add(id < 0 ? null : values.get(id));
+            }
+        }
+        return builder.buildFeature(null);
+    }
+
+    /**
+     * Write a row: the geometry's kind and coordinates (or WKB, for other geometries), then the other
+     * attributes as text
+     * @param row
+     * @param out
+     * @param wkbWriter
+     * @throws IOException
+     */
+    void write(int row, DataOutputStream out, WKBWriter wkbWriter) throws IOException {
+        byte kind = kinds[row];
+        out.writeByte(kind);
+        if (kind == OTHER) {
+            byte[] wkb = wkbWriter.write(others.get(row));
+            out.writeInt(wkb.length);
+            out.write(wkb);
+        } else if (kind != NONE) {
+            int start = coordinateStart[row];
+            int end = coordinateStart[row + 1];
+            out.writeInt(end - start);
+            for (int i = start; i < end; i++) {
+                out.writeDouble(coordinates[i]);
+            }
+        }
+        for (int[] column : attributes) {
+            int id = column[row];
+            if (id < 0) {
+                out.writeInt(-1);
+            } else {
+                byte[] text = values.get(id).toString().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(text.length);
+                out.write(text);
+            }
+        }
+    }
+
+    /**
+     * Read a row written by {@link #write(int, DataOutputStream, WKBWriter)} and build its feature
+     * @param in
+     * @param builder of the schema the row was written with
+     * @param geometryFactory
+     * @param wkbReader
+     * @return
+     * @throws IOException
+     */
+    static SimpleFeature read(DataInputStream in, SimpleFeatureBuilder builder, GeometryFactory geometryFactory,
+            WKBReader wkbReader) throws IOException {
+        SimpleFeatureType schema = builder.getFeatureType();
+        int geometryIndex = schema.getGeometryDescriptor() == null ? -1
+                : schema.indexOf(schema.getGeometryDescriptor().getLocalName());
+
+        Geometry geometry = null;
+        byte kind = in.readByte();
+        if (kind == OTHER) {
+            byte[] wkb = new byte[in.readInt()];
+            in.readFully(wkb);
+            try {
+                geometry = wkbReader.read(wkb);
+            } catch (ParseException e) {
+                throw new IOException("Corrupt geometry", e);
+            }
+        } else if (kind != NONE) {
+            Coordinate[] coordinates = new Coordinate[in.readInt() / 2];
+            for (int i = 0; i < coordinates.length; i++) {
+                coordinates[i] = new Coordinate(in.readDouble(), in.readDouble());
+            }
+            geometry = kind == POINT ? geometryFactory.createPoint(coordinates[0])
+                    : kind == LINE ? geometryFactory.createLineString(coordinates)
+                    : geometryFactory.createPolygon(coordinates);
+        }
+
+        for (int i = 0; i < schema.getAttributeCount(); i++) {
+            if (i == geometryIndex) {
+                builder.add(geometry);
+                continue;
+            }
+            int length = in.readInt();
+            if (length < 0) {
+                builder.add(null);
+            } else {
+                byte[] text = new byte[length];
+                in.readFully(text);
+                builder.add(new String(text, StandardCharsets.UTF_8));
+            }
+        }
+        return builder.buildFeature(null);
+    }
+}
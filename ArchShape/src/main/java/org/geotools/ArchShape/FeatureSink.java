@@ -0,0 +1,30 @@
+package org.geotools.ArchShape;
+
+import java.io.IOException;
+
+import org.geotools.feature.DefaultFeatureCollection;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Somewhere to put features as soon as they are built, so that the tag handlers in CSV2Shape do not
+ * need to know whether the features are kept in memory or written straight to disk.
+ */
+public interface FeatureSink {
+
+    /**
+     * Accept one feature. The sink may not keep a reference to a builder owned by the caller, only
+     * to the feature itself.
+     * @param feature
+     * @throws IOException if the feature could not be stored
+     */
+    void add(SimpleFeature feature) throws IOException;
+
+    /**
+     * A sink which collects features in memory, as CSV2Shape did before streaming output existed
+     * @param collection
+     * @return
+     */
+    static FeatureSink of(DefaultFeatureCollection collection) {
+        return collection::add;
+    }
+}
@@ -0,0 +1,243 @@
+package org.geotools.ArchShape;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Finds the relational location tags, such as N1E1 or N2-4 E2-4, in the running text of field notes
+ * and the description that goes with each one, so that notes can be converted without first being
+ * turned into a tag csv file.
+ *
+ * <p>The text is read a line at a time and each line is scanned once: a tag can only start at the
+ * beginning of a word, and is matched by hand against the grammar {@link LocationTagParser} accepts,
+ * with spaces and tabs but no line breaks inside it. Words such as "North" or "12 Nails" are not
+ * mistaken for tags, because a tag must end at the end of a word.
+ *
+ * <p>The description of a tag is the rest of its line up to the next tag, without leading punctuation
+ * such as a colon or dash. When nothing follows the tag, the text before it on the line is used
+ * instead, so both "N2E3: hearth" and "hearth at N2E3" describe the hearth.
+ */
+public final class FieldNotesScanner {
+
+    public static final int MAX_DESCRIPTION = 254; //longest text a shapefile attribute holds
+
+    private final BufferedReader in;
+    private String line;
+    private int lineNumber;
+    private int previousEnd; //end of the last tag returned on the current line
+    private int nextStart = -1; //start of the next tag on the current line, or -1 if there is none
+    private int nextEnd;
+
+    private String tag;
+    private String description;
+
+    public FieldNotesScanner(Reader in) {
+        this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+    }
+
+    /**
+     * Move to the next tag
+     * @return false at the end of the notes
+     * @throws IOException
+     */
+    public boolean next() throws IOException {
+        while (nextStart < 0) {
+            line = in.readLine();
+            if (line == null) {
+                tag = null;
+                description = null;
+                return false;
+            }
+            lineNumber++;
+            previousEnd = 0;
+            find(0);
+        }
+
+        int start = nextStart;
+        int end = nextEnd;
+        find(end);
+        int descriptionEnd = nextStart >= 0 ? nextStart : line.length();
+
+        tag = line.substring(start, end).trim();
+        description = describe(end, descriptionEnd);
+        if (description.isEmpty()) {
+            description = describe(previousEnd, start);
+        }
+        previousEnd = end;
+        return true;
+    }
+
+    /**
+     * @return the tag found by the last call to next, as it appears in the notes
+     */
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * @return the description of the tag found by the last call to next, possibly empty
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return line of the notes the last tag was found on, counting from 1
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    //the text between start and end, without the punctuation tying it to a tag, cut to MAX_DESCRIPTION
+    private String describe(int start, int end) {
+        while (start < end && isSeparator(line.charAt(start))) {
+            start++;
+        }
+        while (end > start && isTrailingSeparator(line.charAt(end - 1))) {
+            end--;
+        }
+        return line.substring(start, Math.min(end, start + MAX_DESCRIPTION)).trim();
+    }
+
+    private static boolean isSeparator(char c) {
+        return Character.isWhitespace(c) || c == ':' || c == ';' || c == ',' || c == '-' || c == '.'
+                || c == ')' || c == '–' || c == '—';
+    }
+
+    private static boolean isTrailingSeparator(char c) {
+        return Character.isWhitespace(c) || c == ':' || c == ';' || c == ',' || c == '(' || c == '-';
+    }
+
+    //find the first tag on the line at or after from, setting nextStart and nextEnd
+    private void find(int from) {
+        int length = line.length();
+        for (int i = from; i < length; i++) {
+            char c = line.charAt(i);
+            if (direction(c) == 0 && !isDigit(c)) {
+                continue;
+            }
+            if (i > 0) {
+                char before = line.charAt(i - 1);
+                if (Character.isLetterOrDigit(before) || before == '.') {
+                    continue; //not the start of a word
+                }
+            }
+            int end = matchTag(line, i, length);
+            if (end > 0) {
+                nextStart = i;
+                nextEnd = end;
+                return;
+            }
+        }
+        nextStart = -1;
+    }
+
+    /**
+     * Match a location tag starting at start: a north/south part and an east/west part, in either
+     * order, each a direction before or after a number or range
+     * @param text
+     * @param start
+     * @param end
+     * @return the end of the tag, or -1 if there is no tag at start
+     */
+    static int matchTag(CharSequence text, int start, int end) {
+        int pos = start;
+        boolean northSouth = false;
+        boolean eastWest = false;
+        for (int part = 0; part < 2; part++) {
+            pos = skipSpaces(text, pos, end);
+            char direction = pos < end ? direction(text.charAt(pos)) : 0;
+            if (direction != 0) {
+                pos = matchRange(text, skipSpaces(text, pos + 1, end), end);
+                if (pos < 0) {
+                    return -1;
+                }
+            } else {
+                pos = matchRange(text, pos, end);
+                if (pos < 0) {
+                    return -1;
+                }
+                pos = skipSpaces(text, pos, end);
+                direction = pos < end ? direction(text.charAt(pos)) : 0;
+                if (direction == 0) {
+                    return -1;
+                }
+                pos++;
+            }
+
+            if (direction == 'N' || direction == 'S') {
+                if (northSouth) {
+                    return -1;
+                }
+                northSouth = true;
+            } else {
+                if (eastWest) {
+                    return -1;
+                }
+                eastWest = true;
+            }
+        }
+        if (pos < end && Character.isLetterOrDigit(text.charAt(pos))) {
+            return -1; //the tag must end with its word
+        }
+        return pos;
+    }
+
+    //a number, optionally followed by a dash and a second number; the end of it, or -1
+    private static int matchRange(CharSequence text, int pos, int end) {
+        pos = matchNumber(text, pos, end);
+        if (pos < 0) {
+            return -1;
+        }
+        int dash = skipSpaces(text, pos, end);
+        if (dash < end && text.charAt(dash) == '-') {
+            int to = matchNumber(text, skipSpaces(text, dash + 1, end), end);
+            if (to >= 0) {
+                return to;
+            }
+        }
+        return pos;
+    }
+
+    //digits with at most one decimal point between or before them; the end of the number, or -1
+    private static int matchNumber(CharSequence text, int pos, int end) {
+        int digits = 0;
+        boolean point = false;
+        while (pos < end) {
+            char c = text.charAt(pos);
+            if (isDigit(c)) {
+                digits++;
+            } else if (c == '.' && !point && pos + 1 < end && isDigit(text.charAt(pos + 1))) {
+                point = true;
+            } else {
+                break;
+            }
+            pos++;
+        }
+        return digits > 0 ? pos : -1;
+    }
+
+    private static int skipSpaces(CharSequence text, int pos, int end) {
+        while (pos < end && (text.charAt(pos) == ' ' || text.charAt(pos) == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static char direction(char c) {
+        switch (c) {
+        case 'N': case 'n':
+        case 'S': case 's':
+        case 'E': case 'e':
+        case 'W': case 'w':
+            return Character.toUpperCase(c);
+        default:
+            return 0;
+        }
+    }
+}
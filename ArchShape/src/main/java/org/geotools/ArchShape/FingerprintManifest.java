@@ -0,0 +1,229 @@
+package org.geotools.ArchShape;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * The fingerprints of the tag rows behind the records of a shapefile, in record order, stored next to
+ * the shapefile so a later run can tell which rows have changed without converting them.
+ *
+ * <p>A fingerprint is a 64 bit hash of a row's location tag, description and site, the columns that
+ * reach the shapefile. Records that do not come from a row, such as the datum points, are
+ * {@link #FIXED}, and records removed by an update, which stay in the shapefile flagged as deleted,
+ * are {@link #DELETED}. Rows are only compared with rows converted from the same datum file, so the
+ * manifest also holds a fingerprint of that file.
+ */
+final class FingerprintManifest {
+
+    static final String EXTENSION = ".fingerprints";
+
+    /** stands for a record not converted from a tag row, which an update leaves alone */
+    static final long FIXED = 0;
+    /** stands for a record an update has flagged as deleted */
+    static final long DELETED = 1;
+    /** key of a feature's user data holding the fingerprint of the row it was converted from */
+    static final String ROW = "ArchShape.row";
+
+    private static final int MAGIC = 0x41534650; //"ASFP"
+    private static final int VERSION = 2;
+
+    private FingerprintManifest() {
+    }
+
+    /**
+     * @param shapefile
+     * @return the manifest file belonging to the shapefile
+     */
+    static File fileFor(File shapefile) {
+        String path = shapefile.getPath();
+        if (path.toLowerCase().endsWith(".shp")) {
+            path = path.substring(0, path.length() - 4);
+        }
+        return new File(path + EXTENSION);
+    }
+
+    /**
+     * @param file
+     * @param datums fingerprint of the datum file of this run
+     * @return the fingerprints in the manifest, or null if there is no valid manifest or it was written
+     *         from another datum file
+     * @throws IOException
+     */
+    static long[] read(File file, long datums) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != datums) {
+                return null;
+            }
+            long[] fingerprints = new long[in.readInt()];
+            for (int i = 0; i < fingerprints.length; i++) {
+                fingerprints[i] = in.readLong();
+            }
+            return fingerprints;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Replace the manifest with the first count fingerprints. The new manifest is written next to the
+     * old one and then moved over it, so a failed write leaves the old manifest in place.
+     * @param file
+     * @param fingerprints
+     * @param count
+     * @param datums fingerprint of the datum file the rows were converted from
+     * @throws IOException
+     */
+    static void write(File file, long[] fingerprints, int count, long datums) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(datums);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeLong(fingerprints[i]);
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @param fingerprint
+     * @return whether the fingerprint is a row's, rather than {@link #FIXED} or {@link #DELETED}
+     */
+    static boolean isRow(long fingerprint) {
+        return fingerprint != FIXED && fingerprint != DELETED;
+    }
+
+    /**
+     * @param fields a row of the tag file
+     * @return a 64 bit hash of the row's location tag, description and site; never {@link #FIXED} or
+     *         {@link #DELETED}
+     */
+    static long fingerprint(String[] fields) {
+        //the identifier is left out, as it does not reach the shapefile
+        int end = Math.min(fields.length, TagConverter.SITE_COLUMN + 1);
+        long h = mix(end);
+        for (int f = TagConverter.TAG_COLUMN; f < end; f++) {
+            String text = fields[f];
+            h = combine(h, text.length());
+            for (int i = 0; i < text.length(); i++) {
+                h = combine(h, text.charAt(i));
+            }
+        }
+        h = mix(h);
+        return isRow(h) ? h : h + 2;
+    }
+
+    /**
+     * @param file
+     * @return a 64 bit hash of the file's bytes
+     * @throws IOException
+     */
+    static long fingerprint(File file) throws IOException {
+        long h = mix(file.length());
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            for (int b = in.read(); b >= 0; b = in.read()) {
+                h = combine(h, b);
+            }
+        } finally {
+            in.close();
+        }
+        return mix(h);
+    }
+
+    /**
+     * @param feature
+     * @return the fingerprint of the row the feature was converted from, or {@link #FIXED} if it has
+     *         none
+     */
+    static long fingerprint(SimpleFeature feature) {
+        Object row = feature.getUserData().get(ROW);
+        return row instanceof Long ? (Long) row : FIXED;
+    }
+
+    private static long combine(long h, long value) {
+        return Long.rotateLeft(h ^ mix(value), 31) * 0x9E3779B97F4A7C15L;
+    }
+
+    //the finalizer of MurmurHash3, which spreads every input bit over the whole result
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Passes features on to another sink, remembering the fingerprints of their rows. When the sink
+     * sorts the features into Hilbert curve order, the fingerprints are sorted the same way when they
+     * are written, so the manifest follows the order of the shapefile either way.
+     */
+    static final class Recorder implements FeatureSink {
+        private final FeatureSink delegate;
+        private long[] fingerprints = new long[1024];
+        private long[] keys; //Hilbert keys of the features, if the sink sorts them
+        private int count;
+
+        /**
+         * @param delegate
+         * @param sorted whether the delegate is a {@link HilbertSorter}
+         */
+        Recorder(FeatureSink delegate, boolean sorted) {
+            this.delegate = delegate;
+            if (sorted) {
+                keys = new long[fingerprints.length];
+            }
+        }
+
+        @Override
+        public void add(SimpleFeature feature) throws IOException {
+            delegate.add(feature);
+            if (count == fingerprints.length) {
+                fingerprints = Arrays.copyOf(fingerprints, count * 2);
+                if (keys != null) {
+                    keys = Arrays.copyOf(keys, count * 2);
+                }
+            }
+            if (keys != null) {
+                keys[count] = HilbertSorter.key(feature);
+            }
+            fingerprints[count++] = fingerprint(feature);
+        }
+
+        void write(File shapefile, long datums) throws IOException {
+            long[] inOrder = fingerprints;
+            if (keys != null) {
+                //the sorter is stable too, so features with the same key are written in arrival order
+                inOrder = new long[count];
+                int[] rows = HilbertSorter.sortedRows(keys, count);
+                for (int i = 0; i < count; i++) {
+                    inOrder[i] = fingerprints[rows[i]];
+                }
+            }
+            FingerprintManifest.write(fileFor(shapefile), inOrder, count, datums);
+        }
+    }
+}
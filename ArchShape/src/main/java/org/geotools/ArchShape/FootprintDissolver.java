@@ -0,0 +1,211 @@
+package org.geotools.ArchShape;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.operation.union.UnaryUnionOp;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Dissolves the excavation unit polygons of a site into footprints, merging units that touch or
+ * overlap into one polygon, optionally only with units of the same type.
+ *
+ * <p>Unioning tens of thousands of squares in one go is slow, so the units are sorted by their centres
+ * into a grid of cells holding about {@link #UNITS_PER_CELL} units each. The cells are unioned in
+ * parallel on a fork join pool, and neighbouring results are then merged pairwise up a binary split
+ * of the grid, so that each merge only has to stitch footprints together along the line between two
+ * blocks of cells.
+ */
+final class FootprintDissolver {
+
+    static final int UNITS_PER_CELL = 1000;
+    static final String TYPE_NAME = "Footprint";
+    static final String TYPE_ATTRIBUTE = "type"; //of the Polygon shapefile
+
+    private final ForkJoinPool pool;
+
+    FootprintDissolver(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Use the DataUtilities class to create a FeatureType that will describe the footprints: a polygon
+     * and the type of the units it was dissolved from, if they were grouped by type
+     * @return
+     * @throws SchemaException
+     */
+    static SimpleFeatureType createFootprintType() throws SchemaException {
+        return CSV2Shape.withCrs(DataUtilities.createType(TYPE_NAME, "the_geom:Polygon,type:String"), 4326);
+    }
+
+    /**
+     * Write the footprints of the units in a Polygon shapefile to a new shapefile
+     * @param polygons the Polygon shapefile
+     * @param footprints the shapefile to write
+     * @param byType whether only units of the same type are merged
+     * @param commitInterval
+     * @return number of footprints written
+     * @throws IOException
+     * @throws SchemaException
+     */
+    long dissolve(File polygons, File footprints, boolean byType, int commitInterval) throws IOException, SchemaException {
+        Map<String, List<Geometry>> groups = new TreeMap<String, List<Geometry>>();
+        CoordinateReferenceSystem crs;
+        ShapefileDataStore store = new ShapefileDataStore(polygons.toURI().toURL());
+        try {
+            crs = store.getSchema().getCoordinateReferenceSystem();
+            SimpleFeatureIterator features = store.getFeatureSource().getFeatures().features();
+            try {
+                while (features.hasNext()) {
+                    SimpleFeature feature = features.next();
+                    Object geometry = feature.getDefaultGeometry();
+                    if (!(geometry instanceof Geometry) || ((Geometry) geometry).isEmpty()) {
+                        continue;
+                    }
+                    Object type = byType ? feature.getAttribute(TYPE_ATTRIBUTE) : null;
+                    String group = type == null ? "" : type.toString();
+                    List<Geometry> units = groups.get(group);
+                    if (units == null) {
+                        units = new ArrayList<Geometry>();
+                        groups.put(group, units);
+                    }
+                    units.add((Geometry) geometry);
+                }
+            } finally {
+                features.close();
+            }
+        } finally {
+            store.dispose();
+        }
+
+        SimpleFeatureType footprintType = createFootprintType();
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(footprintType);
+        //footprints are in the units' coordinates, which are not WGS 84 if the site was reprojected
+        StreamingShapefileWriter writer = crs == null
+                ? new StreamingShapefileWriter(footprints, footprintType, commitInterval)
+                : new StreamingShapefileWriter(footprints, footprintType, commitInterval, crs);
+        long written = 0;
+        try {
+            for (Map.Entry<String, List<Geometry>> group : groups.entrySet()) {
+                Geometry footprint = dissolve(group.getValue());
+                for (int i = 0; footprint != null && i < footprint.getNumGeometries(); i++) {
+                    Geometry part = footprint.getGeometryN(i);
+                    if (!(part instanceof Polygon)) {
+                        continue;
+                    }
+                    builder.add(part);
+                    builder.add(byType ? group.getKey() : null);
+                    writer.add(builder.buildFeature(null));
+                    written++;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+        writer.close();
+        return written;
+    }
+
+    /**
+     * @param units
+     * @return the union of the units, or null if there are none
+     */
+    Geometry dissolve(List<Geometry> units) {
+        if (units.isEmpty()) {
+            return null;
+        }
+        Envelope bounds = new Envelope();
+        for (Geometry unit : units) {
+            bounds.expandToInclude(unit.getEnvelopeInternal());
+        }
+
+        int across = Math.max(1, (int) Math.ceil(Math.sqrt((double) units.size() / UNITS_PER_CELL)));
+        List<List<Geometry>> cells = new ArrayList<List<Geometry>>(across * across);
+        for (int i = 0; i < across * across; i++) {
+            cells.add(new ArrayList<Geometry>());
+        }
+        for (Geometry unit : units) {
+            Coordinate centre = unit.getEnvelopeInternal().centre();
+            int x = cell(centre.x, bounds.getMinX(), bounds.getWidth(), across);
+            int y = cell(centre.y, bounds.getMinY(), bounds.getHeight(), across);
+            cells.get(y * across + x).add(unit);
+        }
+        return pool.invoke(new BlockUnion(cells, across, 0, 0, across, across));
+    }
+
+    private static int cell(double value, double min, double size, int across) {
+        if (size <= 0) {
+            return 0;
+        }
+        return Math.max(0, Math.min(across - 1, (int) ((value - min) / size * across)));
+    }
+
+    /**
+     * Unions the units of a block of cells, splitting it in two across its longer side until it is a
+     * single cell
+     */
+    private static final class BlockUnion extends RecursiveTask<Geometry> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<List<Geometry>> cells;
+        private final int across;
+        private final int x0;
+        private final int y0;
+        private final int x1; //exclusive
+        private final int y1; //exclusive
+
+        BlockUnion(List<List<Geometry>> cells, int across, int x0, int y0, int x1, int y1) {
+            this.cells = cells;
+            this.across = across;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+
+        @Override
+        protected Geometry compute() {
+            if (x1 - x0 == 1 && y1 - y0 == 1) {
+                List<Geometry> units = cells.get(y0 * across + x0);
+                return units.isEmpty() ? null : UnaryUnionOp.union(units);
+            }
+
+            BlockUnion first;
+            BlockUnion second;
+            if (x1 - x0 >= y1 - y0) {
+                int middle = (x0 + x1) >>> 1;
+                first = new BlockUnion(cells, across, x0, y0, middle, y1);
+                second = new BlockUnion(cells, across, middle, y0, x1, y1);
+            } else {
+                int middle = (y0 + y1) >>> 1;
+                first = new BlockUnion(cells, across, x0, y0, x1, middle);
+                second = new BlockUnion(cells, across, x0, middle, x1, y1);
+            }
+            first.fork();
+            Geometry b = second.compute();
+            Geometry a = first.join();
+            if (a == null) {
+                return b;
+            }
+            return b == null ? a : a.union(b);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.geotools.ArchShape;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+/**
+ * A bounded, least recently used cache of the geometries built for location tags, so that a tag which
+ * appears many times in the field notes is only converted once per datum and every feature for it
+ * shares one geometry.
+ *
+ * <p>Entries are keyed by the datum's projection and the parsed tag, so differently written tags for
+ * the same place (N2E4, 2n 4e) share an entry. The cache is split into segments, each locked on its
+ * own, so that converters on different threads rarely wait for each other. Shared geometries must not
+ * be modified by whoever receives them.
+ */
+public class GeometryCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity maximum number of geometries kept
+     */
+    public GeometryCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int perSegment = Math.max(1, capacity / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * Find the geometry of the tag last parsed by parser, building and caching it if needed
+     * @param geometryFactory
+     * @param datum
+     * @param parser a parser holding a successfully parsed tag
+     * @return the shared geometry of the tag
+     */
+    public Geometry get(GeometryFactory geometryFactory, LocalProjection datum, LocationTagParser parser) {
+        Key key = new Key(datum, parser);
+        Segment segment = segments[(key.hash ^ (key.hash >>> 16)) & (SEGMENTS - 1)];
+
+        Geometry geometry;
+        synchronized (segment) {
+            geometry = segment.get(key);
+        }
+        if (geometry != null) {
+            hits.increment();
+            return geometry;
+        }
+
+        //build outside the lock; if two threads race, the first one cached wins
+        misses.increment();
+        geometry = CSV2Shape.buildGeometry(geometryFactory, datum, parser, null);
+        synchronized (segment) {
+            Geometry existing = segment.putIfAbsent(key, geometry);
+            return existing != null ? existing : geometry;
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of geometries currently cached
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "GeometryCache[hits=" + getHits() + ", misses=" + getMisses() + ", size=" + size() + "]";
+    }
+
+    /**
+     * One lock's worth of the cache, evicting its least recently used entry when full
+     */
+    private static final class Segment extends LinkedHashMap<Key, Geometry> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Geometry> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    /**
+     * A datum and the kind and offsets of a parsed tag
+     */
+    private static final class Key {
+        private final LocalProjection datum;
+        private final LocationTagParser.Kind kind;
+        private final double northFrom;
+        private final double northTo;
+        private final double eastFrom;
+        private final double eastTo;
+        private final int hash;
+
+        Key(LocalProjection datum, LocationTagParser parser) {
+            this.datum = datum;
+            this.kind = parser.getKind();
+            this.northFrom = parser.getNorthFrom();
+            this.northTo = parser.getNorthTo();
+            this.eastFrom = parser.getEastFrom();
+            this.eastTo = parser.getEastTo();
+
+            int h = System.identityHashCode(datum);
+            h = 31 * h + kind.ordinal();
+            h = 31 * h + Double.hashCode(northFrom);
+            h = 31 * h + Double.hashCode(northTo);
+            h = 31 * h + Double.hashCode(eastFrom);
+            h = 31 * h + Double.hashCode(eastTo);
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return datum == other.datum && kind == other.kind
+                    && Double.compare(northFrom, other.northFrom) == 0
+                    && Double.compare(northTo, other.northTo) == 0
+                    && Double.compare(eastFrom, other.eastFrom) == 0
+                    && Double.compare(eastTo, other.eastTo) == 0;
+        }
+    }
+}
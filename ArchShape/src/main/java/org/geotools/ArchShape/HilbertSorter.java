@@ -0,0 +1,387 @@
+package org.geotools.ArchShape;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Collects features and passes them on to another sink in the order of a Hilbert curve through the
+ * centres of their bounding boxes, so that features near each other on the ground end up near each
+ * other in the shapefile. This makes the shapefile's spatial index tighter and window reads cheaper.
+ *
+ * <p>Up to runSize features are sorted in memory. They are held in {@link FeatureColumns} rather
+ * than as features, with their keys in a long array, and are sorted by sorting their row numbers, so a
+ * run costs a few primitive arrays instead of several objects per feature; features are only built
+ * again as they are passed on. Beyond runSize, each sorted run is spilled to a temporary file and the
+ * runs are merged when {@link #finish()} is called, so inputs larger than the heap can be sorted.
+ * Features with the same key keep their input order.
+ */
+public class HilbertSorter implements FeatureSink, Closeable {
+
+    public static final int DEFAULT_RUN_SIZE = 100000;
+
+    static final int ORDER = 31; //bits per axis; a cell is about 2 cm across at the equator
+    private static final long SIDE = 1L << ORDER;
+
+    private static final int INSERTION_SORT_SIZE = 32;
+
+    private final FeatureSink target;
+    private final SimpleFeatureType schema;
+    private final int runSize;
+    private final File tempDir;
+
+    private final FeatureColumns buffer;
+    private long[] keys = new long[16]; //by row of the buffer
+    private final List<File> runs = new ArrayList<File>();
+    private boolean finished;
+
+    public HilbertSorter(FeatureSink target, SimpleFeatureType schema) {
+        this(target, schema, DEFAULT_RUN_SIZE, null);
+    }
+
+    /**
+     * @param target receives the sorted features
+     * @param schema of the features, used to rebuild spilled features
+     * @param runSize number of features sorted in memory before a run is spilled
+     * @param tempDir directory for spilled runs, or null for the default temporary directory
+     */
+    public HilbertSorter(FeatureSink target, SimpleFeatureType schema, int runSize, File tempDir) {
+        if (runSize <= 0) {
+            throw new IllegalArgumentException("runSize must be positive: " + runSize);
+        }
+        this.target = target;
+        this.schema = schema;
+        this.runSize = runSize;
+        this.tempDir = tempDir;
+        this.buffer = new FeatureColumns(schema);
+    }
+
+    @Override
+    public void add(SimpleFeature feature) throws IOException {
+        if (finished) {
+            throw new IOException("Features added after the sort has finished");
+        }
+        long key = key(feature);
+        int row = buffer.add(feature);
+        if (row == keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+        }
+        keys[row] = key;
+        if (buffer.size() >= runSize) {
+            spill();
+        }
+    }
+
+    /**
+     * Pass every feature added on to the target, in Hilbert order
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+
+        if (runs.isEmpty()) {
+            SimpleFeatureBuilder builder = new SimpleFeatureBuilder(schema);
+            for (int row : sortedRows(keys, buffer.size())) {
+                target.add(buffer.materialize(row, builder));
+            }
+            buffer.clear();
+            return;
+        }
+        merge();
+    }
+
+    /**
+     * @return number of runs spilled to disk
+     */
+    public int getSpilledRuns() {
+        return runs.size();
+    }
+
+    /**
+     * @return number of distinct attribute values held in memory for the features not yet spilled
+     */
+    public int getBufferedValues() {
+        return buffer.valueCount();
+    }
+
+    /**
+     * Delete the spilled runs
+     */
+    @Override
+    public void close() {
+        buffer.clear();
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+    }
+
+    private void spill() throws IOException {
+        File run = File.createTempFile("hilbert-run", ".bin", tempDir);
+        runs.add(run);
+
+        WKBWriter wkbWriter = new WKBWriter();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16));
+        try {
+            for (int row : sortedRows(keys, buffer.size())) {
+                out.writeLong(keys[row]);
+                buffer.write(row, out, wkbWriter);
+            }
+        } finally {
+            out.close();
+        }
+        buffer.clear();
+    }
+
+    //merge the spilled runs and what is left in memory, taking from the earliest run on equal keys
+    private void merge() throws IOException {
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(schema);
+        PriorityQueue<Run> queue = new PriorityQueue<Run>(runs.size() + 1,
+                (a, b) -> a.key != b.key ? Long.compare(a.key, b.key) : Integer.compare(a.index, b.index));
+
+        List<Run> open = new ArrayList<Run>();
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                Run run = new SpilledRun(i, runs.get(i), builder, buffer.getGeometryFactory());
+                open.add(run);
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+            Run memory = new MemoryRun(runs.size(), buffer, keys, builder);
+            if (memory.advance()) {
+                queue.add(memory);
+            }
+
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                target.add(run.feature);
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+        } finally {
+            for (Run run : open) {
+                run.close();
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * @param keys
+     * @param size number of keys in use
+     * @return the row numbers 0 to size - 1, in order of their keys; rows with the same key stay in order
+     */
+    static int[] sortedRows(long[] keys, int size) {
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+        sort(rows, new int[size], keys, 0, size);
+        return rows;
+    }
+
+    //stable merge sort of rows[from, to) by key, using scratch
+    private static void sort(int[] rows, int[] scratch, long[] keys, int from, int to) {
+        if (to - from <= INSERTION_SORT_SIZE) {
+            for (int i = from + 1; i < to; i++) {
+                int row = rows[i];
+                int j = i;
+                while (j > from && keys[rows[j - 1]] > keys[row]) {
+                    rows[j] = rows[j - 1];
+                    j--;
+                }
+                rows[j] = row;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(rows, scratch, keys, from, middle);
+        sort(rows, scratch, keys, middle, to);
+        if (keys[rows[middle - 1]] <= keys[rows[middle]]) {
+            return; //already in order
+        }
+        System.arraycopy(rows, from, scratch, from, to - from);
+        int i = from;
+        int j = middle;
+        int k = from;
+        while (i < middle && j < to) {
+            rows[k++] = keys[scratch[j]] < keys[scratch[i]] ? scratch[j++] : scratch[i++];
+        }
+        while (i < middle) {
+            rows[k++] = scratch[i++];
+        }
+        while (j < to) {
+            rows[k++] = scratch[j++];
+        }
+    }
+
+    /**
+     * @param feature
+     * @return the Hilbert key of the centre of the feature's bounding box
+     */
+    static long key(SimpleFeature feature) {
+        Object geometry = feature.getDefaultGeometry();
+        if (!(geometry instanceof Geometry) || ((Geometry) geometry).isEmpty()) {
+            return 0;
+        }
+        Envelope envelope = ((Geometry) geometry).getEnvelopeInternal();
+        return hilbertKey((envelope.getMinX() + envelope.getMaxX()) / 2, (envelope.getMinY() + envelope.getMaxY()) / 2);
+    }
+
+    /**
+     * @param longitude in degrees
+     * @param latitude in degrees
+     * @return the position of the point along a Hilbert curve filling the whole globe, with
+     *         {@link #ORDER} bits per axis
+     */
+    public static long hilbertKey(double longitude, double latitude) {
+        return hilbertIndex(ORDER, scale(longitude, -180, 360), scale(latitude, -90, 180));
+    }
+
+    private static long scale(double value, double min, double range) {
+        long cell = (long) ((value - min) / range * SIDE);
+        return Math.max(0, Math.min(SIDE - 1, cell));
+    }
+
+    /**
+     * @param order bits per axis, at most 31
+     * @param x cell column, from 0 to 2^order - 1
+     * @param y cell row, from 0 to 2^order - 1
+     * @return the distance of the cell along the Hilbert curve through the 2^order by 2^order grid
+     */
+    public static long hilbertIndex(int order, long x, long y) {
+        long n = 1L << order;
+        long d = 0;
+        for (long s = n >>> 1; s > 0; s >>>= 1) {
+            long rx = (x & s) != 0 ? 1 : 0;
+            long ry = (y & s) != 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+
+            //rotate the quadrant so that the curve inside it starts and ends in the right corners
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                long t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * A sorted sequence of features being merged
+     */
+    private abstract static class Run implements Closeable {
+        final int index;
+        long key; //of the current feature
+        SimpleFeature feature;
+
+        Run(int index) {
+            this.index = index;
+        }
+
+        /**
+         * Move to the next feature
+         * @return false if there are no more
+         */
+        abstract boolean advance() throws IOException;
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    private static final class MemoryRun extends Run {
+        private final FeatureColumns features;
+        private final long[] keys;
+        private final int[] rows;
+        private final SimpleFeatureBuilder builder;
+        private int next;
+
+        MemoryRun(int index, FeatureColumns features, long[] keys, SimpleFeatureBuilder builder) {
+            super(index);
+            this.features = features;
+            this.keys = keys;
+            this.rows = sortedRows(keys, features.size());
+            this.builder = builder;
+        }
+
+        @Override
+        boolean advance() {
+            if (next == rows.length) {
+                feature = null;
+                return false;
+            }
+            int row = rows[next++];
+            key = keys[row];
+            feature = features.materialize(row, builder);
+            return true;
+        }
+    }
+
+    private static final class SpilledRun extends Run {
+        private final File file;
+        private final DataInputStream in;
+        private final SimpleFeatureBuilder builder;
+        private final GeometryFactory geometryFactory;
+        private final WKBReader wkbReader;
+
+        SpilledRun(int index, File file, SimpleFeatureBuilder builder, GeometryFactory geometryFactory) throws IOException {
+            super(index);
+            this.file = file;
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            this.builder = builder;
+            this.geometryFactory = geometryFactory;
+            this.wkbReader = new WKBReader(geometryFactory);
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            try {
+                key = in.readLong();
+            } catch (EOFException e) {
+                feature = null;
+                return false;
+            }
+            try {
+                feature = FeatureColumns.read(in, builder, geometryFactory, wkbReader);
+            } catch (IOException e) {
+                throw new IOException("Corrupt run " + file, e);
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package org.geotools.ArchShape;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Brings existing Point, Line and Polygon shapefiles up to date with the tag file by removing the
+ * records of rows that have vanished and appending the features of new rows, instead of converting
+ * the whole site again.
+ *
+ * <p>Each shapefile has a {@link FingerprintManifest} listing, in record order, the fingerprints of
+ * the rows behind its records. The tag file is read again, but every row is only split and hashed
+ * until its fingerprint turns out to be missing from the manifests; only those rows are converted,
+ * into one {@link Diff} per shapefile. The changes are then made in place by {@link ShapefileEditor},
+ * which flags removed records as deleted and appends the new ones, so a small change to a large site
+ * costs a pass over the tag file and the writing of the records that changed.
+ *
+ * <p>The shapefiles are not changed in one transaction. Their manifests are deleted before the first
+ * change and written again after the last, so a run after an interrupted update converts in full.
+ */
+final class IncrementalUpdate {
+
+    /** number of new features held in memory before the update gives up in favour of a full rebuild */
+    static final int DEFAULT_MAX_CHANGES = 500000;
+
+    private final File[] shapefiles;
+    private final long[][] manifests;
+    private final long datums;
+
+    private IncrementalUpdate(File[] shapefiles, long[][] manifests, long datums) {
+        this.shapefiles = shapefiles;
+        this.manifests = manifests;
+        this.datums = datums;
+    }
+
+    /**
+     * @param shapefiles
+     * @param datums fingerprint of the datum file of this run
+     * @return an update of the shapefiles, or null if they have to be converted in full: if any of
+     *         them or their manifests is missing, the datum file has changed, or more than half of
+     *         their records have been deleted by earlier updates
+     * @throws IOException
+     */
+    static IncrementalUpdate open(File[] shapefiles, long datums) throws IOException {
+        long[][] manifests = new long[shapefiles.length][];
+        for (int i = 0; i < shapefiles.length; i++) {
+            if (!shapefiles[i].isFile()) {
+                return null;
+            }
+            manifests[i] = FingerprintManifest.read(FingerprintManifest.fileFor(shapefiles[i]), datums);
+            if (manifests[i] == null) {
+                return null;
+            }
+            int deleted = 0;
+            for (long fingerprint : manifests[i]) {
+                if (fingerprint == FingerprintManifest.DELETED) {
+                    deleted++;
+                }
+            }
+            if (deleted > manifests[i].length / 2) {
+                return null; //a full conversion leaves the deleted records out
+            }
+        }
+        return new IncrementalUpdate(shapefiles, manifests, datums);
+    }
+
+    /**
+     * @param maxChanges number of new features the diffs may hold before giving up
+     * @return one diff per shapefile, to receive the features of the new rows
+     */
+    Diff[] newDiffs(int maxChanges) {
+        Diff[] diffs = new Diff[shapefiles.length];
+        for (int i = 0; i < diffs.length; i++) {
+            diffs[i] = new Diff(manifests[i], maxChanges);
+        }
+        return diffs;
+    }
+
+    /**
+     * Read the tag file into the diffs. Rows are split and fingerprinted in parallel chunks; a row
+     * whose fingerprint is in no manifest is converted there and then, while a row that is in one is
+     * claimed, in file order, by its diff, and only converted if the shapefile has no unclaimed copy
+     * of it left.
+     * @param tagFile
+     * @param diffs the Point, Line and Polygon diffs
+     * @param sinks pass new features on to the diffs, in the same order
+     * @param types of the features each sink takes, in the same order
+     * @param converters make converters that put the fingerprints of rows into their features
+     * @param listener receives bad rows, or null if a bad row stops the update
+     * @param metrics
+     * @throws IOException
+     */
+    static void readTagFile(File tagFile, final Diff[] diffs, FeatureSink[] sinks, SimpleFeatureType[] types,
+            final Supplier<TagConverter> converters, RowListener listener, ConversionMetrics metrics)
+            throws IOException {
+        MappedCsvReader reader = new MappedCsvReader(tagFile.toPath());
+        reader.setHasHeader(true);
+        //rows that turn out to be new are converted in the chunks, which are kept as small as a conversion's
+        reader.setChunkSize(CSV2Shape.FEATURE_CHUNK_SIZE);
+        reader.setMaxBytesInFlight(CSV2Shape.FEATURE_BYTES_IN_FLIGHT);
+
+        TagConverter converter = converters.get();
+        reader.<Row>read(0, () -> {
+            TagConverter chunkConverter = converters.get();
+            return (fields, endOffset) -> {
+                long fingerprint = FingerprintManifest.fingerprint(fields);
+                for (Diff diff : diffs) {
+                    if (diff.contains(fingerprint)) {
+                        return new Row(fields, fingerprint, null);
+                    }
+                }
+                return new Row(null, fingerprint, chunkConverter.map(fields, endOffset));
+            };
+        }, (row, endOffset) -> {
+            Object value = row.converted;
+            if (value == null) {
+                if (claim(diffs, row.fingerprint)) {
+                    if (metrics != null) {
+                        metrics.rowRead(); //unchanged, so there is nothing more to do
+                    }
+                } else {
+                    value = converter.map(row.fields, endOffset); //another copy of a row the shapefile has
+                }
+            }
+            if (value instanceof TagConverter.Reject) {
+                listener.rejected((TagConverter.Reject) value, endOffset);
+            } else if (value != null) {
+                SimpleFeature feature = (SimpleFeature) value;
+                for (int i = 0; i < types.length; i++) {
+                    if (feature.getFeatureType() == types[i]) {
+                        sinks[i].add(feature);
+                    }
+                }
+            }
+            if (listener != null) {
+                listener.rowDone(endOffset);
+            }
+        });
+        if (metrics != null) {
+            metrics.addReadNanos(reader.getChunkNanos());
+        }
+    }
+
+    //whether one of the diffs has an unclaimed record of the row, which it then claims
+    private static boolean claim(Diff[] diffs, long fingerprint) {
+        for (Diff diff : diffs) {
+            if (diff.claim(fingerprint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Apply the diffs to the shapefiles and their manifests
+     * @param diffs filled from the tag file
+     * @return false if the diffs overflowed or a shapefile no longer matches its manifest, in which case
+     *         nothing has been changed and the shapefiles have to be converted in full; true if they
+     *         were updated
+     * @throws IOException
+     */
+    boolean apply(Diff[] diffs) throws IOException {
+        for (Diff diff : diffs) {
+            if (diff.overflowed) {
+                return false;
+            }
+        }
+        for (int i = 0; i < shapefiles.length; i++) {
+            if (ShapefileEditor.countRecords(shapefiles[i]) != manifests[i].length) {
+                return false;
+            }
+        }
+
+        for (File shapefile : shapefiles) {
+            FingerprintManifest.fileFor(shapefile).delete();
+        }
+        for (int i = 0; i < shapefiles.length; i++) {
+            ShapefileEditor.delete(shapefiles[i], diffs[i].removedRecords());
+            ShapefileEditor.append(shapefiles[i], diffs[i].getAdded());
+        }
+        for (int i = 0; i < shapefiles.length; i++) {
+            long[] manifest = diffs[i].newManifest();
+            FingerprintManifest.write(FingerprintManifest.fileFor(shapefiles[i]), manifest, manifest.length, datums);
+        }
+        return true;
+    }
+
+    //a row of the tag file, converted if it is in none of the manifests
+    private static final class Row {
+        final String[] fields;
+        final long fingerprint;
+        final Object converted;
+
+        Row(String[] fields, long fingerprint, Object converted) {
+            this.fields = fields;
+            this.fingerprint = fingerprint;
+            this.converted = converted;
+        }
+    }
+
+    /**
+     * Compares the rows of the tag file with the manifest of a shapefile: rows the shapefile has are
+     * claimed, and the features of the others are added
+     */
+    static final class Diff implements FeatureSink {
+        private final long[] manifest; //fingerprints of the shapefile's records, in record order
+        private final long[] keys; //the distinct fingerprints of rows, sorted
+        private final int[] copies; //per key, how many records of the shapefile have it
+        private final int[] seen; //per key, how many copies have been claimed
+        private final int maxChanges;
+
+        private final List<SimpleFeature> added = new ArrayList<SimpleFeature>();
+        private final List<Long> addedFingerprints = new ArrayList<Long>();
+        private boolean overflowed;
+        private boolean[] removed; //worked out once the whole tag file has been read
+        private int removedCount;
+
+        Diff(long[] manifest, int maxChanges) {
+            this.manifest = manifest;
+            long[] sorted = manifest.clone();
+            Arrays.sort(sorted);
+            long[] keys = new long[sorted.length];
+            int[] copies = new int[sorted.length];
+            int n = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (!FingerprintManifest.isRow(sorted[i])) {
+                    continue; //datum points stay, and deleted records are gone already
+                }
+                if (n == 0 || keys[n - 1] != sorted[i]) {
+                    keys[n++] = sorted[i];
+                }
+                copies[n - 1]++;
+            }
+            this.keys = Arrays.copyOf(keys, n);
+            this.copies = Arrays.copyOf(copies, n);
+            this.seen = new int[n];
+            this.maxChanges = maxChanges;
+        }
+
+        /**
+         * @param fingerprint of a row
+         * @return whether the shapefile has any record of the row; safe to call from any thread
+         */
+        boolean contains(long fingerprint) {
+            return Arrays.binarySearch(keys, fingerprint) >= 0;
+        }
+
+        /**
+         * Claim a record of the shapefile for a row of the tag file, which is then left alone
+         * @param fingerprint of the row
+         * @return whether the shapefile had a record of the row that was not claimed yet
+         */
+        boolean claim(long fingerprint) {
+            int key = Arrays.binarySearch(keys, fingerprint);
+            if (key < 0 || seen[key] == copies[key]) {
+                return false;
+            }
+            seen[key]++;
+            removed = null;
+            return true;
+        }
+
+        /**
+         * Add the feature of a row the shapefile does not have, carrying the row's fingerprint
+         */
+        @Override
+        public void add(SimpleFeature feature) {
+            if (added.size() >= maxChanges) {
+                overflowed = true;
+                added.clear();
+                addedFingerprints.clear();
+            }
+            if (!overflowed) {
+                added.add(feature);
+                addedFingerprints.add(FingerprintManifest.fingerprint(feature));
+            }
+        }
+
+        /**
+         * @return the features to be appended, which may be replaced, for instance by projected copies
+         */
+        List<SimpleFeature> getAdded() {
+            return added;
+        }
+
+        /**
+         * @return number of features to be appended
+         */
+        int getAddedCount() {
+            return added.size();
+        }
+
+        /**
+         * @return number of records to be removed
+         */
+        int getRemovedCount() {
+            removedRecords();
+            return removedCount;
+        }
+
+        /**
+         * Records whose rows were claimed fewer times than the shapefile has them are removed, the
+         * earliest copies first
+         * @return per record of the shapefile, whether it is to be removed
+         */
+        boolean[] removedRecords() {
+            if (removed != null) {
+                return removed;
+            }
+            int[] missing = new int[keys.length];
+            for (int key = 0; key < keys.length; key++) {
+                missing[key] = copies[key] - seen[key];
+            }
+
+            removed = new boolean[manifest.length];
+            removedCount = 0;
+            for (int i = 0; i < manifest.length; i++) {
+                if (!FingerprintManifest.isRow(manifest[i])) {
+                    continue;
+                }
+                int key = Arrays.binarySearch(keys, manifest[i]);
+                if (missing[key] > 0) {
+                    missing[key]--;
+                    removed[i] = true;
+                    removedCount++;
+                }
+            }
+            return removed;
+        }
+
+        /**
+         * @return the fingerprints of the shapefile after the update: its records, the removed ones now
+         *         {@link FingerprintManifest#DELETED}, followed by the appended ones
+         */
+        long[] newManifest() {
+            boolean[] removed = removedRecords();
+            long[] result = Arrays.copyOf(manifest, manifest.length + added.size());
+            for (int i = 0; i < manifest.length; i++) {
+                if (removed[i]) {
+                    result[i] = FingerprintManifest.DELETED;
+                }
+            }
+            int n = manifest.length;
+            for (Long fingerprint : addedFingerprints) {
+                result[n++] = fingerprint;
+            }
+            return result;
+        }
+    }
+}
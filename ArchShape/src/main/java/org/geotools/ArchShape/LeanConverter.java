@@ -0,0 +1,113 @@
+package org.geotools.ArchShape;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Headless command line entry point for converting one site from a script, started as quickly as the
+ * JVM allows. Unlike {@link BatchConverter} it takes the two files of a single site, and it leaves out
+ * everything a one-off conversion does not need: no Swing or AWT, no JMX registration, and, through
+ * {@link EmbeddedCrs}, no EPSG database for WGS 84 or UTM output.
+ *
+ * <p>With --train it converts a small made up site in a temporary directory, once plainly and once
+ * with every option, so that it can be run to record the classes a conversion loads into an AppCDS
+ * archive (see the appcds profile of the pom). Starting from such an archive skips loading and
+ * verifying those classes, which is most of the start up time.
+ *
+ * <pre>
+ * LeanConverter [options] &lt;datum.csv&gt; &lt;tags.csv | notes.txt&gt; [output directory]
+ * LeanConverter --train
+ * </pre>
+ */
+public class LeanConverter {
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        List<String> options = new ArrayList<String>();
+        List<String> arguments = new ArrayList<String>();
+        for (String arg : args) {
+            if (BatchConverter.isOption(arg) || arg.equals("--train")) {
+                options.add(arg);
+            } else {
+                arguments.add(arg);
+            }
+        }
+        if (options.contains("--train")) {
+            train();
+            return;
+        }
+        if (arguments.size() < 2 || arguments.size() > 3) {
+            System.out.println("Usage: LeanConverter " + BatchConverter.OPTIONS_USAGE
+                    + " <datum.csv> <tags.csv | notes.txt> [output directory]");
+            System.out.println("       LeanConverter --train");
+            System.exit(2);
+        }
+
+        File datumFile = new File(arguments.get(0));
+        File tagFile = new File(arguments.get(1));
+        File outputDir = arguments.size() > 2 ? new File(arguments.get(2))
+                : tagFile.getAbsoluteFile().getParentFile();
+        ConversionJob job = new ConversionJob(datumFile, tagFile, outputDir);
+        BatchConverter.configure(job, options);
+        job.setMonitored(false);
+        try {
+            File[] written = job.call();
+            System.out.println("Converted " + job + ": " + Arrays.toString(written));
+        } catch (Exception e) {
+            System.out.println("Failed " + job + ": " + e + ", report in " + job.getMetricsFile());
+            System.exit(1);
+        }
+    }
+
+    //convert a small made up site, to load the classes a conversion needs
+    private static void train() throws Exception {
+        File dir = File.createTempFile("archshape-train", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        try {
+            File datumFile = new File(dir, "train_datum.csv");
+            write(datumFile, "latitude,longitude,label\n42.2917,-85.5872,train\n");
+            StringBuilder tags = new StringBuilder("id,tag,description\n");
+            for (int i = 1; i <= 20; i++) {
+                tags.append(i).append(",N").append(i).append('E').append(i % 7).append(",find ").append(i).append('\n')
+                        .append(i).append(",N").append(i).append("-").append(i + 2).append(" E2-4,unit ").append(i % 3).append('\n')
+                        .append(i).append(",N").append(i).append("E").append(i).append("-").append(i + 5).append(",wall\n");
+            }
+            File tagFile = new File(dir, "train_tags.csv");
+            write(tagFile, tags.toString());
+
+            ConversionJob plain = new ConversionJob(datumFile, tagFile, dir);
+            plain.setMonitored(false);
+            plain.call();
+
+            ConversionJob everything = new ConversionJob(datumFile, tagFile, dir);
+            BatchConverter.configure(everything, Arrays.asList("--fault-tolerant", "--hilbert",
+                    "--footprints-by-type", "--index", BatchConverter.CRS_OPTION + TransformCache.UTM));
+            everything.setMonitored(false);
+            everything.call();
+            System.out.println("Trained on " + tagFile);
+        } finally {
+            File[] files = dir.listFiles();
+            for (File file : files == null ? new File[0] : files) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private static void write(File file, String text) throws IOException {
+        Writer out = new FileWriter(file);
+        try {
+            out.write(text);
+        } finally {
+            out.close();
+        }
+    }
+}
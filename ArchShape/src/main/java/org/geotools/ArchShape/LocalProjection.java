@@ -0,0 +1,134 @@
+package org.geotools.ArchShape;
+
+import org.locationtech.jts.geom.Coordinate;
+
+import net.sf.geographiclib.Geodesic;
+import net.sf.geographiclib.GeodesicData;
+import net.sf.geographiclib.GeodesicMask;
+
+/**
+ * Converts offsets in metres east and north of a site datum into longitude and latitude on the WGS84
+ * ellipsoid.
+ *
+ * <p>An offset is taken to be a distance along the geodesic leaving the datum in the offset's
+ * direction, which is how a grid laid out with a transit and tape behaves. Rather than solving a
+ * geodesic for every point, the geodesic solution is expanded to second order around the datum once,
+ * from a handful of GeographicLib solves, when the projection is created:
+ *
+ * <pre>
+ * lat = lat0 + n * (a1 + a2 * n) + a3 * e * e
+ * lon = lon0 + e * (b1 + b2 * n)
+ * </pre>
+ *
+ * The terms left out are of order (s / R)^2 relative to the offset s, well under a millimetre across
+ * a kilometre and about two centimetres across ten kilometres. Converting a point therefore costs a
+ * few multiply-adds. Instances are immutable and may be shared between threads.
+ */
+public final class LocalProjection {
+
+    private static final double SAMPLE_DISTANCE = 1000; //metres between the datum and the sample points
+    private static final int MASK = GeodesicMask.LATITUDE | GeodesicMask.LONGITUDE | GeodesicMask.LONG_UNROLL;
+
+    private final double lon0;
+    private final double lat0;
+    private final double a1; //degrees of latitude per metre north
+    private final double a2; //change of a1 per metre north
+    private final double a3; //latitude lost per square metre east, as the geodesic curves away from the parallel
+    private final double b1; //degrees of longitude per metre east
+    private final double b2; //change of b1 per metre north
+
+    /**
+     * Precompute the projection around a datum
+     * @param datum longitude (x) and latitude (y) of the datum in degrees
+     */
+    public LocalProjection(Coordinate datum) {
+        this(datum.x, datum.y);
+    }
+
+    /**
+     * Precompute the projection around a datum
+     * @param longitude of the datum in degrees
+     * @param latitude of the datum in degrees
+     */
+    public LocalProjection(double longitude, double latitude) {
+        this.lon0 = longitude;
+        this.lat0 = latitude;
+
+        double d = SAMPLE_DISTANCE;
+        GeodesicData north = direct(0, d);
+        GeodesicData south = direct(180, d);
+        GeodesicData east = direct(90, d);
+        GeodesicData west = direct(-90, d);
+
+        //the corners of a square of side 2d around the datum
+        double diagonal = d * Math.sqrt(2);
+        GeodesicData northEast = direct(45, diagonal);
+        GeodesicData southEast = direct(135, diagonal);
+        GeodesicData southWest = direct(-135, diagonal);
+        GeodesicData northWest = direct(-45, diagonal);
+
+        //central differences of the geodesic solutions give the coefficients of the expansion
+        a1 = (north.lat2 - south.lat2) / (2 * d);
+        a2 = (north.lat2 + south.lat2 - 2 * lat0) / (2 * d * d);
+        a3 = (east.lat2 + west.lat2 - 2 * lat0) / (2 * d * d);
+        b1 = (east.lon2 - west.lon2) / (2 * d);
+        b2 = (northEast.lon2 - southEast.lon2 - northWest.lon2 + southWest.lon2) / (4 * d * d);
+    }
+
+    private GeodesicData direct(double azimuth, double distance) {
+        return Geodesic.WGS84.Direct(lat0, lon0, azimuth, distance, MASK);
+    }
+
+    /**
+     * @return the datum this projection is centred on, longitude first
+     */
+    public Coordinate getDatum() {
+        return new Coordinate(lon0, lat0);
+    }
+
+    /**
+     * @param east metres east of the datum
+     * @param north metres north of the datum
+     * @return longitude of the offset in degrees
+     */
+    public double longitude(double east, double north) {
+        return lon0 + east * (b1 + b2 * north);
+    }
+
+    /**
+     * @param east metres east of the datum
+     * @param north metres north of the datum
+     * @return latitude of the offset in degrees
+     */
+    public double latitude(double east, double north) {
+        return lat0 + north * (a1 + a2 * north) + a3 * east * east;
+    }
+
+    /**
+     * @param east metres east of the datum
+     * @param north metres north of the datum
+     * @return the offset as a coordinate, longitude first
+     */
+    public Coordinate toCoordinate(double east, double north) {
+        return new Coordinate(longitude(east, north), latitude(east, north));
+    }
+
+    /**
+     * Convert a batch of offsets. Both arrays are packed as pairs, in the same order as JTS coordinates
+     * and GeoTools MathTransforms: east and north metres in, longitude and latitude degrees out. The
+     * arrays may be the same array.
+     * @param offsets east, north pairs
+     * @param offsetsStart index of the first east value
+     * @param out receives longitude, latitude pairs
+     * @param outStart index at which the first longitude is written
+     * @param count number of points
+     */
+    public void project(double[] offsets, int offsetsStart, double[] out, int outStart, int count) {
+        for (int i = 0; i < count; i++) {
+            double east = offsets[offsetsStart + 2 * i];
+            double north = offsets[offsetsStart + 2 * i + 1];
+            out[outStart + 2 * i] = lon0 + east * (b1 + b2 * north);
+            out[outStart + 2 * i + 1] = lat0 + north * (a1 + a2 * north) + a3 * east * east;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package org.geotools.ArchShape;
+
+/**
+ * Parses relational location tags such as N1E1, 2N 4W, N2-4 W4 or N2 - 4E2-4 in a single pass over
+ * the characters, without creating any intermediate Strings.
+ *
+ * <p>A tag is made of a north/south part and an east/west part, in either order. Each part is a
+ * direction letter (in either case) before or after a number or a range of two numbers joined by a
+ * dash. Whitespace may appear anywhere between the pieces. After parsing, the offsets from the datum
+ * in metres are available as signed values (south and west are negative), and the kind tells whether
+ * the tag describes a point, a line (one range) or a polygon (two ranges).
+ *
+ * <p>A parser keeps its results in fields and is reused from one tag to the next, so it must not be
+ * shared between threads.
+ */
+public final class LocationTagParser {
+
+    /**
+     * The kind of geometry a location tag describes
+     */
+    public enum Kind {
+        POINT, LINE, POLYGON
+    }
+
+    //powers of ten which can be represented exactly as doubles, to scale the fractional digits
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    private static final int MAX_DIGITS = 18; //so the digits always fit in a long
+
+    //results of the last parse
+    private Kind kind;
+    private double northFrom;
+    private double northTo;
+    private double eastFrom;
+    private double eastTo;
+
+    //scanning state
+    private CharSequence text;
+    private int pos;
+    private int end;
+    private double number; //value of the last number read by readNumber
+    private boolean range; //whether the last call to readRangeEnd found a range
+
+    /**
+     * Parse a location tag
+     * @param tag
+     * @return the kind of geometry the tag describes
+     * @throws IllegalArgumentException if the tag is not a valid location tag
+     */
+    public Kind parse(CharSequence tag) {
+        return parse(tag, 0, tag.length());
+    }
+
+    /**
+     * Parse the location tag found between start (inclusive) and end (exclusive) in text
+     * @param text
+     * @param start
+     * @param end
+     * @return the kind of geometry the tag describes
+     * @throws IllegalArgumentException if the tag is not a valid location tag
+     */
+    public Kind parse(CharSequence text, int start, int end) {
+        this.text = text;
+        this.pos = start;
+        this.end = end;
+
+        boolean haveNorth = false;
+        boolean haveEast = false;
+        int ranges = 0;
+
+        //exactly two parts: one north/south and one east/west
+        for (int part = 0; part < 2; part++) {
+            skipWhitespace();
+            char direction = readDirection();
+            double from;
+            double to;
+            if (direction != 0) {
+                //direction first, i.e. N2-4
+                skipWhitespace();
+                from = readNumberOrFail();
+                to = readRangeEnd(from);
+            } else {
+                //number first, i.e. 2-4N
+                from = readNumberOrFail();
+                to = readRangeEnd(from);
+                skipWhitespace();
+                direction = readDirection();
+                if (direction == 0) {
+                    throw malformed("missing direction");
+                }
+            }
+            if (range) {
+                ranges++;
+            }
+
+            switch (direction) {
+            case 'S':
+                from = -from;
+                to = -to;
+                //fall through
+            case 'N':
+                if (haveNorth) {
+                    throw malformed("two north/south directions");
+                }
+                haveNorth = true;
+                northFrom = from;
+                northTo = to;
+                break;
+            case 'W':
+                from = -from;
+                to = -to;
+                //fall through
+            default:
+                if (haveEast) {
+                    throw malformed("two east/west directions");
+                }
+                haveEast = true;
+                eastFrom = from;
+                eastTo = to;
+                break;
+            }
+        }
+
+        skipWhitespace();
+        if (pos != end) {
+            throw malformed("unexpected trailing characters");
+        }
+
+        kind = ranges == 0 ? Kind.POINT : ranges == 1 ? Kind.LINE : Kind.POLYGON;
+        this.text = null;
+        return kind;
+    }
+
+    /**
+     * @return the kind of geometry the last parsed tag describes
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return distance north of the datum in metres at the start of the north/south range (negative for south)
+     */
+    public double getNorthFrom() {
+        return northFrom;
+    }
+
+    /**
+     * @return distance north of the datum in metres at the end of the north/south range (negative for south)
+     */
+    public double getNorthTo() {
+        return northTo;
+    }
+
+    /**
+     * @return distance east of the datum in metres at the start of the east/west range (negative for west)
+     */
+    public double getEastFrom() {
+        return eastFrom;
+    }
+
+    /**
+     * @return distance east of the datum in metres at the end of the east/west range (negative for west)
+     */
+    public double getEastTo() {
+        return eastTo;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    /**
+     * Reads a direction letter if there is one at the current position
+     * @return N, S, E or W in upper case, or 0 if there is no direction letter here
+     */
+    private char readDirection() {
+        if (pos < end) {
+            char c = text.charAt(pos);
+            switch (c) {
+            case 'N': case 'n':
+            case 'S': case 's':
+            case 'E': case 'e':
+            case 'W': case 'w':
+                pos++;
+                return Character.toUpperCase(c);
+            default:
+                break;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * If the number just read is followed by a dash, read the second number of the range
+     * @param from the number just read
+     * @return the end of the range, or from if this is not a range
+     */
+    private double readRangeEnd(double from) {
+        int mark = pos;
+        skipWhitespace();
+        if (pos < end && text.charAt(pos) == '-') {
+            pos++;
+            skipWhitespace();
+            range = true;
+            return readNumberOrFail();
+        }
+        pos = mark;
+        range = false;
+        return from;
+    }
+
+    private double readNumberOrFail() {
+        if (!readNumber()) {
+            throw malformed("expected a number");
+        }
+        return number;
+    }
+
+    /**
+     * Reads an unsigned decimal number such as 4, 4.5 or .5 into the number field
+     * @return false if there is no number at the current position
+     */
+    private boolean readNumber() {
+        long digits = 0;
+        int count = 0;
+        int fraction = -1; //number of digits after the decimal point, or -1 if there is no point
+        int start = pos;
+
+        while (pos < end) {
+            char c = text.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                if (count == MAX_DIGITS) {
+                    throw malformed("too many digits");
+                }
+                digits = digits * 10 + (c - '0');
+                count++;
+                if (fraction >= 0) {
+                    fraction++;
+                }
+            } else if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                break;
+            }
+            pos++;
+        }
+
+        if (count == 0) {
+            pos = start;
+            return false;
+        }
+        number = fraction > 0 ? digits / POWERS_OF_TEN[fraction] : digits;
+        return true;
+    }
+
+    private IllegalArgumentException malformed(String reason) {
+        return new IllegalArgumentException("Malformed location tag \"" + text + "\": " + reason + " at " + pos);
+    }
+}
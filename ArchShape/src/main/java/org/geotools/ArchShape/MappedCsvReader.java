@@ -0,0 +1,473 @@
+package org.geotools.ArchShape;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Reads a comma separated values file by memory mapping it and parsing newline aligned chunks of it
+ * in parallel on a fork-join pool. Records are still handed to the caller one at a time, on the
+ * calling thread and in the order they appear in the file.
+ *
+ * <p>Records can also be mapped to other values (features, for instance) by the same tasks that parse
+ * them, so that this work runs in parallel too; the mapped values are then handed over in file order.
+ *
+ * <p>Fields may be quoted as in {@link CsvFields}, and quoted fields may contain commas and line
+ * breaks. Blank lines are skipped. The file is expected to be UTF-8; a leading byte order mark is
+ * ignored.
+ */
+public class MappedCsvReader {
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    public static final long DEFAULT_MAX_BYTES_IN_FLIGHT = 64L * 1024 * 1024;
+
+    /**
+     * Receives the records of the file in order
+     */
+    public interface RecordHandler {
+
+        /**
+         * @param fields the fields of the record
+         * @param endOffset byte offset in the file just past the end of this record
+         * @throws IOException to stop reading
+         */
+        void record(String[] fields, long endOffset) throws IOException;
+    }
+
+    /**
+     * Maps records to values on the pool threads. One mapper is used per chunk, so a mapper does not
+     * need to be thread safe.
+     */
+    public interface RecordMapper<T> {
+
+        /**
+         * @param fields the fields of the record
+         * @param endOffset byte offset in the file just past the end of this record
+         * @return the value for this record, or null to leave the record out
+         * @throws IOException to stop reading
+         */
+        T map(String[] fields, long endOffset) throws IOException;
+    }
+
+    /**
+     * Receives mapped values in file order, on the thread that called read
+     */
+    public interface ResultHandler<T> {
+
+        /**
+         * @param value the value the record was mapped to
+         * @param endOffset byte offset in the file just past the end of the record
+         * @throws IOException to stop reading
+         */
+        void result(T value, long endOffset) throws IOException;
+    }
+
+    private final Path file;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private long maxBytesInFlight = DEFAULT_MAX_BYTES_IN_FLIGHT;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private boolean hasHeader;
+    private volatile String[] header;
+    private final LongAdder chunkNanos = new LongAdder();
+
+    public MappedCsvReader(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @param chunkSize approximate number of bytes parsed by each task
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Every chunk being parsed, or parsed but not yet handed over, holds the values of all its records,
+     * so this bounds the memory a read uses. Mappers that build large values from small records should
+     * be given small chunks and a small limit.
+     * @param maxBytesInFlight number of bytes of the file whose records may be held at once, though
+     *            one chunk is always parsed however large it is
+     */
+    public void setMaxBytesInFlight(long maxBytesInFlight) {
+        if (maxBytesInFlight <= 0) {
+            throw new IllegalArgumentException("maxBytesInFlight must be positive: " + maxBytesInFlight);
+        }
+        this.maxBytesInFlight = maxBytesInFlight;
+    }
+
+    /**
+     * @param pool the pool the chunks are parsed on, the common pool by default
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @param hasHeader whether the first record of the file is a header, which is then kept aside
+     *            instead of being handed to the handler or mapper
+     */
+    public void setHasHeader(boolean hasHeader) {
+        this.hasHeader = hasHeader;
+    }
+
+    /**
+     * @return time the pool spent parsing and mapping chunks, summed over its threads
+     */
+    public long getChunkNanos() {
+        return chunkNanos.sum();
+    }
+
+    /**
+     * @return the header record read by the last call to read, or null if there was none
+     */
+    public String[] getHeader() {
+        return header;
+    }
+
+    /**
+     * Read the whole file
+     * @param handler
+     * @throws IOException
+     */
+    public void read(RecordHandler handler) throws IOException {
+        read(0, handler);
+    }
+
+    /**
+     * Read the file from the given byte offset, which must be the start of a record (for instance an
+     * end offset previously passed to a handler)
+     * @param startOffset
+     * @param handler
+     * @throws IOException
+     */
+    public void read(long startOffset, final RecordHandler handler) throws IOException {
+        final RecordMapper<String[]> identity = (fields, endOffset) -> fields;
+        this.<String[]>read(startOffset, () -> identity, handler::record);
+    }
+
+    /**
+     * Read the file from the given byte offset, which must be the start of a record, mapping each
+     * record in parallel and handing the values over in file order
+     * @param startOffset
+     * @param mappers supplies a mapper for each chunk
+     * @param handler
+     * @throws IOException
+     */
+    public <T> void read(long startOffset, Supplier<? extends RecordMapper<T>> mappers,
+            ResultHandler<? super T> handler) throws IOException {
+        header = null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = startOffset == 0 ? skipByteOrderMark(channel) : startOffset;
+            if (start >= size) {
+                return;
+            }
+
+            long[] bounds = findChunkBounds(channel, start, size);
+            bounds = dropBoundsInsideQuotes(channel, bounds);
+            parseInOrder(channel, bounds, hasHeader && startOffset == 0, mappers, handler);
+        }
+    }
+
+    private static long skipByteOrderMark(FileChannel channel) throws IOException {
+        ByteBuffer bom = ByteBuffer.allocate(3);
+        channel.read(bom, 0);
+        if (bom.position() == 3 && (bom.get(0) & 0xFF) == 0xEF && (bom.get(1) & 0xFF) == 0xBB
+                && (bom.get(2) & 0xFF) == 0xBF) {
+            return 3;
+        }
+        return 0;
+    }
+
+    /**
+     * Split the file into chunks of roughly chunkSize bytes, each ending just after a newline
+     * @return the offsets of the chunk boundaries, starting with start and ending with size
+     */
+    private long[] findChunkBounds(FileChannel channel, long start, long size) throws IOException {
+        List<Long> bounds = new ArrayList<Long>();
+        bounds.add(start);
+
+        ByteBuffer window = ByteBuffer.allocate(64 * 1024);
+        long target = start + chunkSize;
+        while (target < size) {
+            long newline = -1;
+            long pos = target;
+            while (newline < 0 && pos < size) {
+                window.clear();
+                int read = channel.read(window, pos);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (window.get(i) == '\n') {
+                        newline = pos + i;
+                        break;
+                    }
+                }
+                pos += read;
+            }
+            if (newline < 0 || newline + 1 >= size) {
+                break;
+            }
+            bounds.add(newline + 1);
+            target = newline + 1 + chunkSize;
+        }
+
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * A boundary found by findChunkBounds may be a line break inside a quoted field. Whether it is
+     * depends on where the chunk before it started, so follow the quotes of every chunk in parallel,
+     * once as if it started a record and once as if it started inside a quoted field, then walk the
+     * chunks in order and remove the boundaries that fall inside quotes, merging their chunks.
+     */
+    private long[] dropBoundsInsideQuotes(final FileChannel channel, final long[] bounds) throws IOException {
+        int chunks = bounds.length - 1;
+        if (chunks < 2) {
+            return bounds;
+        }
+
+        List<ForkJoinTask<boolean[]>> ends = new ArrayList<ForkJoinTask<boolean[]>>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            final long from = bounds[i];
+            final long to = bounds[i + 1];
+            ends.add(pool.submit(() -> {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+                return new boolean[] {endsInQuotes(buffer, false), endsInQuotes(buffer, true)};
+            }));
+        }
+
+        long[] kept = new long[bounds.length];
+        int count = 0;
+        boolean inQuotes = false;
+        kept[count++] = bounds[0];
+        for (int i = 0; i < chunks; i++) {
+            inQuotes = join(ends.get(i))[inQuotes ? 1 : 0];
+            if (!inQuotes || i == chunks - 1) {
+                kept[count++] = bounds[i + 1];
+            }
+        }
+        return Arrays.copyOf(kept, count);
+    }
+
+    /**
+     * Follow the quotes of a chunk the way parseChunk does: a quote only opens a quoted field at the
+     * start of a field, and a doubled quote inside one is an escaped quote, so stray quotes in
+     * unquoted fields are ignored.
+     * @param buffer a chunk, which ends with a newline
+     * @param inQuotes whether the chunk starts inside a quoted field rather than at the start of a record
+     * @return whether the chunk ends inside a quoted field
+     */
+    private static boolean endsInQuotes(ByteBuffer buffer, boolean inQuotes) {
+        boolean fieldStart = !inQuotes;
+        for (int i = 0, n = buffer.limit(); i < n; i++) {
+            byte b = buffer.get(i);
+            if (inQuotes) {
+                if (b == '"') {
+                    if (i + 1 < n && buffer.get(i + 1) == '"') {
+                        i++;
+                    } else {
+                        inQuotes = false;
+                    }
+                }
+            } else if (b == ',' || b == '\n') {
+                fieldStart = true;
+            } else if (b == '"' && fieldStart) {
+                inQuotes = true;
+                fieldStart = false;
+            } else if (b != '\r' || (i + 1 < n && buffer.get(i + 1) != '\n')) {
+                fieldStart = false;
+            }
+        }
+        return inQuotes;
+    }
+
+    /**
+     * Parse the chunks on the pool, keeping a few more chunks in flight than there are workers as long
+     * as they span no more than maxBytesInFlight, and hand their records to the handler in file order
+     */
+    @SuppressWarnings("unchecked")
+    private <T> void parseInOrder(final FileChannel channel, final long[] bounds, boolean skipHeader,
+            final Supplier<? extends RecordMapper<T>> mappers, ResultHandler<? super T> handler) throws IOException {
+        int chunks = bounds.length - 1;
+        int inFlight = Math.max(2, pool.getParallelism() * 2);
+        Deque<ForkJoinTask<Chunk>> pending = new ArrayDeque<ForkJoinTask<Chunk>>();
+
+        int next = 0;
+        try {
+            while (next < chunks || !pending.isEmpty()) {
+                while (next < chunks && (pending.isEmpty() || pending.size() < inFlight
+                        && bounds[next + 1] - bounds[next - pending.size()] <= maxBytesInFlight)) {
+                    final long from = bounds[next];
+                    final long to = bounds[next + 1];
+                    if (to - from > Integer.MAX_VALUE) {
+                        throw new IOException("Quoted field spanning more than 2GB at offset " + from + " in " + file);
+                    }
+                    final boolean headerChunk = skipHeader && next == 0;
+                    pending.add(pool.submit(() -> {
+                        long start = System.nanoTime();
+                        try {
+                            return parseChunk(channel.map(FileChannel.MapMode.READ_ONLY, from, to - from), from,
+                                    headerChunk, mappers.get());
+                        } finally {
+                            chunkNanos.add(System.nanoTime() - start);
+                        }
+                    }));
+                    next++;
+                }
+
+                Chunk chunk = join(pending.removeFirst());
+                for (int i = 0; i < chunk.values.size(); i++) {
+                    handler.result((T) chunk.values.get(i), chunk.ends[i]);
+                }
+            }
+        } finally {
+            for (ForkJoinTask<Chunk> task : pending) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    private static <T> T join(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * The values mapped from the records of one chunk, and the file offset at which each record ends
+     */
+    private static final class Chunk {
+        final List<Object> values = new ArrayList<Object>();
+        long[] ends = new long[64];
+        final RecordMapper<?> mapper;
+        boolean skipFirst;
+
+        Chunk(RecordMapper<?> mapper, boolean skipFirst) {
+            this.mapper = mapper;
+            this.skipFirst = skipFirst;
+        }
+
+        void add(Object value, long end) {
+            if (values.size() == ends.length) {
+                ends = Arrays.copyOf(ends, ends.length * 2);
+            }
+            ends[values.size()] = end;
+            values.add(value);
+        }
+    }
+
+    /**
+     * Parse and map every record in the buffer. The buffer starts at the start of a record, outside quotes.
+     * @param buffer
+     * @param base file offset of the start of the buffer
+     * @param headerChunk whether the first record is the file's header
+     * @param mapper
+     * @return
+     */
+    private Chunk parseChunk(ByteBuffer buffer, long base, boolean headerChunk, RecordMapper<?> mapper) throws IOException {
+        Chunk chunk = new Chunk(mapper, headerChunk);
+        List<String> fields = new ArrayList<String>();
+        byte[] field = new byte[256]; //bytes of the field being read, with quotes removed
+        int length = 0;
+        boolean fieldStart = true;
+        boolean inQuotes = false;
+
+        int n = buffer.limit();
+        for (int i = 0; i < n; i++) {
+            byte b = buffer.get(i);
+            if (inQuotes) {
+                if (b == '"') {
+                    if (i + 1 < n && buffer.get(i + 1) == '"') {
+                        //a doubled quote is an escaped quote
+                        i++;
+                    } else {
+                        inQuotes = false;
+                        continue;
+                    }
+                }
+            } else if (b == ',') {
+                fields.add(new String(field, 0, length, StandardCharsets.UTF_8));
+                length = 0;
+                fieldStart = true;
+                continue;
+            } else if (b == '\n') {
+                fields.add(new String(field, 0, length, StandardCharsets.UTF_8));
+                endRecord(chunk, fields, base + i + 1);
+                length = 0;
+                fieldStart = true;
+                continue;
+            } else if (b == '\r' && (i + 1 == n || buffer.get(i + 1) == '\n')) {
+                continue;
+            } else if (b == '"' && fieldStart) {
+                inQuotes = true;
+                fieldStart = false;
+                continue;
+            }
+
+            if (length == field.length) {
+                field = Arrays.copyOf(field, length * 2);
+            }
+            field[length++] = b;
+            fieldStart = false;
+        }
+
+        //last record of the file may not end with a newline
+        if (length > 0 || !fields.isEmpty() || !fieldStart) {
+            fields.add(new String(field, 0, length, StandardCharsets.UTF_8));
+            endRecord(chunk, fields, base + n);
+        }
+        return chunk;
+    }
+
+    private void endRecord(Chunk chunk, List<String> fields, long end) throws IOException {
+        if (fields.size() == 1 && fields.get(0).trim().isEmpty()) {
+            //skip blank lines
+            fields.clear();
+            return;
+        }
+        String[] record = fields.toArray(new String[fields.size()]);
+        fields.clear();
+
+        if (chunk.skipFirst) {
+            chunk.skipFirst = false;
+            header = record;
+            return;
+        }
+        Object value = chunk.mapper.map(record, end);
+        if (value != null) {
+            chunk.add(value, end);
+        }
+    }
+}
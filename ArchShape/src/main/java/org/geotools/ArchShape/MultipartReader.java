@@ -0,0 +1,167 @@
+package org.geotools.ArchShape;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads a multipart/form-data request body part by part as it arrives, so that uploads can be copied
+ * straight to files without being held in memory.
+ */
+final class MultipartReader {
+
+    private static final int MAX_HEADER_LINE = 8192;
+
+    private final InputStream in;
+    private final byte[] delimiter; //CRLF, two dashes and the boundary
+    private final byte[] buffer = new byte[1 << 16];
+    private int pos;
+    private int limit;
+    private boolean inBody = true; //the preamble is skipped like the body of a part
+    private boolean ended;
+
+    /**
+     * @param in the request body
+     * @param boundary from the Content-Type header
+     */
+    MultipartReader(InputStream in, String boundary) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        //the first delimiter need not follow a line break
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        limit = 2;
+    }
+
+    /**
+     * Move to the next part, skipping whatever is left of the current one
+     * @return the part's headers, with lower case names, and the name and filename of its
+     *         Content-Disposition as "name" and "filename"; null after the last part
+     * @throws IOException
+     */
+    Map<String, String> nextPart() throws IOException {
+        if (ended) {
+            return null;
+        }
+        if (inBody) {
+            copyBody(null);
+        }
+
+        //after a delimiter comes either -- for the end of the body or the line break before the headers
+        String rest = readLine();
+        if (rest.startsWith("--")) {
+            ended = true;
+            return null;
+        }
+
+        Map<String, String> headers = new HashMap<String, String>();
+        for (String line = readLine(); line.length() > 0; line = readLine()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+            }
+        }
+        String disposition = headers.get("content-disposition");
+        if (disposition != null) {
+            for (String parameter : disposition.split(";")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    String value = parameter.substring(equals + 1).trim();
+                    if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                        value = value.substring(1, value.length() - 1);
+                    }
+                    headers.put(parameter.substring(0, equals).trim().toLowerCase(), value);
+                }
+            }
+        }
+        inBody = true;
+        return headers;
+    }
+
+    /**
+     * Copy the rest of the current part's body
+     * @param out receives the body, or null to skip it
+     * @throws IOException if the request body ends before the part does
+     */
+    void copyBody(OutputStream out) throws IOException {
+        while (true) {
+            int found = indexOfDelimiter();
+            if (found >= 0) {
+                if (out != null) {
+                    out.write(buffer, pos, found - pos);
+                }
+                pos = found + delimiter.length;
+                inBody = false;
+                return;
+            }
+            //keep back what could be the start of a delimiter split across reads
+            int safe = Math.max(pos, limit - delimiter.length + 1);
+            if (out != null) {
+                out.write(buffer, pos, safe - pos);
+            }
+            pos = safe;
+            if (!fill()) {
+                throw new IOException("Multipart body ended in the middle of a part");
+            }
+        }
+    }
+
+    private int indexOfDelimiter() {
+        byte first = delimiter[0];
+        for (int i = pos; i <= limit - delimiter.length; i++) {
+            if (buffer[i] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < delimiter.length && buffer[i + j] == delimiter[j]) {
+                j++;
+            }
+            if (j == delimiter.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            if (pos == limit && !fill()) {
+                if (line.size() > 0) {
+                    break; //the closing delimiter needs no line break after it
+                }
+                throw new IOException("Multipart body ended in the middle of a header");
+            }
+            byte b = buffer[pos++];
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+            if (line.size() > MAX_HEADER_LINE) {
+                throw new IOException("Multipart header line too long");
+            }
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    //move the unread bytes to the front of the buffer and read more after them; false at the end
+    private boolean fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+}
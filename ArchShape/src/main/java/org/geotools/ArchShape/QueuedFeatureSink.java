@@ -0,0 +1,212 @@
+package org.geotools.ArchShape;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Hands features to a {@link StreamingShapefileWriter} running on a thread of its own, so that the
+ * Point, Line and Polygon shapefiles are written at the same time as each other and as the parsing.
+ *
+ * <p>Features wait in a bounded queue. When the disk falls behind, the queue fills up and
+ * {@link #add(SimpleFeature)} blocks until there is room again, so memory use stays bounded by the
+ * queue capacity. A failure on the writer thread is reported by the next call to add, commit or
+ * close. Features must be added from one thread only.
+ */
+public class QueuedFeatureSink implements FeatureSink, Closeable {
+
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private static final Object END = new Object(); //put after the last feature
+    private static final long POLL_MILLIS = 100;
+
+    private final StreamingShapefileWriter writer;
+    private final String name;
+    private final BlockingQueue<Object> queue;
+    private final Thread thread;
+
+    private volatile Throwable failure;
+    private volatile boolean aborted;
+    private boolean finished; //END has been queued
+
+    public QueuedFeatureSink(StreamingShapefileWriter writer, String name) {
+        this(writer, name, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Start the writer thread
+     * @param writer receives the features, and is closed, on the writer thread
+     * @param name of the writer thread
+     * @param capacity number of features that may wait to be written
+     */
+    public QueuedFeatureSink(StreamingShapefileWriter writer, String name, int capacity) {
+        this.writer = writer;
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<Object>(capacity);
+        this.thread = new Thread(this::drain, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void drain() {
+        boolean writing = true;
+        try {
+            for (Object next = queue.take(); next != END; next = queue.take()) {
+                if (aborted) {
+                    continue;
+                }
+                if (next instanceof CommitRequest) {
+                    writer.commit();
+                    ((CommitRequest) next).done.countDown();
+                } else {
+                    writer.add((SimpleFeature) next);
+                }
+            }
+            writing = false;
+            if (aborted) {
+                writer.abort();
+            } else {
+                writer.close();
+            }
+        } catch (Throwable t) {
+            failure = t;
+            queue.clear();
+            if (writing) {
+                writer.abort();
+            }
+        }
+    }
+
+    /**
+     * Queue a feature, waiting while the queue is full
+     */
+    @Override
+    public void add(SimpleFeature feature) throws IOException {
+        checkFailure();
+        if (finished) {
+            throw new IOException(name + " is closed");
+        }
+        put(feature);
+    }
+
+    /**
+     * Commit every feature added so far and wait until it has been committed
+     * @throws IOException
+     */
+    public void commit() throws IOException {
+        commitAll(this);
+    }
+
+    /**
+     * Commit every feature added so far to each of the sinks, letting the commits run side by side,
+     * and wait until all of them have been committed
+     * @param sinks
+     * @throws IOException
+     */
+    public static void commitAll(QueuedFeatureSink... sinks) throws IOException {
+        CommitRequest[] requests = new CommitRequest[sinks.length];
+        for (int i = 0; i < sinks.length; i++) {
+            sinks[i].checkFailure();
+            requests[i] = new CommitRequest();
+            sinks[i].put(requests[i]);
+        }
+        for (int i = 0; i < sinks.length; i++) {
+            sinks[i].await(requests[i]);
+        }
+    }
+
+    private void await(CommitRequest request) throws IOException {
+        try {
+            while (!request.done.await(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (!thread.isAlive()) {
+                    checkFailure();
+                    throw new IOException(name + " has stopped");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while committing " + name);
+        }
+    }
+
+    /**
+     * Tell the writer thread that no more features are coming, without waiting for it to finish.
+     * Calling this on several sinks before closing them lets their final commits run side by side.
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if (!finished) {
+            finished = true;
+            put(END);
+        }
+    }
+
+    /**
+     * Wait until every queued feature has been written and the shapefile committed and closed
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+        join();
+        checkFailure();
+    }
+
+    /**
+     * Drop any queued features, release the shapefile and wait for the writer thread to stop. Does
+     * nothing once the sink has been closed.
+     */
+    public void abort() {
+        aborted = true;
+        finished = true;
+        queue.clear();
+        //the END queued by an earlier finish may have been cleared too, so queue it again; only this
+        //thread adds to the queue, so there is room for it now
+        queue.offer(END);
+        try {
+            join();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void put(Object item) throws IOException {
+        try {
+            while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                //the writer thread may have stopped with the queue full
+                if (!thread.isAlive()) {
+                    checkFailure();
+                    throw new IOException(name + " has stopped");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing for " + name);
+        }
+    }
+
+    private void join() throws IOException {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + name);
+        }
+    }
+
+    private static final class CommitRequest {
+        final CountDownLatch done = new CountDownLatch(1);
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure;
+        if (t != null) {
+            throw new IOException("Writing " + name + " failed: " + t, t);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.geotools.ArchShape;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the rows of the tag file that could not be converted to a csv file, each with the reason and
+ * the offset at which it ends in the tag file, followed by the row's own fields.
+ */
+final class RejectWriter implements Closeable {
+
+    static final String HEADER = "endOffset,reason,message,row...";
+
+    private final FileOutputStream stream;
+    private final Writer out;
+    private long count;
+
+    /**
+     * Start a new reject file
+     * @param file
+     * @throws IOException
+     */
+    RejectWriter(File file) throws IOException {
+        this(file, 0, 0);
+    }
+
+    /**
+     * Continue a reject file from a checkpoint, dropping anything written after it
+     * @param file
+     * @param length length of the file at the checkpoint, or 0 to start a new file
+     * @param count number of rejects in the file at the checkpoint
+     * @throws IOException
+     */
+    RejectWriter(File file, long length, long count) throws IOException {
+        if (length > 0) {
+            RandomAccessFile existing = new RandomAccessFile(file, "rw");
+            try {
+                if (existing.length() < length) {
+                    throw new IOException(file + " is shorter than at the checkpoint");
+                }
+                existing.setLength(length);
+            } finally {
+                existing.close();
+            }
+        }
+        this.stream = new FileOutputStream(file, length > 0);
+        this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+        this.count = length > 0 ? count : 0;
+        if (length == 0) {
+            out.write(HEADER);
+            out.write('\n');
+        }
+    }
+
+    /**
+     * @param reject
+     * @param endOffset offset in the tag file just past the end of the rejected row
+     * @throws IOException
+     */
+    void write(TagConverter.Reject reject, long endOffset) throws IOException {
+        out.write(Long.toString(endOffset));
+        out.write(',');
+        out.write(reject.failure.name());
+        out.write(',');
+        writeField(reject.message == null ? "" : reject.message);
+        for (String field : reject.fields) {
+            out.write(',');
+            writeField(field);
+        }
+        out.write('\n');
+        count++;
+    }
+
+    //quote the field if it holds anything CsvFields would otherwise split on
+    private void writeField(String field) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            char c = field.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(field);
+            return;
+        }
+        out.write('"');
+        out.write(field.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    /**
+     * Make everything written so far durable
+     * @return length of the file
+     * @throws IOException
+     */
+    long sync() throws IOException {
+        out.flush();
+        stream.getFD().sync();
+        return stream.getChannel().size();
+    }
+
+    /**
+     * @return number of rows rejected, including those before a checkpoint resumed from
+     */
+    long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,176 @@
+package org.geotools.ArchShape;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.CoordinateSequenceFilter;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+/**
+ * Reprojects features on their way to another sink. Features are collected into batches of
+ * {@link #BATCH_SIZE}, the x, y coordinates of a whole batch are packed into one array and passed
+ * through the transform in a single call, and projected copies of the features are then passed on in
+ * their original order. The features received are not changed.
+ *
+ * <p>Features held in a batch have not reached the target yet, so the sink must be flushed before the
+ * target is committed.
+ */
+final class ReprojectingSink implements FeatureSink, Flushable {
+
+    static final int BATCH_SIZE = 1024;
+
+    private final FeatureSink target;
+    private final MathTransform transform;
+    private final SimpleFeatureBuilder builder;
+    private final String geometryName;
+    private final List<SimpleFeature> batch = new ArrayList<SimpleFeature>(BATCH_SIZE);
+    private double[] coordinates = new double[BATCH_SIZE * 2];
+
+    /**
+     * @param target receives the projected features
+     * @param schema of the projected features
+     * @param transform from the coordinates of the features received to those of schema
+     */
+    ReprojectingSink(FeatureSink target, SimpleFeatureType schema, MathTransform transform) {
+        this.target = target;
+        this.transform = transform;
+        this.builder = new SimpleFeatureBuilder(schema);
+        this.geometryName = schema.getGeometryDescriptor().getLocalName();
+    }
+
+    @Override
+    public void add(SimpleFeature feature) throws IOException {
+        batch.add(feature);
+        if (batch.size() >= BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Project the features waiting in the batch and pass them on
+     */
+    @Override
+    public void flush() throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        reproject(batch);
+        for (SimpleFeature feature : batch) {
+            target.add(feature);
+        }
+        batch.clear();
+    }
+
+    /**
+     * Replace each feature of a list by its projected copy
+     * @param features
+     * @throws IOException if a coordinate cannot be projected
+     */
+    void reproject(List<SimpleFeature> features) throws IOException {
+        for (int from = 0; from < features.size(); from += BATCH_SIZE) {
+            List<SimpleFeature> part = features.subList(from, Math.min(features.size(), from + BATCH_SIZE));
+
+            int count = 0;
+            for (SimpleFeature feature : part) {
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                if (geometry != null) {
+                    count += geometry.getNumPoints();
+                }
+            }
+            if (coordinates.length < count * 2) {
+                coordinates = new double[Math.max(count * 2, coordinates.length * 2)];
+            }
+
+            Packer packer = new Packer(coordinates);
+            for (SimpleFeature feature : part) {
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                if (geometry != null) {
+                    geometry.apply(packer);
+                }
+            }
+            try {
+                transform.transform(coordinates, 0, coordinates, 0, packer.next / 2);
+            } catch (TransformException e) {
+                throw new IOException("Cannot reproject: " + e.getMessage(), e);
+            }
+
+            Unpacker unpacker = new Unpacker(coordinates);
+            for (int i = 0; i < part.size(); i++) {
+                SimpleFeature feature = part.get(i);
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                builder.init(feature);
+                if (geometry != null) {
+                    //geometries may be shared through the geometry cache, so only ever project a copy
+                    Geometry projected = geometry.copy();
+                    projected.apply(unpacker);
+                    builder.set(geometryName, projected);
+                }
+                part.set(i, builder.buildFeature(null));
+            }
+        }
+    }
+
+    /**
+     * Copies the x, y coordinates of geometries into an array, one after another
+     */
+    private static final class Packer implements CoordinateSequenceFilter {
+        private final double[] coordinates;
+        int next;
+
+        Packer(double[] coordinates) {
+            this.coordinates = coordinates;
+        }
+
+        @Override
+        public void filter(CoordinateSequence sequence, int i) {
+            coordinates[next++] = sequence.getX(i);
+            coordinates[next++] = sequence.getY(i);
+        }
+
+        @Override
+        public boolean isDone() {
+            return false;
+        }
+
+        @Override
+        public boolean isGeometryChanged() {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the coordinates packed by a {@link Packer} back, in the same order
+     */
+    private static final class Unpacker implements CoordinateSequenceFilter {
+        private final double[] coordinates;
+        private int next;
+
+        Unpacker(double[] coordinates) {
+            this.coordinates = coordinates;
+        }
+
+        @Override
+        public void filter(CoordinateSequence sequence, int i) {
+            sequence.setOrdinate(i, CoordinateSequence.X, coordinates[next++]);
+            sequence.setOrdinate(i, CoordinateSequence.Y, coordinates[next++]);
+        }
+
+        @Override
+        public boolean isDone() {
+            return false;
+        }
+
+        @Override
+        public boolean isGeometryChanged() {
+            return true;
+        }
+    }
+}
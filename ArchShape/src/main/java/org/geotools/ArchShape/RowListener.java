@@ -0,0 +1,24 @@
+package org.geotools.ArchShape;
+
+import java.io.IOException;
+
+/**
+ * Told about every row of the tag file once it has been dealt with, in file order
+ */
+interface RowListener {
+
+    /**
+     * The row could not be converted
+     * @param reject the row and the reason
+     * @param endOffset byte offset in the tag file just past the end of the row
+     * @throws IOException to stop the conversion
+     */
+    void rejected(TagConverter.Reject reject, long endOffset) throws IOException;
+
+    /**
+     * The row has been converted, or rejected, and its feature handed to its sink
+     * @param endOffset byte offset in the tag file just past the end of the row
+     * @throws IOException to stop the conversion
+     */
+    void rowDone(long endOffset) throws IOException;
+}
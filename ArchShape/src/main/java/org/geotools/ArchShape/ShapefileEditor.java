@@ -0,0 +1,246 @@
+package org.geotools.ArchShape;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.List;
+
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.shp.JTSUtilities;
+import org.geotools.data.shapefile.shp.ShapeHandler;
+import org.geotools.data.shapefile.shp.ShapeType;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Changes a shapefile where it lies rather than writing it out again. Features are appended to the
+ * ends of the .shp, .shx and .dbf files, and records are removed by setting the deletion flag of their
+ * .dbf records, which the shapefile store skips when reading. Removed records keep their place, so
+ * the records of a shapefile stay numbered as they were until it is next converted in full.
+ *
+ * <p>Only the records that change are written, along with the headers. The exceptions are a text
+ * value longer than its .dbf field, which has the field widened by {@link DbfFieldSizer} first, and
+ * the shapefile store's .qix and .fix indexes, which are deleted for the store to rebuild.
+ */
+final class ShapefileEditor {
+
+    private static final int SHP_HEADER_SIZE = 100;
+    private static final int SHX_RECORD_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte DELETED = '*';
+    private static final byte END_OF_FILE = 0x1A;
+
+    private ShapefileEditor() {
+    }
+
+    /**
+     * @param shapefile
+     * @return number of records in the shapefile, deleted ones included, or -1 if its .shx and .dbf
+     *         files disagree
+     * @throws IOException
+     */
+    static long countRecords(File shapefile) throws IOException {
+        long records = (siblingOf(shapefile, ".shx").length() - SHP_HEADER_SIZE) / SHX_RECORD_SIZE;
+        return records == DbfFieldSizer.Header.read(DbfFieldSizer.dbfFor(shapefile)).records ? records : -1;
+    }
+
+    /**
+     * Flag records as deleted
+     * @param shapefile
+     * @param removed per record, whether to delete it
+     * @throws IOException
+     */
+    static void delete(File shapefile, boolean[] removed) throws IOException {
+        File dbf = DbfFieldSizer.dbfFor(shapefile);
+        DbfFieldSizer.Header header = DbfFieldSizer.Header.read(dbf);
+        FileChannel channel = FileChannel.open(dbf.toPath(), StandardOpenOption.WRITE);
+        try {
+            ByteBuffer flag = ByteBuffer.wrap(new byte[] {DELETED});
+            for (int r = 0; r < removed.length; r++) {
+                if (removed[r]) {
+                    flag.rewind();
+                    channel.write(flag, header.headerLength + (long) r * header.recordLength);
+                }
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Append features, whose attributes must match the shapefile's fields in number and order and be
+     * written to character fields
+     * @param shapefile
+     * @param features
+     * @throws IOException
+     */
+    static void append(File shapefile, List<SimpleFeature> features) throws IOException {
+        if (features.isEmpty()) {
+            return;
+        }
+        File dbf = DbfFieldSizer.dbfFor(shapefile);
+        byte[][][] values = encode(features, DbfFieldSizer.Header.read(dbf).lengths.length);
+        int[] longest = new int[values[0].length];
+        for (byte[][] record : values) {
+            for (int f = 0; f < record.length; f++) {
+                longest[f] = Math.max(longest[f], record[f].length);
+            }
+        }
+        DbfFieldSizer.widen(dbf, longest);
+
+        appendShapes(shapefile, features);
+        appendRecords(dbf, values);
+
+        //the store's indexes know nothing of the new records
+        siblingOf(shapefile, ".qix").delete();
+        siblingOf(shapefile, ".fix").delete();
+    }
+
+    //the text of each feature's attributes, other than its geometry, in the encoding of the store
+    private static byte[][][] encode(List<SimpleFeature> features, int fields) throws IOException {
+        byte[][][] values = new byte[features.size()][][];
+        for (int i = 0; i < values.length; i++) {
+            SimpleFeature feature = features.get(i);
+            values[i] = new byte[fields][];
+            int f = 0;
+            for (Object value : feature.getAttributes()) {
+                if (value instanceof Geometry) {
+                    continue;
+                }
+                if (f == fields) {
+                    throw new IOException("Feature " + feature.getID() + " has more attributes than the .dbf has fields");
+                }
+                values[i][f++] = (value == null ? "" : value.toString())
+                        .getBytes(ShapefileDataStore.DEFAULT_STRING_CHARSET);
+            }
+            if (f < fields) {
+                throw new IOException("Feature " + feature.getID() + " has fewer attributes than the .dbf has fields");
+            }
+        }
+        return values;
+    }
+
+    private static void appendShapes(File shapefile, List<SimpleFeature> features) throws IOException {
+        File shx = siblingOf(shapefile, ".shx");
+        FileChannel shp = FileChannel.open(shapefile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileChannel index = FileChannel.open(shx.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                ByteBuffer header = ByteBuffer.allocate(SHP_HEADER_SIZE);
+                readFully(shp, header, 0, shapefile);
+                header.order(ByteOrder.LITTLE_ENDIAN);
+                ShapeType shapeType = ShapeType.forID(header.getInt(32));
+                ShapeHandler handler = shapeType.getShapeHandler(new GeometryFactory());
+
+                int number = (int) ((index.size() - SHP_HEADER_SIZE) / SHX_RECORD_SIZE); //of the last record
+                Envelope bounds = new Envelope();
+                if (number > 0) {
+                    bounds.init(header.getDouble(36), header.getDouble(52), header.getDouble(44), header.getDouble(60));
+                }
+
+                long end = shp.size();
+                ByteBuffer entries = ByteBuffer.allocate(features.size() * SHX_RECORD_SIZE);
+                for (SimpleFeature feature : features) {
+                    Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                    int length = 4; //the shape type of a null shape
+                    if (geometry != null) {
+                        geometry = JTSUtilities.convertToCollection(geometry, shapeType);
+                        length = handler.getLength(geometry);
+                        bounds.expandToInclude(geometry.getEnvelopeInternal());
+                    }
+                    ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+                    record.putInt(++number).putInt(length / 2);
+                    record.order(ByteOrder.LITTLE_ENDIAN);
+                    record.putInt(geometry != null ? shapeType.id : ShapeType.NULL.id);
+                    if (geometry != null) {
+                        handler.write(record, geometry);
+                    }
+                    record.flip();
+                    writeFully(shp, record, end);
+                    entries.putInt((int) (end / 2)).putInt(length / 2);
+                    end += record.limit();
+                }
+                entries.flip();
+                writeFully(index, entries, index.size());
+
+                //file lengths in 16 bit words, then the bounding box
+                ByteBuffer fileLength = ByteBuffer.allocate(4);
+                fileLength.putInt(0, (int) (end / 2));
+                writeFully(shp, fileLength, 24);
+                fileLength.clear();
+                fileLength.putInt(0, (int) (index.size() / 2));
+                writeFully(index, fileLength, 24);
+                ByteBuffer box = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+                box.putDouble(bounds.getMinX()).putDouble(bounds.getMinY())
+                        .putDouble(bounds.getMaxX()).putDouble(bounds.getMaxY());
+                box.flip();
+                writeFully(shp, box, 36);
+                box.rewind();
+                writeFully(index, box, 36);
+            } finally {
+                index.close();
+            }
+        } finally {
+            shp.close();
+        }
+    }
+
+    private static void appendRecords(File dbf, byte[][][] values) throws IOException {
+        DbfFieldSizer.Header header = DbfFieldSizer.Header.read(dbf);
+        ByteBuffer records = ByteBuffer.allocate(values.length * header.recordLength + 1);
+        for (byte[][] record : values) {
+            records.put((byte) ' '); //not deleted
+            for (int f = 0; f < record.length; f++) {
+                int length = Math.min(record[f].length, header.lengths[f]);
+                records.put(record[f], 0, length);
+                for (int pad = length; pad < header.lengths[f]; pad++) {
+                    records.put((byte) ' ');
+                }
+            }
+        }
+        records.put(END_OF_FILE);
+        records.flip();
+
+        FileChannel channel = FileChannel.open(dbf.toPath(), StandardOpenOption.WRITE);
+        try {
+            writeFully(channel, records, header.headerLength + header.records * header.recordLength);
+
+            //date of the last update, then the number of records
+            Calendar today = Calendar.getInstance();
+            ByteBuffer fixed = ByteBuffer.allocate(7).order(ByteOrder.LITTLE_ENDIAN);
+            fixed.put((byte) (today.get(Calendar.YEAR) - 1900)).put((byte) (today.get(Calendar.MONTH) + 1))
+                    .put((byte) today.get(Calendar.DAY_OF_MONTH)).putInt((int) (header.records + values.length));
+            fixed.flip();
+            writeFully(channel, fixed, 1);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static File siblingOf(File shapefile, String extension) {
+        return new File(shapefile.getPath().replaceFirst("(?i)\\.shp$", "") + extension);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, File file) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException(file + " is not a complete shapefile");
+            }
+            position += n;
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
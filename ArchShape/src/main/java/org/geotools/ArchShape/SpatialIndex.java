@@ -0,0 +1,663 @@
+package org.geotools.ArchShape;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.geom.util.AffineTransformation;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.GeographicCRS;
+
+/**
+ * A packed Hilbert R-tree over the Point, Line and Polygon features of a conversion, kept in a file
+ * next to the shapefiles, which answers window, containment, distance and nearest neighbour queries
+ * without scanning the shapefiles.
+ *
+ * <p>The tree is built once, bottom up: the features are sorted along a Hilbert curve through their
+ * extent, every {@link #NODE_SIZE} neighbours are bounded by a node, every {@link #NODE_SIZE} nodes by
+ * a parent and so on up to a single root, so nodes are full and overlap little. The kind, tag,
+ * description and geometry of each feature are stored after the tree, so answers come from the index
+ * alone. An open index maps the file into memory rather than reading it, so opening takes no time
+ * whatever its size, only the pages a query touches are read, and a query visits a number of nodes
+ * logarithmic in the number of features, plus those holding its answers.
+ *
+ * <p>Distances are in metres. In longitude and latitude they are measured in a plane scaled to metres
+ * around the query, much as {@link LocalProjection} does, which is close enough across a site; any
+ * other coordinate reference system is taken to be in metres. An open index may be shared between
+ * threads.
+ *
+ * <pre>
+ * header:  magic, version, node size, geographic, feature count, node count, level count, 0
+ * levels:  the end of each level of the tree, leaves first
+ * boxes:   min x, min y, max x, max y of every node
+ * indices: for a leaf, the offset of its feature in the features; otherwise, its first child
+ * features: kind, tag, description and WKB geometry of each feature
+ * </pre>
+ */
+public final class SpatialIndex {
+
+    static final String EXTENSION = ".sidx";
+    static final int NODE_SIZE = 16;
+
+    private static final int MAGIC = 0x41535349; //"ASSI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int RECORD_HEADER = 13; //kind, and the lengths of the tag, description and geometry
+    private static final int HILBERT_ORDER = 16; //bits per axis of the curve the features are sorted along
+    private static final int SEGMENT_BITS = 30; //the file is mapped in pieces of 1 GB
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    private final ByteBuffer[] segments;
+    private final boolean geographic;
+    private final int nodeSize;
+    private final long featureCount;
+    private final long nodeCount;
+    private final long[] levelEnds;
+    private final long boxesStart;
+    private final long indicesStart;
+    private final long featuresStart;
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    private SpatialIndex(File file, ByteBuffer[] segments, long size) throws IOException {
+        this.segments = segments;
+        if (size < HEADER_SIZE || getInt(0) != MAGIC || getInt(4) != VERSION) {
+            throw new IOException("Not a spatial index: " + file);
+        }
+        nodeSize = getInt(8);
+        geographic = getInt(12) != 0;
+        featureCount = getLong(16);
+        nodeCount = getLong(24);
+        levelEnds = new long[getInt(32)];
+        for (int i = 0; i < levelEnds.length; i++) {
+            levelEnds[i] = getLong(HEADER_SIZE + 8L * i);
+        }
+        boxesStart = HEADER_SIZE + 8L * levelEnds.length;
+        indicesStart = boxesStart + 32 * nodeCount;
+        featuresStart = indicesStart + 8 * nodeCount;
+        if (featuresStart > size) {
+            throw new IOException("Truncated spatial index: " + file);
+        }
+    }
+
+    /**
+     * @param pointShapefile
+     * @return the index file belonging to the Point shapefile of a conversion
+     */
+    static File fileFor(File pointShapefile) {
+        String path = pointShapefile.getPath();
+        if (path.toLowerCase().endsWith(".shp")) {
+            path = path.substring(0, path.length() - 4);
+        }
+        return new File(path + EXTENSION);
+    }
+
+    /**
+     * Map an index file into memory
+     * @param file
+     * @return
+     * @throws IOException if the file is not an index
+     */
+    public static SpatialIndex open(File file) throws IOException {
+        //the mapping stays valid after the channel is closed
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer[] segments = new ByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long from = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(SEGMENT_MASK + 1, size - from));
+            }
+            return new SpatialIndex(file, segments, size);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Index the features of the Point, Line and Polygon shapefiles of a conversion
+     * @param shapefiles the Point, Line and Polygon shapefiles
+     * @param file the index file to write, replacing any existing file
+     * @return the number of features indexed
+     * @throws IOException
+     */
+    public static long build(File[] shapefiles, File file) throws IOException {
+        if (shapefiles.length != 3) {
+            throw new IllegalArgumentException("Expected Point, Line and Polygon shapefiles: " + Arrays.toString(shapefiles));
+        }
+        Builder builder = null;
+        try {
+            for (int i = 0; i < shapefiles.length; i++) {
+                ShapefileDataStore store = new ShapefileDataStore(shapefiles[i].toURI().toURL());
+                try {
+                    if (builder == null) {
+                        CoordinateReferenceSystem crs = store.getSchema().getCoordinateReferenceSystem();
+                        builder = new Builder(file, crs == null || crs instanceof GeographicCRS);
+                    }
+                    LocationTagParser.Kind kind = LocationTagParser.Kind.values()[i];
+                    SimpleFeatureIterator features = store.getFeatureSource().getFeatures().features();
+                    try {
+                        while (features.hasNext()) {
+                            //every type is the geometry, then the description, then the tag
+                            SimpleFeature feature = features.next();
+                            builder.add(kind, string(feature.getAttribute(2)), string(feature.getAttribute(1)),
+                                    (Geometry) feature.getDefaultGeometry());
+                        }
+                    } finally {
+                        features.close();
+                    }
+                } finally {
+                    store.dispose();
+                }
+            }
+            builder.finish();
+            return builder.size();
+        } finally {
+            if (builder != null) {
+                builder.close();
+            }
+        }
+    }
+
+    private static String string(Object value) {
+        return value == null ? "" : value.toString().trim();
+    }
+
+    /**
+     * @return the number of features in the index
+     */
+    public long size() {
+        return featureCount;
+    }
+
+    /**
+     * @return whether the features are in longitude and latitude rather than metres
+     */
+    public boolean isGeographic() {
+        return geographic;
+    }
+
+    /**
+     * @param window
+     * @return the features which intersect the window
+     * @throws IOException if the index is corrupt
+     */
+    public List<Hit> window(Envelope window) throws IOException {
+        final PreparedGeometry area = PreparedGeometryFactory.prepare(geometryFactory.toGeometry(window));
+        return search(window, geometry -> area.intersects(geometry));
+    }
+
+    /**
+     * @param area such as a unit of the Polygon shapefile
+     * @return the features which lie inside the area or on its boundary
+     * @throws IOException if the index is corrupt
+     */
+    public List<Hit> within(Geometry area) throws IOException {
+        final PreparedGeometry prepared = PreparedGeometryFactory.prepare(area);
+        return search(area.getEnvelopeInternal(), geometry -> prepared.covers(geometry));
+    }
+
+    /**
+     * @param geometry
+     * @param metres
+     * @return the features no further than the distance from the geometry
+     * @throws IOException if the index is corrupt
+     */
+    public List<Hit> withinDistance(Geometry geometry, final double metres) throws IOException {
+        double[] scale = metresPerUnit(geometry.getEnvelopeInternal().centre());
+        final AffineTransformation toMetres = AffineTransformation.scaleInstance(scale[0], scale[1]);
+        final Geometry query = toMetres.transform(geometry);
+        Envelope box = new Envelope(geometry.getEnvelopeInternal());
+        box.expandBy(metres / scale[0], metres / scale[1]);
+        return search(box, candidate -> query.isWithinDistance(toMetres.transform(candidate), metres));
+    }
+
+    /**
+     * @param point
+     * @param k
+     * @return the k features nearest the point, nearest first, each with its distance
+     * @throws IOException if the index is corrupt
+     */
+    public List<Hit> nearest(Coordinate point, int k) throws IOException {
+        double[] scale = metresPerUnit(point);
+        AffineTransformation toMetres = AffineTransformation.scaleInstance(scale[0], scale[1]);
+        Geometry query = toMetres.transform(geometryFactory.createPoint(point));
+
+        //best first: a node is never nearer than its box, so the nearest entry left is the next answer
+        List<Hit> hits = new ArrayList<Hit>(k);
+        if (featureCount == 0 || k <= 0) {
+            return hits;
+        }
+        PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+        queue.add(new Candidate(0, nodeCount - 1, null));
+        while (!queue.isEmpty() && hits.size() < k) {
+            Candidate candidate = queue.poll();
+            if (candidate.hit != null) {
+                hits.add(candidate.hit);
+            } else if (candidate.node < featureCount) {
+                Hit hit = read(getLong(indicesStart + 8 * candidate.node));
+                double distance = query.distance(toMetres.transform(hit.geometry));
+                queue.add(new Candidate(distance, candidate.node, hit.withDistance(distance)));
+            } else {
+                long first = getLong(indicesStart + 8 * candidate.node);
+                long end = Math.min(first + nodeSize, levelEnd(first));
+                for (long child = first; child < end; child++) {
+                    long box = boxesStart + 32 * child;
+                    double dx = Math.max(0, Math.max(getDouble(box) - point.x, point.x - getDouble(box + 16)));
+                    double dy = Math.max(0, Math.max(getDouble(box + 8) - point.y, point.y - getDouble(box + 24)));
+                    queue.add(new Candidate(Math.hypot(dx * scale[0], dy * scale[1]), child, null));
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Find features by their location tag. Tags are not indexed, so this reads every feature.
+     * @param tag
+     * @return the features with the tag, ignoring case and whitespace
+     * @throws IOException if the index is corrupt
+     */
+    public List<Hit> find(String tag) throws IOException {
+        String wanted = tag.replaceAll("\\s", "");
+        List<Hit> hits = new ArrayList<Hit>();
+        for (long leaf = 0; leaf < featureCount; leaf++) {
+            Hit hit = read(getLong(indicesStart + 8 * leaf));
+            if (hit.tag.replaceAll("\\s", "").equalsIgnoreCase(wanted)) {
+                hits.add(hit);
+            }
+        }
+        return hits;
+    }
+
+    //the features whose boxes intersect box and whose geometries pass the test
+    private List<Hit> search(Envelope box, GeometryTest test) throws IOException {
+        List<Hit> hits = new ArrayList<Hit>();
+        if (featureCount == 0) {
+            return hits;
+        }
+        long[] stack = new long[64];
+        int top = 0;
+        stack[top++] = nodeCount - 1;
+        while (top > 0) {
+            long node = stack[--top];
+            long first = getLong(indicesStart + 8 * node);
+            long end = Math.min(first + nodeSize, levelEnd(first));
+            for (long child = first; child < end; child++) {
+                long at = boxesStart + 32 * child;
+                if (getDouble(at) > box.getMaxX() || getDouble(at + 8) > box.getMaxY()
+                        || getDouble(at + 16) < box.getMinX() || getDouble(at + 24) < box.getMinY()) {
+                    continue;
+                }
+                if (child < featureCount) {
+                    Hit hit = read(getLong(indicesStart + 8 * child));
+                    if (test.accept(hit.geometry)) {
+                        hits.add(hit);
+                    }
+                } else {
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = child;
+                }
+            }
+        }
+        return hits;
+    }
+
+    //the end of the level of the tree holding a node
+    private long levelEnd(long node) {
+        for (long end : levelEnds) {
+            if (node < end) {
+                return end;
+            }
+        }
+        return nodeCount;
+    }
+
+    //metres per unit of x and of y around a point
+    private double[] metresPerUnit(Coordinate centre) {
+        if (!geographic) {
+            return new double[] {1, 1};
+        }
+        LocalProjection local = new LocalProjection(centre);
+        return new double[] {1 / (local.longitude(1, 0) - centre.x), 1 / (local.latitude(0, 1) - centre.y)};
+    }
+
+    private Hit read(long offset) throws IOException {
+        byte[] header = new byte[RECORD_HEADER];
+        read(featuresStart + offset, header);
+        ByteBuffer lengths = ByteBuffer.wrap(header);
+        int kind = lengths.get();
+        int tagLength = lengths.getInt();
+        int descriptionLength = lengths.getInt();
+        int geometryLength = lengths.getInt();
+        if (kind < 0 || kind >= LocationTagParser.Kind.values().length
+                || tagLength < 0 || descriptionLength < 0 || geometryLength < 0) {
+            throw new IOException("Corrupt spatial index at feature offset " + offset);
+        }
+        byte[] body = new byte[tagLength + descriptionLength + geometryLength];
+        read(featuresStart + offset + RECORD_HEADER, body);
+        try {
+            Geometry geometry = new WKBReader(geometryFactory)
+                    .read(Arrays.copyOfRange(body, tagLength + descriptionLength, body.length));
+            return new Hit(LocationTagParser.Kind.values()[kind], new String(body, 0, tagLength, StandardCharsets.UTF_8),
+                    new String(body, tagLength, descriptionLength, StandardCharsets.UTF_8), geometry, Double.NaN);
+        } catch (ParseException e) {
+            throw new IOException("Corrupt geometry in spatial index at feature offset " + offset, e);
+        }
+    }
+
+    //values are aligned to their size and segments to a power of two, so none spans two segments
+    private int getInt(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].getInt((int) (position & SEGMENT_MASK));
+    }
+
+    private long getLong(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].getLong((int) (position & SEGMENT_MASK));
+    }
+
+    private double getDouble(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].getDouble((int) (position & SEGMENT_MASK));
+    }
+
+    //features may span two segments
+    private void read(long position, byte[] bytes) throws IOException {
+        int done = 0;
+        while (done < bytes.length) {
+            int segment = (int) (position >>> SEGMENT_BITS);
+            if (segment >= segments.length) {
+                throw new IOException("Truncated spatial index");
+            }
+            ByteBuffer buffer = segments[segment].duplicate();
+            buffer.position((int) (position & SEGMENT_MASK));
+            int length = Math.min(bytes.length - done, buffer.remaining());
+            buffer.get(bytes, done, length);
+            done += length;
+            position += length;
+        }
+    }
+
+    private interface GeometryTest {
+        boolean accept(Geometry geometry);
+    }
+
+    //a node or feature waiting to be visited by a nearest neighbour search
+    private static final class Candidate implements Comparable<Candidate> {
+        final double distance;
+        final long node;
+        final Hit hit; //once the exact distance of a feature is known
+
+        Candidate(double distance, long node, Hit hit) {
+            this.distance = distance;
+            this.node = node;
+            this.hit = hit;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(distance, other.distance);
+        }
+    }
+
+    /**
+     * A feature found by a query
+     */
+    public static final class Hit {
+        private final LocationTagParser.Kind kind;
+        private final String tag;
+        private final String description;
+        private final Geometry geometry;
+        private final double distance;
+
+        Hit(LocationTagParser.Kind kind, String tag, String description, Geometry geometry, double distance) {
+            this.kind = kind;
+            this.tag = tag;
+            this.description = description;
+            this.geometry = geometry;
+            this.distance = distance;
+        }
+
+        Hit withDistance(double distance) {
+            return new Hit(kind, tag, description, geometry, distance);
+        }
+
+        /**
+         * @return which of the Point, Line and Polygon shapefiles the feature is from
+         */
+        public LocationTagParser.Kind getKind() {
+            return kind;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public Geometry getGeometry() {
+            return geometry;
+        }
+
+        /**
+         * @return the distance in metres from the point of a nearest neighbour query, or NaN for other queries
+         */
+        public double getDistance() {
+            return distance;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + tag + " " + description + " " + geometry;
+        }
+    }
+
+    /**
+     * Writes an index file. Features are added in any order, their records going straight to a
+     * temporary file next to the index, and the tree is built when the builder is finished, from about
+     * 48 bytes per feature held in memory.
+     */
+    public static final class Builder implements Closeable {
+        private final File file;
+        private final boolean geographic;
+        private final File featureFile;
+        private final DataOutputStream features;
+        private final WKBWriter wkbWriter = new WKBWriter();
+        private double[] boxes = new double[4 * 1024];
+        private long[] offsets = new long[1024];
+        private int size;
+        private long length; //of the feature file
+
+        /**
+         * @param file the index file to write
+         * @param geographic whether the features are in longitude and latitude rather than metres
+         * @throws IOException
+         */
+        public Builder(File file, boolean geographic) throws IOException {
+            this.file = file;
+            this.geographic = geographic;
+            this.featureFile = new File(file.getPath() + ".features");
+            this.features = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(featureFile), 1 << 16));
+        }
+
+        /**
+         * @param kind
+         * @param tag
+         * @param description
+         * @param geometry features without a geometry are left out, as no query can find them
+         * @throws IOException
+         */
+        public void add(LocationTagParser.Kind kind, String tag, String description, Geometry geometry) throws IOException {
+            if (geometry == null || geometry.isEmpty()) {
+                return;
+            }
+            if (size == offsets.length) {
+                if (size == Integer.MAX_VALUE / 8) {
+                    throw new IOException("Too many features to index");
+                }
+                offsets = Arrays.copyOf(offsets, Math.min(size * 2, Integer.MAX_VALUE / 8));
+                boxes = Arrays.copyOf(boxes, offsets.length * 4);
+            }
+            Envelope envelope = geometry.getEnvelopeInternal();
+            boxes[4 * size] = envelope.getMinX();
+            boxes[4 * size + 1] = envelope.getMinY();
+            boxes[4 * size + 2] = envelope.getMaxX();
+            boxes[4 * size + 3] = envelope.getMaxY();
+            offsets[size++] = length;
+
+            byte[] tagBytes = (tag == null ? "" : tag).getBytes(StandardCharsets.UTF_8);
+            byte[] descriptionBytes = (description == null ? "" : description).getBytes(StandardCharsets.UTF_8);
+            byte[] wkb = wkbWriter.write(geometry);
+            features.writeByte(kind.ordinal());
+            features.writeInt(tagBytes.length);
+            features.writeInt(descriptionBytes.length);
+            features.writeInt(wkb.length);
+            features.write(tagBytes);
+            features.write(descriptionBytes);
+            features.write(wkb);
+            length += RECORD_HEADER + tagBytes.length + descriptionBytes.length + wkb.length;
+        }
+
+        /**
+         * @return the number of features added
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Build the tree and write the index file. The file is written next to the old one and then
+         * moved over it, so a failed build leaves the old index in place.
+         * @throws IOException
+         */
+        public void finish() throws IOException {
+            features.close();
+
+            //the leaves, then each level of parents, up to the root
+            List<Long> levels = new ArrayList<Long>();
+            long nodes = size;
+            levels.add(nodes);
+            if (size > 0) {
+                long level = size;
+                do {
+                    level = (level + NODE_SIZE - 1) / NODE_SIZE;
+                    nodes += level;
+                    levels.add(nodes);
+                } while (level > 1);
+            }
+            if (4 * nodes > Integer.MAX_VALUE - 8) {
+                throw new IOException("Too many features to index: " + size);
+            }
+            double[] tree = new double[(int) (4 * nodes)];
+            long[] indices = new long[(int) nodes];
+
+            //leaves in Hilbert order of the centres of their boxes, across the extent of all of them
+            Envelope extent = new Envelope();
+            for (int i = 0; i < size; i++) {
+                extent.expandToInclude(boxes[4 * i], boxes[4 * i + 1]);
+                extent.expandToInclude(boxes[4 * i + 2], boxes[4 * i + 3]);
+            }
+            long side = (1L << HILBERT_ORDER) - 1;
+            double width = Math.max(extent.getWidth(), Double.MIN_NORMAL);
+            double height = Math.max(extent.getHeight(), Double.MIN_NORMAL);
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                double x = (boxes[4 * i] + boxes[4 * i + 2]) / 2;
+                double y = (boxes[4 * i + 1] + boxes[4 * i + 3]) / 2;
+                keys[i] = HilbertSorter.hilbertIndex(HILBERT_ORDER, (long) ((x - extent.getMinX()) / width * side),
+                        (long) ((y - extent.getMinY()) / height * side));
+            }
+            int[] order = HilbertSorter.sortedRows(keys, size);
+            for (int i = 0; i < size; i++) {
+                System.arraycopy(boxes, 4 * order[i], tree, 4 * i, 4);
+                indices[i] = offsets[order[i]];
+            }
+
+            //each parent bounds up to NODE_SIZE consecutive nodes of the level below
+            int first = 0;
+            for (int level = 0; level + 1 < levels.size(); level++) {
+                int end = (int) (long) levels.get(level);
+                int parent = end;
+                for (int child = first; child < end; child += NODE_SIZE, parent++) {
+                    indices[parent] = child;
+                    double minX = Double.POSITIVE_INFINITY;
+                    double minY = Double.POSITIVE_INFINITY;
+                    double maxX = Double.NEGATIVE_INFINITY;
+                    double maxY = Double.NEGATIVE_INFINITY;
+                    for (int i = child; i < Math.min(child + NODE_SIZE, end); i++) {
+                        minX = Math.min(minX, tree[4 * i]);
+                        minY = Math.min(minY, tree[4 * i + 1]);
+                        maxX = Math.max(maxX, tree[4 * i + 2]);
+                        maxY = Math.max(maxY, tree[4 * i + 3]);
+                    }
+                    tree[4 * parent] = minX;
+                    tree[4 * parent + 1] = minY;
+                    tree[4 * parent + 2] = maxX;
+                    tree[4 * parent + 3] = maxY;
+                }
+                first = end;
+            }
+
+            File temp = new File(file.getPath() + ".tmp");
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(NODE_SIZE);
+                out.writeInt(geographic ? 1 : 0);
+                out.writeLong(size);
+                out.writeLong(nodes);
+                out.writeInt(levels.size());
+                out.writeInt(0);
+                for (long end : levels) {
+                    out.writeLong(end);
+                }
+                for (double value : tree) {
+                    out.writeDouble(value);
+                }
+                for (long index : indices) {
+                    out.writeLong(index);
+                }
+                Files.copy(featureFile.toPath(), out);
+            } finally {
+                out.close();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        /**
+         * Remove the temporary feature file
+         */
+        @Override
+        public void close() throws IOException {
+            features.close();
+            Files.deleteIfExists(featureFile.toPath());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.geotools.ArchShape;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Headless command line entry point for querying the {@link SpatialIndex} of a conversion, as written
+ * with --index, or for building one from the shapefiles of an earlier conversion. Features are named
+ * by their location tags, such as the unit N2-4E2-4, and answers are printed as csv: the kind, tag
+ * and description of each feature and its geometry as well known text, after the distance for
+ * nearest neighbour queries.
+ *
+ * <pre>
+ * SpatialQuery &lt;index&gt; window &lt;min x&gt; &lt;min y&gt; &lt;max x&gt; &lt;max y&gt;
+ * SpatialQuery &lt;index&gt; inside &lt;tag&gt;
+ * SpatialQuery &lt;index&gt; near &lt;tag&gt; &lt;metres&gt;
+ * SpatialQuery &lt;index&gt; nearest &lt;x&gt; &lt;y&gt; [k]
+ * SpatialQuery &lt;index&gt; build &lt;Point.shp&gt; &lt;Line.shp&gt; &lt;Polygon.shp&gt;
+ * </pre>
+ */
+public class SpatialQuery {
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 3) {
+            usage();
+        }
+        File indexFile = new File(args[0]);
+        String command = args[1].toLowerCase(Locale.ROOT);
+        if (command.equals("build")) {
+            if (args.length != 5) {
+                usage();
+            }
+            long count = SpatialIndex.build(new File[] {new File(args[2]), new File(args[3]), new File(args[4])}, indexFile);
+            System.out.println("Indexed " + count + " features in " + indexFile);
+            return;
+        }
+
+        SpatialIndex index = SpatialIndex.open(indexFile);
+        List<SpatialIndex.Hit> hits;
+        if (command.equals("window") && args.length == 6) {
+            hits = index.window(new Envelope(Double.parseDouble(args[2]), Double.parseDouble(args[4]),
+                    Double.parseDouble(args[3]), Double.parseDouble(args[5])));
+        } else if (command.equals("inside") && args.length == 3) {
+            hits = new ArrayList<SpatialIndex.Hit>();
+            for (SpatialIndex.Hit unit : find(index, args[2])) {
+                for (SpatialIndex.Hit hit : index.within(unit.getGeometry())) {
+                    if (!same(hit, unit)) {
+                        hits.add(hit);
+                    }
+                }
+            }
+        } else if (command.equals("near") && args.length == 4) {
+            hits = new ArrayList<SpatialIndex.Hit>();
+            for (SpatialIndex.Hit feature : find(index, args[2])) {
+                for (SpatialIndex.Hit hit : index.withinDistance(feature.getGeometry(), Double.parseDouble(args[3]))) {
+                    if (!same(hit, feature)) {
+                        hits.add(hit);
+                    }
+                }
+            }
+        } else if (command.equals("nearest") && (args.length == 4 || args.length == 5)) {
+            hits = index.nearest(new Coordinate(Double.parseDouble(args[2]), Double.parseDouble(args[3])),
+                    args.length == 5 ? Integer.parseInt(args[4]) : 1);
+        } else {
+            usage();
+            return;
+        }
+
+        System.out.println(command.equals("nearest") ? "kind,tag,description,distance,geometry" : "kind,tag,description,geometry");
+        for (SpatialIndex.Hit hit : hits) {
+            StringBuilder line = new StringBuilder();
+            line.append(hit.getKind()).append(',').append(field(hit.getTag())).append(',').append(field(hit.getDescription()));
+            if (command.equals("nearest")) {
+                line.append(',').append(hit.getDistance());
+            }
+            line.append(',').append(field(hit.getGeometry().toText()));
+            System.out.println(line);
+        }
+    }
+
+    //the features with a tag, of which there must be at least one
+    private static List<SpatialIndex.Hit> find(SpatialIndex index, String tag) throws IOException {
+        List<SpatialIndex.Hit> features = index.find(tag);
+        if (features.isEmpty()) {
+            System.out.println("No feature is tagged " + tag);
+            System.exit(1);
+        }
+        return features;
+    }
+
+    //whether a hit is the feature the query was made around
+    private static boolean same(SpatialIndex.Hit hit, SpatialIndex.Hit feature) {
+        return hit.getKind() == feature.getKind() && hit.getTag().equals(feature.getTag())
+                && hit.getGeometry().equalsExact(feature.getGeometry());
+    }
+
+    //quoted if it holds a comma or quote, with quotes doubled
+    private static String field(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static void usage() {
+        System.out.println("Usage: SpatialQuery <index> window <min x> <min y> <max x> <max y>");
+        System.out.println("       SpatialQuery <index> inside <tag>");
+        System.out.println("       SpatialQuery <index> near <tag> <metres>");
+        System.out.println("       SpatialQuery <index> nearest <x> <y> [k]");
+        System.out.println("       SpatialQuery <index> build <Point.shp> <Line.shp> <Polygon.shp>");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,200 @@
+package org.geotools.ArchShape;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Transaction;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.ShapefileDataStoreFactory;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Writes features to a new shapefile as they arrive instead of collecting them first.
+ *
+ * <p>Features are written outside of any transaction, so the shapefile store streams them straight to
+ * temporary .shp, .shx and .dbf files, which replace the shapefile when the writer is closed. Nothing
+ * is held in memory. Each {@link #commit()} closes and reopens the store's writer, which copies every
+ * feature already in the shapefile to new temporary files and rebuilds the .qix, so each commit
+ * rewrites the whole file: commits should be rare, and the default interval never commits before
+ * close. Features written since the last commit reach the shapefile when the writer is closed or
+ * aborted alike, so after a failure a resumed conversion truncates the shapefile back to its checkpoint.
+ */
+public class StreamingShapefileWriter implements FeatureSink, Closeable {
+
+    public static final int DEFAULT_COMMIT_INTERVAL = Integer.MAX_VALUE; //only write the file once, on close
+
+    private final ShapefileDataStore dataStore;
+    private final String typeName;
+    private final int commitInterval;
+
+    private FeatureWriter<SimpleFeatureType, SimpleFeature> writer;
+    private int pending; //features written since the last commit
+    private long written; //features written in total
+    private ConversionMetrics metrics;
+
+    public StreamingShapefileWriter(File newFile, SimpleFeatureType schema) throws IOException {
+        this(newFile, schema, DEFAULT_COMMIT_INTERVAL);
+    }
+
+    /**
+     * Create the shapefile and open it for appending
+     * @param newFile
+     * @param schema
+     * @param commitInterval number of features between commits, each of which rewrites the whole file
+     * @throws IOException
+     */
+    public StreamingShapefileWriter(File newFile, SimpleFeatureType schema, int commitInterval) throws IOException {
+        this(newFile, schema, commitInterval, DefaultGeographicCRS.WGS84);
+    }
+
+    /**
+     * Create the shapefile in a coordinate reference system other than WGS 84 longitude and latitude
+     * @param newFile
+     * @param schema
+     * @param commitInterval number of features between commits, each of which rewrites the whole file
+     * @param crs of the features' coordinates, written to the .prj file
+     * @throws IOException
+     */
+    public StreamingShapefileWriter(File newFile, SimpleFeatureType schema, int commitInterval,
+            CoordinateReferenceSystem crs) throws IOException {
+        this(createDataStore(newFile, schema, crs), commitInterval);
+    }
+
+    private StreamingShapefileWriter(ShapefileDataStore dataStore, int commitInterval) throws IOException {
+        this.dataStore = dataStore;
+        try {
+            if (commitInterval <= 0) {
+                throw new IllegalArgumentException("commitInterval must be positive: " + commitInterval);
+            }
+            this.commitInterval = commitInterval;
+
+            typeName = dataStore.getTypeNames()[0];
+            writer = dataStore.getFeatureWriterAppend(typeName, Transaction.AUTO_COMMIT);
+        } catch (IOException | RuntimeException e) {
+            dataStore.dispose();
+            throw e;
+        }
+    }
+
+    /**
+     * Open an existing shapefile to append features to it, for instance to resume an interrupted conversion
+     * @param file
+     * @param commitInterval number of features between commits, each of which rewrites the whole file
+     * @return
+     * @throws IOException
+     */
+    public static StreamingShapefileWriter append(File file, int commitInterval) throws IOException {
+        if (!file.isFile()) {
+            throw new IOException("No shapefile to append to: " + file);
+        }
+        ShapefileDataStoreFactory dataStoreFactory = new ShapefileDataStoreFactory();
+
+        Map<String, Serializable> params = new HashMap<String, Serializable>();
+        params.put("url", file.toURI().toURL());
+        params.put("create spatial index", Boolean.TRUE);
+
+        return new StreamingShapefileWriter((ShapefileDataStore) dataStoreFactory.createDataStore(params), commitInterval);
+    }
+
+    private static ShapefileDataStore createDataStore(File newFile, SimpleFeatureType schema, CoordinateReferenceSystem crs)
+            throws IOException {
+        ShapefileDataStoreFactory dataStoreFactory = new ShapefileDataStoreFactory();
+
+        Map<String, Serializable> params = new HashMap<String, Serializable>();
+        params.put("url", newFile.toURI().toURL());
+        params.put("create spatial index", Boolean.TRUE);
+
+        ShapefileDataStore dataStore = (ShapefileDataStore) dataStoreFactory.createNewDataStore(params);
+        try {
+            dataStore.createSchema(schema);
+            dataStore.forceSchemaCRS(crs);
+        } catch (IOException e) {
+            dataStore.dispose();
+            throw e;
+        }
+        return dataStore;
+    }
+
+    /**
+     * @param metrics receives the time spent writing and committing, or null
+     */
+    public void setMetrics(ConversionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void add(SimpleFeature feature) throws IOException {
+        long start = System.nanoTime();
+        SimpleFeature next = writer.next();
+        next.setAttributes(feature.getAttributes());
+        writer.write();
+        written++;
+        if (metrics != null) {
+            metrics.addStageNanos(ConversionMetrics.Stage.WRITE, System.nanoTime() - start);
+        }
+
+        if (++pending >= commitInterval) {
+            commit();
+        }
+    }
+
+    /**
+     * Move everything written so far into the shapefile, rewriting the whole file. The writer is
+     * reopened afterwards so that writing can continue.
+     * @throws IOException
+     */
+    public void commit() throws IOException {
+        long start = System.nanoTime();
+        writer.close();
+        pending = 0;
+        writer = dataStore.getFeatureWriterAppend(typeName, Transaction.AUTO_COMMIT);
+        if (metrics != null) {
+            metrics.addStageNanos(ConversionMetrics.Stage.COMMIT, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return number of features written, committed or not
+     */
+    public long getWrittenCount() {
+        return written;
+    }
+
+    /**
+     * Release the shapefile after a failure, keeping whatever the store has written
+     */
+    public void abort() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            dataStore.dispose();
+        }
+    }
+
+    /**
+     * Move the remaining features into the shapefile and release it
+     */
+    @Override
+    public void close() throws IOException {
+        long start = System.nanoTime();
+        try {
+            writer.close();
+            pending = 0;
+            if (metrics != null) {
+                metrics.addStageNanos(ConversionMetrics.Stage.COMMIT, System.nanoTime() - start);
+            }
+        } finally {
+            dataStore.dispose();
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package org.geotools.ArchShape;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Writes made up excavations, a datum csv file and a tag csv file in the columns CSV2Shape reads, for
+ * tuning and testing conversions at sizes no real site reaches. Rows are written as they are
+ * generated, so files of a hundred million rows take no more memory than files of a thousand.
+ *
+ * <p>The number of rows, the share of point, line and polygon tags, how often a recent tag is used
+ * again, the number of sites and the share of bad rows can all be set. The grid of every site grows
+ * with the square root of the number of rows, so that large files are as dense as small ones. The
+ * same seed always gives the same files, and after writing, the generator knows how many rows of each
+ * kind it wrote and the longitudes and latitudes they all lie within, for checking a conversion.
+ *
+ * <pre>
+ * SyntheticSite &lt;rows&gt; [sites] [output directory]
+ * </pre>
+ */
+public class SyntheticSite {
+
+    private static final double LATITUDE = 42.2917;
+    private static final double LONGITUDE = -85.5872;
+    private static final double SITE_SPACING = 0.05; //degrees between the datums of neighbouring sites
+    private static final int RECENT_TAGS = 1024; //tags remembered for repeating
+
+    private static final String[] DESCRIPTIONS = {
+            "projectile point", "ceramic sherd", "lithic debitage", "fire cracked rock", "bone fragment",
+            "charcoal sample", "shell bead", "post mold", "hearth", "storage pit", "midden", "wall trench"
+    };
+    private static final String[] MALFORMED_TAGS = { "N5", "NE", "??", "N1-E1", "X1Y1", "N1E1E1" };
+
+    private long rows = 1000;
+    private int sites = 1;
+    private double lineShare = 0.2;
+    private double polygonShare = 0.1;
+    private double repeatRate = 0.1;
+    private double malformedRate = 0;
+    private long seed = 1;
+
+    //what the last write produced
+    private long points;
+    private long lines;
+    private long polygons;
+    private long malformedTags;
+    private long missingColumns;
+    private Envelope extent;
+    private LocalProjection[] datums;
+
+    /**
+     * @param rows of the tag file, not counting the header
+     */
+    public void setRows(long rows) {
+        if (rows < 0) {
+            throw new IllegalArgumentException("Negative row count " + rows);
+        }
+        this.rows = rows;
+    }
+
+    /**
+     * @param sites number of datums; with more than one, every tag row names its site in a fourth column
+     */
+    public void setSites(int sites) {
+        if (sites < 1) {
+            throw new IllegalArgumentException("Need at least one site, not " + sites);
+        }
+        this.sites = sites;
+    }
+
+    /**
+     * Set the share of well formed tags that are lines and polygons; the rest are points
+     * @param lineShare from 0 to 1
+     * @param polygonShare from 0 to 1
+     */
+    public void setMix(double lineShare, double polygonShare) {
+        if (lineShare < 0 || polygonShare < 0 || lineShare + polygonShare > 1) {
+            throw new IllegalArgumentException("Invalid mix of " + lineShare + " lines and " + polygonShare + " polygons");
+        }
+        this.lineShare = lineShare;
+        this.polygonShare = polygonShare;
+    }
+
+    /**
+     * @param repeatRate share of well formed rows which reuse one of the last tags written
+     */
+    public void setRepeatRate(double repeatRate) {
+        this.repeatRate = share(repeatRate);
+    }
+
+    /**
+     * @param malformedRate share of rows with a tag which cannot be parsed or with missing columns
+     */
+    public void setMalformedRate(double malformedRate) {
+        this.malformedRate = share(malformedRate);
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    private static double share(double value) {
+        if (value < 0 || value > 1) {
+            throw new IllegalArgumentException("Expected a share from 0 to 1, not " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Write a datum file and a tag file, replacing any existing files
+     * @param datumFile
+     * @param tagFile
+     * @throws IOException
+     */
+    public void write(File datumFile, File tagFile) throws IOException {
+        Random random = new Random(seed);
+        points = lines = polygons = malformedTags = missingColumns = 0;
+        extent = new Envelope();
+
+        //every site's grid is a square around its datum, sized so the average cell holds a few rows
+        long side = Math.max(10, (long) Math.ceil(Math.sqrt((double) rows / sites)));
+        long reach = side + 3; //the far end of a range tag at the edge of the grid
+        datums = new LocalProjection[sites];
+        Writer out = open(datumFile);
+        try {
+            out.write("latitude,longitude,label\n");
+            for (int s = 0; s < sites; s++) {
+                double latitude = LATITUDE + SITE_SPACING * (s / 10);
+                double longitude = LONGITUDE + SITE_SPACING * (s % 10);
+                datums[s] = new LocalProjection(longitude, latitude);
+                extent.expandToInclude(datums[s].toCoordinate(-reach, -reach));
+                extent.expandToInclude(datums[s].toCoordinate(reach, reach));
+                extent.expandToInclude(datums[s].toCoordinate(-reach, reach));
+                extent.expandToInclude(datums[s].toCoordinate(reach, -reach));
+                out.write(latitude + "," + longitude + "," + site(s) + "\n");
+            }
+        } finally {
+            out.close();
+        }
+
+        String[] recentTags = new String[RECENT_TAGS];
+        LocationTagParser.Kind[] recentKinds = new LocationTagParser.Kind[RECENT_TAGS];
+        int[] recentSites = new int[RECENT_TAGS];
+        int recent = 0; //tags remembered so far
+        int next = 0; //where the next new tag is remembered
+        StringBuilder row = new StringBuilder();
+        out = open(tagFile);
+        try {
+            out.write(sites > 1 ? "id,tag,description,site\n" : "id,tag,description\n");
+            for (long id = 1; id <= rows; id++) {
+                row.setLength(0);
+                row.append(id).append(',');
+                if (random.nextDouble() < malformedRate) {
+                    if (random.nextBoolean()) {
+                        row.append(MALFORMED_TAGS[random.nextInt(MALFORMED_TAGS.length)]).append(',');
+                        row.append(DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)]);
+                        if (sites > 1) {
+                            row.append(',').append(site(random.nextInt(sites)));
+                        }
+                        malformedTags++;
+                    } else {
+                        row.append("N1E1"); //no description
+                        missingColumns++;
+                    }
+                    out.append(row).append('\n');
+                    continue;
+                }
+
+                String tag;
+                LocationTagParser.Kind kind;
+                int site;
+                if (recent > 0 && random.nextDouble() < repeatRate) {
+                    int i = random.nextInt(recent);
+                    tag = recentTags[i];
+                    kind = recentKinds[i];
+                    site = recentSites[i];
+                } else {
+                    double draw = random.nextDouble();
+                    kind = draw < polygonShare ? LocationTagParser.Kind.POLYGON
+                            : draw < polygonShare + lineShare ? LocationTagParser.Kind.LINE : LocationTagParser.Kind.POINT;
+                    site = random.nextInt(sites);
+                    tag = tag(random, kind, side);
+                    recentTags[next] = tag;
+                    recentKinds[next] = kind;
+                    recentSites[next] = site;
+                    next = (next + 1) % RECENT_TAGS;
+                    recent = Math.min(recent + 1, RECENT_TAGS);
+                }
+                switch (kind) {
+                case POINT:
+                    points++;
+                    break;
+                case LINE:
+                    lines++;
+                    break;
+                default:
+                    polygons++;
+                }
+                row.append(tag).append(',').append(DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)]);
+                if (sites > 1) {
+                    row.append(',').append(site(site));
+                }
+                out.append(row).append('\n');
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    //a tag starting within side metres of the datum, with any range ending up to three metres further
+    //out, written in one of the forms field crews use
+    private static String tag(Random random, LocationTagParser.Kind kind, long side) {
+        long north = (long) (random.nextDouble() * 2 * side) - side;
+        long east = (long) (random.nextDouble() * 2 * side) - side;
+        String northEnd = kind == LocationTagParser.Kind.POINT ? "" : "-" + (Math.abs(north) + 1 + random.nextInt(3));
+        String eastEnd = kind == LocationTagParser.Kind.POLYGON ? "-" + (Math.abs(east) + 1 + random.nextInt(3)) : "";
+        String northPart = (north < 0 ? "S" : "N") + Math.abs(north) + northEnd;
+        String eastPart = (east < 0 ? "W" : "E") + Math.abs(east) + eastEnd;
+        switch (random.nextInt(3)) {
+        case 0:
+            return northPart + eastPart;
+        case 1:
+            return northPart + " " + eastPart;
+        default:
+            //direction after the number, as in 2-4N 4W
+            return northPart.substring(1) + northPart.charAt(0) + " " + eastPart.substring(1) + eastPart.charAt(0);
+        }
+    }
+
+    private static Writer open(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * @param index from 0
+     * @return the label of a site in the datum file
+     */
+    public static String site(int index) {
+        return "site" + (index + 1);
+    }
+
+    /**
+     * @return point rows of the last tag file written, not counting the datums
+     */
+    public long getPoints() {
+        return points;
+    }
+
+    /**
+     * @return line rows of the last tag file written
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * @return polygon rows of the last tag file written
+     */
+    public long getPolygons() {
+        return polygons;
+    }
+
+    /**
+     * @return rows of the last tag file written whose tag cannot be parsed
+     */
+    public long getMalformedTags() {
+        return malformedTags;
+    }
+
+    /**
+     * @return rows of the last tag file written without a description
+     */
+    public long getMissingColumns() {
+        return missingColumns;
+    }
+
+    /**
+     * @return longitudes (x) and latitudes (y) every feature of the last files written lies within
+     */
+    public Envelope getExtent() {
+        return extent;
+    }
+
+    /**
+     * @return the projections around the datums of the last files written, in the order of the datum file
+     */
+    public LocalProjection[] getDatums() {
+        return datums.clone();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 3) {
+            System.out.println("Usage: SyntheticSite <rows> [sites] [output directory]");
+            System.exit(2);
+        }
+        SyntheticSite generator = new SyntheticSite();
+        generator.setRows(Long.parseLong(args[0]));
+        if (args.length > 1) {
+            generator.setSites(Integer.parseInt(args[1]));
+        }
+        File dir = new File(args.length > 2 ? args[2] : ".");
+        File datumFile = new File(dir, "synthetic_datum.csv");
+        File tagFile = new File(dir, "synthetic_tags.csv");
+        generator.write(datumFile, tagFile);
+        System.out.println("Wrote " + datumFile + " and " + tagFile + ": " + generator.getPoints() + " points, "
+                + generator.getLines() + " lines, " + generator.getPolygons() + " polygons");
+    }
+}
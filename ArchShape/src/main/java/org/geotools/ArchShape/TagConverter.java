@@ -0,0 +1,145 @@
+package org.geotools.ArchShape;
+
+import java.io.IOException;
+
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Converts rows of the tag csv file into point, line or polygon features. Each converter has its own
+ * parser and feature builders, so one is needed per thread; the datum registry and feature types are
+ * shared.
+ *
+ * <p>Rows hold an identifier, a relational location tag and a description, optionally followed by the
+ * site whose datum the tag is relative to. Rows without a site use the last datum in the datum file.
+ * A row that cannot be converted either stops the conversion or, if the converter keeps going, is
+ * mapped to a {@link Reject} saying why.
+ */
+class TagConverter implements MappedCsvReader.RecordMapper<Object> {
+
+    static final int TAG_COLUMN = 1;
+    static final int DESCRIPTION_COLUMN = 2;
+    static final int SITE_COLUMN = 3;
+
+    private final DatumRegistry datums;
+    private final GeometryCache cache;
+    private final ConversionMetrics metrics;
+    private final boolean keepGoing;
+    private final boolean fingerprinting;
+    private final GeometryFactory geometryFactory;
+    private final LocationTagParser parser = new LocationTagParser();
+    private final SimpleFeatureBuilder coordFeatureBuilder;
+    private final SimpleFeatureBuilder lineFeatureBuilder;
+    private final SimpleFeatureBuilder polygonFeatureBuilder;
+
+    /**
+     * @param datums
+     * @param cache shared cache of tag geometries, or null to build every geometry
+     * @param metrics receives row counts, failures and stage times, or null
+     * @param keepGoing whether bad rows are mapped to rejects instead of stopping the conversion
+     * @param fingerprinting whether features carry the fingerprint of their row in their user data,
+     *        for {@link FingerprintManifest}
+     * @param geometryFactory
+     * @param coordType
+     * @param lineType
+     * @param polygonType
+     */
+    TagConverter(DatumRegistry datums, GeometryCache cache, ConversionMetrics metrics, boolean keepGoing,
+            boolean fingerprinting, GeometryFactory geometryFactory, SimpleFeatureType coordType, SimpleFeatureType lineType,
+            SimpleFeatureType polygonType) {
+        this.datums = datums;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.keepGoing = keepGoing;
+        this.fingerprinting = fingerprinting;
+        this.geometryFactory = geometryFactory;
+        this.coordFeatureBuilder = new SimpleFeatureBuilder(coordType);
+        this.lineFeatureBuilder = new SimpleFeatureBuilder(lineType);
+        this.polygonFeatureBuilder = new SimpleFeatureBuilder(polygonType);
+    }
+
+    /**
+     * @return the feature of the row, or a {@link Reject} if the converter keeps going after bad rows
+     */
+    @Override
+    public Object map(String[] tokens, long endOffset) throws IOException {
+        long start = System.nanoTime();
+        if (metrics != null) {
+            metrics.rowRead();
+        }
+        if (tokens.length <= DESCRIPTION_COLUMN) {
+            return reject(ConversionMetrics.Failure.MISSING_COLUMN,
+                    "Expected identifier, location tag and description", tokens, endOffset, null);
+        }
+        String excCoord = tokens[TAG_COLUMN];
+        String excObj = tokens[DESCRIPTION_COLUMN];
+        String site = tokens.length > SITE_COLUMN ? tokens[SITE_COLUMN] : null;
+
+        LocalProjection siteDatum;
+        try {
+            siteDatum = datums.resolve(site);
+        } catch (IllegalArgumentException e) {
+            return reject(ConversionMetrics.Failure.UNKNOWN_SITE, e.getMessage(), tokens, endOffset, e);
+        }
+        try {
+            parser.parse(excCoord);
+        } catch (IllegalArgumentException e) {
+            return reject(ConversionMetrics.Failure.MALFORMED_TAG, e.getMessage(), tokens, endOffset, e);
+        }
+        long parsed = System.nanoTime();
+
+        Geometry geometry;
+        SimpleFeature feature;
+        long built;
+        try {
+            geometry = CSV2Shape.buildGeometry(geometryFactory, siteDatum, parser, cache);
+            built = System.nanoTime();
+            feature = CSV2Shape.addFeature(parser.getKind(), coordFeatureBuilder, lineFeatureBuilder,
+                    polygonFeatureBuilder, geometry, excCoord, excObj);
+        } catch (RuntimeException e) {
+            return reject(ConversionMetrics.Failure.CONVERSION_ERROR, e.toString(), tokens, endOffset, e);
+        }
+        if (fingerprinting) {
+            feature.getUserData().put(FingerprintManifest.ROW, FingerprintManifest.fingerprint(tokens));
+        }
+        long end = System.nanoTime();
+
+        if (metrics != null) {
+            metrics.addStageNanos(ConversionMetrics.Stage.PARSE, parsed - start);
+            metrics.addStageNanos(ConversionMetrics.Stage.GEOMETRY, built - parsed);
+            metrics.addStageNanos(ConversionMetrics.Stage.FEATURE, end - built);
+            metrics.addMapNanos(end - start);
+        }
+        return feature;
+    }
+
+    private Reject reject(ConversionMetrics.Failure failure, String message, String[] tokens, long endOffset,
+            Exception cause) throws IOException {
+        if (metrics != null) {
+            metrics.failure(failure);
+        }
+        if (!keepGoing) {
+            throw new IOException(message + " at offset " + endOffset + " of the tag file: " + String.join(",", tokens),
+                    cause);
+        }
+        return new Reject(tokens, failure, message);
+    }
+
+    /**
+     * A row that could not be converted, and why
+     */
+    static final class Reject {
+        final String[] fields;
+        final ConversionMetrics.Failure failure;
+        final String message;
+
+        Reject(String[] fields, ConversionMetrics.Failure failure, String message) {
+            this.fields = fields;
+            this.failure = failure;
+            this.message = message;
+        }
+    }
+}
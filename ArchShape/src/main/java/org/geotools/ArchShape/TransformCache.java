@@ -0,0 +1,85 @@
+package org.geotools.ArchShape;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.operation.transform.IdentityTransform;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.ProjectedCRS;
+import org.opengis.referencing.operation.MathTransform;
+
+/**
+ * Decodes coordinate reference systems and finds the transforms between them once per code and once
+ * per pair, for every job in the process. Looking either up in the EPSG database takes far longer
+ * than converting a site, and both are immutable, so they are shared between jobs and threads.
+ *
+ * <p>WGS 84 and its UTM zones come from {@link EmbeddedCrs}, and the transform from WGS 84 to a
+ * projection of it is taken from the projection itself, so the usual output CRSs are found without
+ * the EPSG database or a search of the referencing factories.
+ */
+final class TransformCache {
+
+    static final String UTM = "utm"; //stands for the UTM zone of the site's datum
+
+    private static final Map<String, CoordinateReferenceSystem> CRSS = new ConcurrentHashMap<String, CoordinateReferenceSystem>();
+    private static final Map<List<CoordinateReferenceSystem>, MathTransform> TRANSFORMS =
+            new ConcurrentHashMap<List<CoordinateReferenceSystem>, MathTransform>();
+
+    private TransformCache() {
+    }
+
+    /**
+     * @param code such as EPSG:32615; axes are always in x, y (longitude, latitude) order
+     * @return
+     * @throws FactoryException if the code is unknown
+     */
+    static CoordinateReferenceSystem decode(String code) throws FactoryException {
+        CoordinateReferenceSystem crs = CRSS.get(code);
+        if (crs == null) {
+            crs = EmbeddedCrs.get(code);
+            if (crs == null) {
+                crs = CRS.decode(code, true);
+            }
+            CRSS.putIfAbsent(code, crs);
+        }
+        return crs;
+    }
+
+    /**
+     * @param source
+     * @param target
+     * @return the transform from source to target coordinates, allowing for a difference of datum
+     * @throws FactoryException if there is no such transform
+     */
+    static MathTransform get(CoordinateReferenceSystem source, CoordinateReferenceSystem target) throws FactoryException {
+        List<CoordinateReferenceSystem> key = Arrays.asList(source, target);
+        MathTransform transform = TRANSFORMS.get(key);
+        if (transform == null) {
+            if (CRS.equalsIgnoreMetadata(source, target)) {
+                transform = IdentityTransform.create(source.getCoordinateSystem().getDimension());
+            } else if (target instanceof ProjectedCRS
+                    && CRS.equalsIgnoreMetadata(source, ((ProjectedCRS) target).getBaseCRS())) {
+                transform = ((ProjectedCRS) target).getConversionFromBase().getMathTransform();
+            } else {
+                transform = CRS.findMathTransform(source, target, true);
+            }
+            TRANSFORMS.putIfAbsent(key, transform);
+        }
+        return transform;
+    }
+
+    /**
+     * @param longitude in degrees
+     * @param latitude in degrees
+     * @return the EPSG code of the WGS 84 UTM zone the point is in
+     */
+    static String utmCode(double longitude, double latitude) {
+        int zone = (int) Math.floor((longitude + 180) / 6) + 1;
+        zone = Math.max(1, Math.min(60, zone));
+        return "EPSG:" + ((latitude >= 0 ? 32600 : 32700) + zone);
+    }
+}
@@ -0,0 +1,326 @@
+package org.geotools.ArchShape;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long running headless entry point which watches directories for {@code <site>_datum.csv} and
+ * {@code <site>_tags.csv} (or {@code <site>_notes.txt}) pairs and converts each pair as soon as both
+ * files are complete, writing the shapefiles to the same directory.
+ *
+ * <p>A file counts as complete once its size and modification time have not changed for the quiet
+ * period, so files still being copied in are left alone. A pair that changes while it is being
+ * converted is converted again afterwards. Pairs already in the directories at start up are converted
+ * unless their shapefiles are newer than both files.
+ *
+ * <p>Each conversion runs on a virtual thread where the Java runtime has them, and on a pooled thread
+ * otherwise; at most maxConcurrent conversions run at once. The options are those of
+ * {@link BatchConverter}.
+ *
+ * <pre>
+ * WatchDaemon [--incremental] [--fault-tolerant] [--hilbert] [--footprints | --footprints-by-type]
+ *             [--crs=&lt;code | utm&gt;] [--max-concurrent n] [--quiet-millis n] &lt;directory&gt;...
+ * </pre>
+ */
+public class WatchDaemon {
+
+    static final long DEFAULT_QUIET_MILLIS = 2000;
+    private static final long POLL_MILLIS = 250;
+    private static final long SHUTDOWN_SECONDS = 60; //wait for running conversions when the JVM exits
+
+    private final WatchService watcher;
+    private final Map<WatchKey, Path> dirs = new HashMap<WatchKey, Path>();
+    private final Map<Path, Pending> pending = new HashMap<Path, Pending>(); //by datum file
+    private final Set<Path> running = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final long quietMillis;
+    private final CountDownLatch stopped = new CountDownLatch(1); //run has returned
+
+    private List<String> options = new ArrayList<String>();
+
+    /**
+     * @param maxConcurrent number of conversions that may run at once
+     * @param quietMillis time a file must go unchanged before it is converted
+     * @throws IOException
+     */
+    public WatchDaemon(int maxConcurrent, long quietMillis) throws IOException {
+        this.watcher = FileSystems.getDefault().newWatchService();
+        this.executor = newExecutor();
+        this.permits = new Semaphore(maxConcurrent);
+        this.quietMillis = quietMillis;
+    }
+
+    /**
+     * @param options command line options of {@link BatchConverter} applied to every conversion
+     */
+    public void setOptions(List<String> options) {
+        this.options = new ArrayList<String>(options);
+    }
+
+    /**
+     * @return an executor starting a virtual thread per task, or a cached pool before Java 21
+     */
+    static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "watch conversion");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Start watching a directory, queueing the pairs already in it
+     * @param dir
+     * @throws IOException
+     */
+    public synchronized void watch(File dir) throws IOException {
+        Path path = dir.toPath().toAbsolutePath();
+        dirs.put(path.register(watcher, ENTRY_CREATE, ENTRY_MODIFY), path);
+        for (ConversionJob job : BatchConverter.scanDirectory(dir)) {
+            try {
+                if (job.isUpToDate()) {
+                    continue;
+                }
+            } catch (Exception e) {
+                //convert it and report the problem there
+            }
+            seen(job.getDatumFile().toPath().toAbsolutePath());
+        }
+    }
+
+    /**
+     * Convert pairs as they arrive until the watch service is closed or the thread interrupted
+     * @throws InterruptedException
+     */
+    public void run() throws InterruptedException {
+        try {
+            while (true) {
+                WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                synchronized (this) {
+                    if (key != null) {
+                        handle(key);
+                    }
+                    submitSettled();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            //stopped
+        } finally {
+            try {
+                executor.shutdown();
+                executor.awaitTermination(1, TimeUnit.HOURS);
+            } finally {
+                stopped.countDown();
+            }
+        }
+    }
+
+    /**
+     * Stop watching; conversions already running are finished
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        watcher.close();
+    }
+
+    /**
+     * Stop watching and wait for the conversions already running to finish and for run to return
+     * @param timeout
+     * @param unit
+     * @return whether everything finished within the timeout
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public boolean stop(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        close();
+        synchronized (this) {
+            executor.shutdown(); //run may not have seen the watch service close yet
+        }
+        return executor.awaitTermination(timeout, unit)
+                && stopped.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    private void handle(WatchKey key) {
+        Path dir = dirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (dir == null) {
+                continue;
+            }
+            if (event.kind() == OVERFLOW) {
+                //events were lost, so look at every pair again
+                for (ConversionJob job : BatchConverter.scanDirectory(dir.toFile())) {
+                    seen(job.getDatumFile().toPath().toAbsolutePath());
+                }
+                continue;
+            }
+            String name = ((Path) event.context()).toString();
+            if (name.endsWith(BatchConverter.DATUM_SUFFIX)) {
+                seen(dir.resolve(name));
+            } else if (name.endsWith(BatchConverter.TAGS_SUFFIX)) {
+                String site = name.substring(0, name.length() - BatchConverter.TAGS_SUFFIX.length());
+                seen(dir.resolve(site + BatchConverter.DATUM_SUFFIX));
+            } else if (name.endsWith(BatchConverter.NOTES_SUFFIX)) {
+                String site = name.substring(0, name.length() - BatchConverter.NOTES_SUFFIX.length());
+                seen(dir.resolve(site + BatchConverter.DATUM_SUFFIX));
+            }
+        }
+        if (!key.reset()) {
+            dirs.remove(key);
+            System.out.println("No longer watching " + dir);
+        }
+    }
+
+    private void seen(Path datum) {
+        if (!pending.containsKey(datum)) {
+            pending.put(datum, new Pending(System.currentTimeMillis()));
+        }
+    }
+
+    //start the conversion of every pending pair whose files have both settled
+    private void submitSettled() {
+        if (executor.isShutdown()) {
+            return; //stopping
+        }
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<Path, Pending>> entries = pending.entrySet().iterator(); entries.hasNext();) {
+            Map.Entry<Path, Pending> entry = entries.next();
+            Path datum = entry.getKey();
+            Pending state = entry.getValue();
+            if (running.contains(datum)) {
+                continue;
+            }
+
+            File datumFile = datum.toFile();
+            File tagFile = BatchConverter.tagFileFor(datumFile);
+            if (!datumFile.isFile() || !tagFile.isFile()) {
+                continue; //the other file of the pair has not arrived yet
+            }
+
+            String stamp = datumFile.length() + ":" + datumFile.lastModified() + ","
+                    + tagFile.length() + ":" + tagFile.lastModified();
+            if (!stamp.equals(state.stamp)) {
+                state.stamp = stamp;
+                state.settledSince = now;
+                continue;
+            }
+            if (now - state.settledSince < quietMillis) {
+                continue;
+            }
+
+            entries.remove();
+            ConversionJob job = new ConversionJob(datumFile, tagFile, datumFile.getParentFile());
+            BatchConverter.configure(job, options);
+            running.add(datum);
+            executor.execute(() -> convert(datum, job, state.firstSeen));
+        }
+    }
+
+    private void convert(Path datum, ConversionJob job, long firstSeen) {
+        try {
+            permits.acquire();
+            try {
+                long start = System.currentTimeMillis();
+                job.call();
+                long end = System.currentTimeMillis();
+                System.out.println("Converted " + job + " in " + (end - start) + " ms, " + (end - firstSeen)
+                        + " ms after it arrived" + (job.getUpdateSummary() == null ? "" : ", " + job.getUpdateSummary()));
+            } finally {
+                permits.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.out.println("Failed " + job + ": " + e + ", report in " + job.getMetricsFile());
+        } finally {
+            running.remove(datum);
+        }
+    }
+
+    /**
+     * A pair waiting for its files to settle
+     */
+    private static final class Pending {
+        final long firstSeen;
+        String stamp; //sizes and modification times when last looked at
+        long settledSince;
+
+        Pending(long firstSeen) {
+            this.firstSeen = firstSeen;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<String>();
+        int maxConcurrent = Runtime.getRuntime().availableProcessors();
+        long quietMillis = DEFAULT_QUIET_MILLIS;
+        List<File> dirs = new ArrayList<File>();
+        for (int i = 0; i < args.length; i++) {
+            if (BatchConverter.isOption(args[i])) {
+                options.add(args[i]);
+            } else if (args[i].equals("--max-concurrent") && i + 1 < args.length) {
+                maxConcurrent = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--quiet-millis") && i + 1 < args.length) {
+                quietMillis = Long.parseLong(args[++i]);
+            } else {
+                dirs.add(new File(args[i]));
+            }
+        }
+        if (dirs.isEmpty()) {
+            System.out.println("Usage: WatchDaemon " + BatchConverter.OPTIONS_USAGE
+                    + " [--max-concurrent n] [--quiet-millis n] <directory>...");
+            System.exit(2);
+        }
+
+        final WatchDaemon daemon = new WatchDaemon(Math.max(1, maxConcurrent), quietMillis);
+        daemon.setOptions(options);
+        for (File dir : dirs) {
+            if (!dir.isDirectory()) {
+                System.out.println("Not a directory: " + dir);
+                System.exit(2);
+            }
+            daemon.watch(dir);
+            System.out.println("Watching " + dir);
+        }
+        //the JVM does not wait for the main thread, so the hook waits for the conversions and run itself
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                if (!daemon.stop(SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                    System.out.println("Conversions still running after " + SHUTDOWN_SECONDS + " s were cut off");
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        daemon.run();
+    }
+}
@@ -18,9 +18,12 @@
 
 package org.geotools.ArchShape.quickstart;
 
+import java.awt.Color;
 import java.io.File;
+import java.util.Arrays;
 import org.geotools.data.FileDataStore;
 import org.geotools.data.FileDataStoreFinder;
+import org.geotools.data.Query;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.map.FeatureLayer;
 import org.geotools.map.Layer;
@@ -34,14 +37,22 @@ import org.geotools.swing.data.JFileDataStoreChooser;
  * Prompts the user for a shapefile and displays the contents on the screen in a map frame.
  *
  * <p>This is the GeoTools Quickstart application used in documentationa and tutorials. *
+ *
+ * <p>Shapefiles with more than {@link #TILED_FEATURES} features, or any shapefile when run with
+ * --tiles, are drawn from a {@link TilePyramid} built next to the shapefile instead of feature by
+ * feature, so that panning and zooming stay quick on large sites.
  */
 public class Quickstart {
 
+    static final int TILED_FEATURES = 100000;
+
     /**
      * GeoTools Quickstart demo application. Prompts the user for a shapefile and displays its
      * contents on the screen in a map frame
      */
     public static void main(String[] args) throws Exception {
+        boolean tiles = Arrays.asList(args).contains("--tiles");
+
         // display a data store file chooser dialog for shapefiles
         File file = JFileDataStoreChooser.showOpenFile("shp", null);
         if (file == null) {
@@ -55,8 +66,15 @@ public class Quickstart {
         MapContent map = new MapContent();
         map.setTitle("Quickstart");
 
-        Style style = SLD.createSimpleStyle(featureSource.getSchema());
-        Layer layer = new FeatureLayer(featureSource, style);
+        Layer layer;
+        if (tiles || featureSource.getCount(Query.ALL) > TILED_FEATURES) {
+            TilePyramid pyramid = TilePyramid.open(file, featureSource);
+            layer = new TileLayer(pyramid, new TileCache(pyramid, TileCache.DEFAULT_MAX_TILES),
+                    featureSource.getBounds(), featureSource.getSchema().getCoordinateReferenceSystem(), Color.BLUE);
+        } else {
+            Style style = SLD.createSimpleStyle(featureSource.getSchema());
+            layer = new FeatureLayer(featureSource, style);
+        }
         map.addLayer(layer);
 
         // Now display the map
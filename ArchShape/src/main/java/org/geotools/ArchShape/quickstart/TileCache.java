@@ -0,0 +1,101 @@
+package org.geotools.ArchShape.quickstart;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+
+/**
+ * Keeps the most recently drawn tiles of a {@link TilePyramid} in memory, reading the others from
+ * disk as they are needed. The least recently used tile is dropped when the cache is full.
+ */
+final class TileCache {
+
+    static final int DEFAULT_MAX_TILES = 512;
+
+    private final TilePyramid pyramid;
+    private final WKBReader wkbReader;
+    private final Map<Long, List<Geometry>> tiles;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param pyramid
+     * @param maxTiles number of tiles kept in memory
+     */
+    TileCache(TilePyramid pyramid, final int maxTiles) {
+        this.pyramid = pyramid;
+        this.wkbReader = new WKBReader(new GeometryFactory());
+        this.tiles = new LinkedHashMap<Long, List<Geometry>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, List<Geometry>> eldest) {
+                return size() > maxTiles;
+            }
+        };
+    }
+
+    /**
+     * @param z
+     * @param x
+     * @param y
+     * @return the geometries of the tile, empty if it holds none
+     * @throws IOException
+     */
+    synchronized List<Geometry> get(int z, int x, int y) throws IOException {
+        Long key = ((long) z << 56) | ((long) x << 28) | y;
+        List<Geometry> tile = tiles.get(key);
+        if (tile != null) {
+            hits++;
+            return tile;
+        }
+        misses++;
+        tile = read(pyramid.tileFile(z, x, y));
+        tiles.put(key, tile);
+        return tile;
+    }
+
+    private List<Geometry> read(File file) throws IOException {
+        if (!file.isFile()) {
+            return Collections.emptyList();
+        }
+        List<Geometry> geometries = new ArrayList<Geometry>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        try {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] wkb = new byte[length];
+                in.readFully(wkb);
+                geometries.add(wkbReader.read(wkb));
+            }
+        } catch (ParseException e) {
+            throw new IOException("Corrupt tile " + file, e);
+        } finally {
+            in.close();
+        }
+        return geometries;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "tile cache: " + tiles.size() + " tiles, " + hits + " hits, " + misses + " misses";
+    }
+}
@@ -0,0 +1,90 @@
+package org.geotools.ArchShape.quickstart;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.io.IOException;
+
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.DirectLayer;
+import org.geotools.map.MapContent;
+import org.geotools.map.MapViewport;
+import org.locationtech.jts.awt.ShapeWriter;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Draws a shapefile from its {@link TilePyramid}, using the level whose pixels match the screen's, so
+ * that only the tiles in view are read and each holds about as much as can be seen at that scale.
+ */
+final class TileLayer extends DirectLayer {
+
+    private final TilePyramid pyramid;
+    private final TileCache cache;
+    private final ReferencedEnvelope bounds;
+    private final Color color;
+    private final Color fill;
+
+    /**
+     * @param pyramid
+     * @param cache
+     * @param bounds of the shapefile's features
+     * @param crs of the shapefile
+     * @param color
+     */
+    TileLayer(TilePyramid pyramid, TileCache cache, Envelope bounds, CoordinateReferenceSystem crs, Color color) {
+        this.pyramid = pyramid;
+        this.cache = cache;
+        this.bounds = new ReferencedEnvelope(bounds, crs);
+        this.color = color;
+        this.fill = new Color(color.getRed(), color.getGreen(), color.getBlue(), 64);
+    }
+
+    @Override
+    public ReferencedEnvelope getBounds() {
+        return bounds;
+    }
+
+    @Override
+    public void draw(Graphics2D graphics, MapContent map, MapViewport viewport) {
+        ReferencedEnvelope view = viewport.getBounds();
+        Rectangle screen = viewport.getScreenArea();
+        final AffineTransform worldToScreen = viewport.getWorldToScreen();
+        if (view == null || view.isEmpty() || screen == null || screen.width == 0 || worldToScreen == null) {
+            return;
+        }
+
+        int z = pyramid.zoomFor(view.getWidth() / screen.width);
+        int tiles = 1 << z;
+        int x0 = Math.max(0, pyramid.column(view.getMinX(), z));
+        int x1 = Math.min(tiles - 1, pyramid.column(view.getMaxX(), z));
+        int y0 = Math.max(0, pyramid.row(view.getMinY(), z));
+        int y1 = Math.min(tiles - 1, pyramid.row(view.getMaxY(), z));
+
+        ShapeWriter shapes = new ShapeWriter((src, dest) -> worldToScreen.transform(new Point2D.Double(src.x, src.y), dest));
+        try {
+            for (int x = x0; x <= x1; x++) {
+                for (int y = y0; y <= y1; y++) {
+                    for (Geometry geometry : cache.get(z, x, y)) {
+                        Shape shape = shapes.toShape(geometry);
+                        if (geometry.getDimension() == 1) {
+                            graphics.setColor(color);
+                            graphics.draw(shape);
+                        } else {
+                            graphics.setColor(geometry.getDimension() == 2 ? fill : color);
+                            graphics.fill(shape);
+                            graphics.setColor(color);
+                            graphics.draw(shape);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Cannot draw tiles of level " + z + ": " + e);
+        }
+    }
+}
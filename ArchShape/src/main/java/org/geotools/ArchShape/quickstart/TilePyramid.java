@@ -0,0 +1,323 @@
+package org.geotools.ArchShape.quickstart;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKBWriter;
+import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * A pyramid of square tiles covering a shapefile, stored on disk next to it in a
+ * {@code <shapefile>.tiles} directory as {@code z/x/y.wkb}. Level z is 2^z tiles across, each drawn
+ * {@link #TILE_SIZE} pixels across, and the deepest level holds the geometries as they are.
+ *
+ * <p>On the shallower levels each geometry is simplified to the pixel size of the level, and
+ * geometries no bigger than a pixel are drawn as a single point, of which only one per pixel is kept
+ * on the shallowest levels. A tile therefore stays cheap to draw however many features it covers.
+ * Geometries crossing tile edges are stored in every tile they touch.
+ */
+final class TilePyramid {
+
+    static final int TILE_SIZE = 256; //pixels across a tile
+    static final int FEATURES_PER_TILE = 5000; //features per tile aimed for on the deepest level
+    static final int MAX_ZOOM = 12;
+    static final int AGGREGATE_MAX_ZOOM = 5; //deepest level with one point per pixel, about 8 MB of pixel bits
+
+    private static final String METADATA = "pyramid.properties";
+    private static final long FLUSH_BYTES = 16 << 20;
+
+    private final File dir;
+    private final double minX;
+    private final double minY;
+    private final double size; //width and height of the area covered by tile 0/0/0
+    private final int maxZoom;
+
+    private TilePyramid(File dir, double minX, double minY, double size, int maxZoom) {
+        this.dir = dir;
+        this.minX = minX;
+        this.minY = minY;
+        this.size = size;
+        this.maxZoom = maxZoom;
+    }
+
+    /**
+     * @param shapefile
+     * @return the directory the tiles of the shapefile are kept in
+     */
+    static File dirFor(File shapefile) {
+        return new File(shapefile.getAbsoluteFile().getParentFile(), shapefile.getName() + ".tiles");
+    }
+
+    /**
+     * Open the tiles of a shapefile, building them first if there are none or the shapefile has
+     * changed since they were built
+     * @param shapefile
+     * @param source features of the shapefile
+     * @return
+     * @throws IOException
+     */
+    static TilePyramid open(File shapefile, SimpleFeatureSource source) throws IOException {
+        File dir = dirFor(shapefile);
+        TilePyramid pyramid = read(dir, shapefile);
+        if (pyramid == null) {
+            System.out.println("Building map tiles in " + dir);
+            long start = System.currentTimeMillis();
+            pyramid = build(shapefile, source, dir);
+            System.out.println("Built " + (pyramid.maxZoom + 1) + " levels of map tiles in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+        return pyramid;
+    }
+
+    //the pyramid in dir, or null if it is missing, incomplete or older than the shapefile
+    private static TilePyramid read(File dir, File shapefile) throws IOException {
+        File metadata = new File(dir, METADATA);
+        if (!metadata.isFile()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(metadata);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        try {
+            if (!describe(shapefile).equals(properties.getProperty("source"))) {
+                return null;
+            }
+            return new TilePyramid(dir, Double.parseDouble(properties.getProperty("minX")),
+                    Double.parseDouble(properties.getProperty("minY")),
+                    Double.parseDouble(properties.getProperty("size")),
+                    Integer.parseInt(properties.getProperty("maxZoom")));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String describe(File shapefile) {
+        return shapefile.length() + ":" + shapefile.lastModified();
+    }
+
+    /**
+     * Build the tiles of a shapefile in one pass over its features
+     * @param shapefile
+     * @param source
+     * @param dir
+     * @return
+     * @throws IOException
+     */
+    static TilePyramid build(File shapefile, SimpleFeatureSource source, File dir) throws IOException {
+        delete(dir);
+        if (!dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+
+        //square the bounds so that tiles are square, padding a single point to a small area
+        Envelope bounds = source.getBounds();
+        double size = Math.max(bounds.getWidth(), bounds.getHeight());
+        size = size > 0 ? size * 1.001 : 0.001;
+        double minX = bounds.getMinX() + (bounds.getWidth() - size) / 2;
+        double minY = bounds.getMinY() + (bounds.getHeight() - size) / 2;
+
+        int count = source.getCount(Query.ALL);
+        if (count < 0) {
+            count = source.getFeatures().size();
+        }
+        int maxZoom = 0;
+        while (maxZoom < MAX_ZOOM && count > FEATURES_PER_TILE * (1L << (2 * maxZoom))) {
+            maxZoom++;
+        }
+        TilePyramid pyramid = new TilePyramid(dir, minX, minY, size, maxZoom);
+
+        BitSet[] occupied = new BitSet[Math.min(maxZoom, AGGREGATE_MAX_ZOOM + 1)];
+        for (int z = 0; z < occupied.length; z++) {
+            occupied[z] = new BitSet();
+        }
+        TileWriter writer = pyramid.new TileWriter();
+        WKBWriter wkbWriter = new WKBWriter();
+
+        SimpleFeatureIterator features = source.getFeatures().features();
+        try {
+            while (features.hasNext()) {
+                SimpleFeature feature = features.next();
+                Object value = feature.getDefaultGeometry();
+                if (!(value instanceof Geometry) || ((Geometry) value).isEmpty()) {
+                    continue;
+                }
+                Geometry geometry = (Geometry) value;
+                Envelope envelope = geometry.getEnvelopeInternal();
+                byte[] full = wkbWriter.write(geometry);
+
+                for (int z = 0; z <= maxZoom; z++) {
+                    byte[] wkb = full;
+                    if (z < maxZoom) {
+                        double pixel = pyramid.pixelSize(z);
+                        if (envelope.getWidth() <= pixel && envelope.getHeight() <= pixel) {
+                            Coordinate centre = envelope.centre();
+                            if (z < occupied.length && !pyramid.claimPixel(occupied[z], z, centre)) {
+                                continue;
+                            }
+                            wkb = wkbWriter.write(geometry.getFactory().createPoint(centre));
+                        } else if (geometry.getDimension() > 0) {
+                            Geometry simplified = DouglasPeuckerSimplifier.simplify(geometry, pixel);
+                            wkb = simplified.isEmpty() ? wkbWriter.write(geometry.getFactory().createPoint(envelope.centre()))
+                                    : wkbWriter.write(simplified);
+                        }
+                    }
+                    int tiles = 1 << z;
+                    int x0 = pyramid.column(envelope.getMinX(), z);
+                    int x1 = pyramid.column(envelope.getMaxX(), z);
+                    int y0 = pyramid.row(envelope.getMinY(), z);
+                    int y1 = pyramid.row(envelope.getMaxY(), z);
+                    for (int x = Math.max(0, x0); x <= Math.min(tiles - 1, x1); x++) {
+                        for (int y = Math.max(0, y0); y <= Math.min(tiles - 1, y1); y++) {
+                            writer.add(z, x, y, wkb);
+                        }
+                    }
+                }
+            }
+        } finally {
+            features.close();
+        }
+        writer.flush();
+
+        //written last, so that an interrupted build is started again
+        Properties properties = new Properties();
+        properties.setProperty("source", describe(shapefile));
+        properties.setProperty("minX", Double.toString(minX));
+        properties.setProperty("minY", Double.toString(minY));
+        properties.setProperty("size", Double.toString(size));
+        properties.setProperty("maxZoom", Integer.toString(maxZoom));
+        OutputStream out = new FileOutputStream(new File(dir, METADATA));
+        try {
+            properties.store(out, "ArchShape map tiles of " + shapefile.getName());
+        } finally {
+            out.close();
+        }
+        return pyramid;
+    }
+
+    //mark the pixel at c as drawn; false if it already was
+    private boolean claimPixel(BitSet occupied, int z, Coordinate c) {
+        long across = (long) TILE_SIZE << z;
+        long px = Math.max(0, Math.min(across - 1, (long) ((c.x - minX) / pixelSize(z))));
+        long py = Math.max(0, Math.min(across - 1, (long) ((c.y - minY) / pixelSize(z))));
+        int bit = (int) (py * across + px);
+        if (occupied.get(bit)) {
+            return false;
+        }
+        occupied.set(bit);
+        return true;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    int getMaxZoom() {
+        return maxZoom;
+    }
+
+    /**
+     * @return the area covered by the pyramid
+     */
+    Envelope getBounds() {
+        return new Envelope(minX, minX + size, minY, minY + size);
+    }
+
+    /**
+     * @param z
+     * @return the width of a pixel of a tile on level z, in map units
+     */
+    double pixelSize(int z) {
+        return size / ((long) TILE_SIZE << z);
+    }
+
+    /**
+     * @param unitsPerPixel map units per screen pixel
+     * @return the shallowest level whose pixels are no bigger than the screen's
+     */
+    int zoomFor(double unitsPerPixel) {
+        int z = 0;
+        while (z < maxZoom && pixelSize(z) > unitsPerPixel) {
+            z++;
+        }
+        return z;
+    }
+
+    int column(double x, int z) {
+        return (int) Math.floor((x - minX) / size * (1 << z));
+    }
+
+    int row(double y, int z) {
+        return (int) Math.floor((y - minY) / size * (1 << z));
+    }
+
+    File tileFile(int z, int x, int y) {
+        return new File(dir, z + File.separator + x + File.separator + y + ".wkb");
+    }
+
+    /**
+     * Collects the tiles in memory and appends them to their files whenever too much is held
+     */
+    private final class TileWriter {
+        private final Map<Long, ByteArrayOutputStream> buffers = new HashMap<Long, ByteArrayOutputStream>();
+        private long buffered;
+
+        void add(int z, int x, int y, byte[] wkb) throws IOException {
+            Long key = ((long) z << 56) | ((long) x << 28) | y;
+            ByteArrayOutputStream buffer = buffers.get(key);
+            if (buffer == null) {
+                buffer = new ByteArrayOutputStream();
+                buffers.put(key, buffer);
+            }
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeInt(wkb.length);
+            out.write(wkb);
+            buffered += 4 + wkb.length;
+            if (buffered > FLUSH_BYTES) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            for (Map.Entry<Long, ByteArrayOutputStream> entry : buffers.entrySet()) {
+                long key = entry.getKey();
+                File file = tileFile((int) (key >>> 56), (int) ((key >>> 28) & 0xFFFFFFF), (int) (key & 0xFFFFFFF));
+                file.getParentFile().mkdirs();
+                OutputStream out = new FileOutputStream(file, true);
+                try {
+                    entry.getValue().writeTo(out);
+                } finally {
+                    out.close();
+                }
+            }
+            buffers.clear();
+            buffered = 0;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.Arch.ArchShape;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.geotools.ArchShape.DbfFieldSizer;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for narrowing and widening the text fields of a .dbf file
+ */
+public class DbfFieldSizerTest
+    extends TestCase
+{
+    private File dbf;
+
+    protected void setUp()
+        throws IOException
+    {
+        dbf = File.createTempFile( "sizer", ".dbf" );
+        String[][] rows = { { "hearth", "N1E1" }, { "posthole", "N2-4 E2-4" }, { "", "N3E3" } };
+        write( dbf, new int[] { 254, 254 }, rows );
+    }
+
+    protected void tearDown()
+    {
+        dbf.delete();
+    }
+
+    public void testFitNarrowsFieldsToLongestValue()
+        throws IOException
+    {
+        long saved = DbfFieldSizer.fit( dbf );
+
+        assertTrue( Arrays.equals( new int[] { 8, 9 }, DbfFieldSizer.getFieldLengths( dbf ) ) );
+        assertEquals( 3 * ( 254 * 2 - 17 ), saved );
+        byte[] bytes = Files.readAllBytes( dbf.toPath() );
+        String records = new String( bytes, 32 + 2 * 32 + 1, 3 * 18, StandardCharsets.US_ASCII );
+        assertEquals( " hearth  N1E1     " + " postholeN2-4 E2-4" + "         N3E3     ", records );
+        assertEquals( 0x1A, bytes[bytes.length - 1] );
+        assertEquals( 1, fieldAddress( bytes, 0 ) );
+        assertEquals( 9, fieldAddress( bytes, 1 ) );
+    }
+
+    public void testWidenKeepsValues()
+        throws IOException
+    {
+        byte[] original = Files.readAllBytes( dbf.toPath() );
+        DbfFieldSizer.fit( dbf );
+        DbfFieldSizer.widen( dbf, DbfFieldSizer.MAX_LENGTH );
+
+        assertTrue( Arrays.equals( new int[] { 254, 254 }, DbfFieldSizer.getFieldLengths( dbf ) ) );
+        assertTrue( Arrays.equals( original, Files.readAllBytes( dbf.toPath() ) ) );
+    }
+
+    //offset of a field in each record, from bytes 12 to 15 of its descriptor
+    private static int fieldAddress( byte[] dbf, int field )
+    {
+        int descriptor = 32 + 32 * field;
+        return ( dbf[descriptor + 12] & 0xFF ) | ( dbf[descriptor + 13] & 0xFF ) << 8
+            | ( dbf[descriptor + 14] & 0xFF ) << 16 | ( dbf[descriptor + 15] & 0xFF ) << 24;
+    }
+
+    //a dBase III file of character fields named F0, F1, ...
+    private static void write( File file, int[] lengths, String[][] rows )
+        throws IOException
+    {
+        int recordLength = 1;
+        for ( int length : lengths )
+        {
+            recordLength += length;
+        }
+        int headerLength = 32 + 32 * lengths.length + 1;
+        int address = 1;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] header = new byte[32];
+        header[0] = 3;
+        header[4] = (byte) rows.length;
+        header[8] = (byte) headerLength;
+        header[9] = (byte) ( headerLength >>> 8 );
+        header[10] = (byte) recordLength;
+        header[11] = (byte) ( recordLength >>> 8 );
+        out.write( header );
+        for ( int f = 0; f < lengths.length; f++ )
+        {
+            byte[] field = new byte[32];
+            field[0] = 'F';
+            field[1] = (byte) ( '0' + f );
+            field[11] = 'C';
+            field[12] = (byte) address;
+            field[13] = (byte) ( address >>> 8 );
+            field[16] = (byte) lengths[f];
+            out.write( field );
+            address += lengths[f];
+        }
+        out.write( 0x0D );
+        for ( String[] row : rows )
+        {
+            out.write( ' ' );
+            for ( int f = 0; f < lengths.length; f++ )
+            {
+                byte[] value = Arrays.copyOf( row[f].getBytes( StandardCharsets.US_ASCII ), lengths[f] );
+                for ( int i = row[f].length(); i < value.length; i++ )
+                {
+                    value[i] = ' ';
+                }
+                out.write( value );
+            }
+        }
+        out.write( 0x1A );
+
+        FileOutputStream stream = new FileOutputStream( file );
+        try
+        {
+            out.writeTo( stream );
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+}
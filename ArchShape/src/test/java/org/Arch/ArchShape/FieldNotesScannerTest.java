@@ -0,0 +1,57 @@
+package org.Arch.ArchShape;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.geotools.ArchShape.FieldNotesScanner;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for finding location tags in the running text of field notes
+ */
+public class FieldNotesScannerTest
+    extends TestCase
+{
+    public void testTagFollowedByDescription() throws IOException
+    {
+        FieldNotesScanner scanner = new FieldNotesScanner( new StringReader( "N2E3: charcoal-stained hearth" ) );
+        assertTrue( scanner.next() );
+        assertEquals( "N2E3", scanner.getTag() );
+        assertEquals( "charcoal-stained hearth", scanner.getDescription() );
+        assertEquals( 1, scanner.getLineNumber() );
+        assertFalse( scanner.next() );
+    }
+
+    public void testDescriptionBeforeTag() throws IOException
+    {
+        FieldNotesScanner scanner = new FieldNotesScanner( new StringReader( "Found a bone awl at 2N 4W." ) );
+        assertTrue( scanner.next() );
+        assertEquals( "2N 4W", scanner.getTag() );
+        assertEquals( "Found a bone awl at", scanner.getDescription() );
+    }
+
+    public void testRangesAndSeveralTagsOnALine() throws IOException
+    {
+        FieldNotesScanner scanner = new FieldNotesScanner( new StringReader(
+                "Unit N2-4E2-4 - plow zone; wall N2 - 4 W4 collapsed\nno tags here\nE3.25N2 sherd" ) );
+        assertTrue( scanner.next() );
+        assertEquals( "N2-4E2-4", scanner.getTag() );
+        assertEquals( "plow zone; wall", scanner.getDescription() );
+        assertTrue( scanner.next() );
+        assertEquals( "N2 - 4 W4", scanner.getTag() );
+        assertEquals( "collapsed", scanner.getDescription() );
+        assertTrue( scanner.next() );
+        assertEquals( "E3.25N2", scanner.getTag() );
+        assertEquals( "sherd", scanner.getDescription() );
+        assertEquals( 3, scanner.getLineNumber() );
+        assertFalse( scanner.next() );
+    }
+
+    public void testWordsAreNotTags() throws IOException
+    {
+        FieldNotesScanner scanner = new FieldNotesScanner( new StringReader(
+                "Level 2 North wall, 12 Nails, see Section 5 and Sn4e5 or N1E1a" ) );
+        assertFalse( scanner.next() );
+    }
+}
@@ -0,0 +1,97 @@
+package org.Arch.ArchShape;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.ArchShape.HilbertSorter;
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the Hilbert curve keys used to order features, and for sorting features by them
+ */
+public class HilbertSorterTest
+    extends TestCase
+{
+    public void testFirstOrderCurve()
+    {
+        assertEquals( 0, HilbertSorter.hilbertIndex( 1, 0, 0 ) );
+        assertEquals( 1, HilbertSorter.hilbertIndex( 1, 0, 1 ) );
+        assertEquals( 2, HilbertSorter.hilbertIndex( 1, 1, 1 ) );
+        assertEquals( 3, HilbertSorter.hilbertIndex( 1, 1, 0 ) );
+    }
+
+    public void testCurveVisitsEveryCellOnceThroughNeighbours()
+    {
+        int order = 4;
+        int side = 1 << order;
+        int[][] cells = new int[side * side][];
+        for ( int x = 0; x < side; x++ )
+        {
+            for ( int y = 0; y < side; y++ )
+            {
+                int d = (int) HilbertSorter.hilbertIndex( order, x, y );
+                assertNull( "cell " + d + " visited twice", cells[d] );
+                cells[d] = new int[] { x, y };
+            }
+        }
+        for ( int d = 1; d < cells.length; d++ )
+        {
+            int step = Math.abs( cells[d][0] - cells[d - 1][0] ) + Math.abs( cells[d][1] - cells[d - 1][1] );
+            assertEquals( "step to cell " + d, 1, step );
+        }
+    }
+
+    public void testNearbyPointsHaveCloseKeys()
+    {
+        long a = HilbertSorter.hilbertKey( -83.0001, 42.0001 );
+        long b = HilbertSorter.hilbertKey( -83.0002, 42.0002 );
+        long far = HilbertSorter.hilbertKey( 10.0, -30.0 );
+        assertTrue( Math.abs( a - b ) < Math.abs( a - far ) );
+    }
+
+    public void testSpilledRunsDoNotKeepTheirValues()
+        throws Exception
+    {
+        SimpleFeatureType type = DataUtilities.createType( "Location", "the_geom:Point,point type:String,excCoord:String" );
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder( type );
+        GeometryFactory factory = new GeometryFactory();
+        final List<SimpleFeature> sorted = new ArrayList<SimpleFeature>();
+        HilbertSorter sorter = new HilbertSorter( feature -> sorted.add( feature ), type, 10, null );
+        try
+        {
+            for ( int i = 0; i < 95; i++ )
+            {
+                builder.add( factory.createPoint( new Coordinate( -85 + i * 0.001, 42 - i * 0.001 ) ) );
+                builder.add( "find" );
+                builder.add( "N" + i + "E" + i ); //unique, as most tags are
+                sorter.add( builder.buildFeature( null ) );
+                //at most one description and one tag per feature of the run in memory
+                assertTrue( sorter.getBufferedValues() <= 1 + 10 );
+            }
+            assertEquals( 9, sorter.getSpilledRuns() );
+            sorter.finish();
+        }
+        finally
+        {
+            sorter.close();
+        }
+
+        assertEquals( 95, sorted.size() );
+        List<String> tags = new ArrayList<String>();
+        for ( SimpleFeature feature : sorted )
+        {
+            tags.add( (String) feature.getAttribute( "excCoord" ) );
+        }
+        for ( int i = 0; i < 95; i++ )
+        {
+            assertTrue( tags.contains( "N" + i + "E" + i ) );
+        }
+    }
+}
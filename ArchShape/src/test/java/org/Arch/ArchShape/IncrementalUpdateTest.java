@@ -0,0 +1,189 @@
+package org.Arch.ArchShape;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.geotools.ArchShape.ConversionJob;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.simple.SimpleFeatureIterator;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for bringing the shapefiles of an earlier conversion up to date in place
+ */
+public class IncrementalUpdateTest
+    extends TestCase
+{
+    private File dir;
+    private File datumFile;
+    private File tagFile;
+
+    protected void setUp()
+        throws IOException
+    {
+        dir = File.createTempFile( "incremental", "" );
+        if ( !dir.delete() || !dir.mkdir() )
+        {
+            throw new IOException( "Cannot create " + dir );
+        }
+        datumFile = new File( dir, "datum.csv" );
+        tagFile = new File( dir, "tags.csv" );
+        write( datumFile, "latitude,longitude,label", "42.2917,-85.5872,Site 1" );
+    }
+
+    protected void tearDown()
+    {
+        File[] files = dir.listFiles();
+        for ( File file : files == null ? new File[0] : files )
+        {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testAddedRemovedAndDuplicatedRows()
+        throws Exception
+    {
+        write( tagFile, "id,tag,description", "1,N1E1,hearth", "2,N2E2,posthole", "3,N2E2,posthole", "4,N3E3,sherd" );
+        File[] written = convert( null );
+        assertEquals( tags( "N0E0", "N1E1", "N2E2", "N2E2", "N3E3" ), tags( written[0] ) );
+
+        //one copy of a duplicated row goes, and a new row arrives twice
+        write( tagFile, "id,tag,description", "1,N1E1,hearth", "3,N2E2,posthole", "5,N4E4,awl", "4,N3E3,sherd",
+               "6,N4E4,awl" );
+        written = convert( "+2 -1" );
+        assertEquals( tags( "N0E0", "N1E1", "N2E2", "N3E3", "N4E4", "N4E4" ), tags( written[0] ) );
+
+        //the manifest written by the update describes the shapefile, so nothing changes the next time
+        written = convert( "+0 -0" );
+        assertEquals( tags( "N0E0", "N1E1", "N2E2", "N3E3", "N4E4", "N4E4" ), tags( written[0] ) );
+
+        write( tagFile, "id,tag,description", "1,N1E1,hearth", "3,N2E2,posthole", "4,N3E3,sherd" );
+        written = convert( "+0 -2" );
+        assertEquals( tags( "N0E0", "N1E1", "N2E2", "N3E3" ), tags( written[0] ) );
+    }
+
+    public void testRemovedRowsAreFlaggedInPlace()
+        throws Exception
+    {
+        write( tagFile, "id,tag,description", "1,N1E1,hearth", "2,N2E2,posthole", "3,N3E3,sherd" );
+        File[] written = convert( null );
+        long shpLength = written[0].length();
+        long dbfLength = new File( dir, written[0].getName().replaceFirst( "\\.shp$", ".dbf" ) ).length();
+
+        write( tagFile, "id,tag,description", "1,N1E1,hearth", "3,N3E3,sherd" );
+        written = convert( "+0 -1" );
+        assertEquals( tags( "N0E0", "N1E1", "N3E3" ), tags( written[0] ) );
+        //the record stays where it was, flagged as deleted, and nothing else is written
+        assertEquals( shpLength, written[0].length() );
+        assertEquals( dbfLength, new File( dir, written[0].getName().replaceFirst( "\\.shp$", ".dbf" ) ).length() );
+    }
+
+    public void testAppendedValuesLongerThanTheFields()
+        throws Exception
+    {
+        write( tagFile, "id,tag,description", "1,N1E1,awl" );
+        File[] written = convert( null );
+
+        String description = "charcoal lens under the collapsed north wall";
+        write( tagFile, "id,tag,description", "1,N1E1,awl", "2,N12E34," + description );
+        written = convert( "+1 -0" );
+        assertEquals( tags( "N0E0", "N12E34", "N1E1" ), tags( written[0] ) );
+        assertTrue( descriptions( written[0] ).contains( description ) );
+    }
+
+    //an incremental conversion, which must update the Point shapefile as given or, if null, convert in full
+    private File[] convert( String pointChanges )
+        throws Exception
+    {
+        ConversionJob job = new ConversionJob( datumFile, tagFile, dir );
+        job.setIncremental( true );
+        job.setMonitored( false );
+        File[] written = job.call();
+        if ( pointChanges == null )
+        {
+            assertNull( job.getUpdateSummary() );
+        }
+        else
+        {
+            assertTrue( job.getUpdateSummary(),
+                        job.getUpdateSummary().startsWith( "updated in place: " + written[0].getName() + " "
+                            + pointChanges + " " ) );
+        }
+        return written;
+    }
+
+    //the location tags of the features in a shapefile, the datum's N0E0 among them, sorted
+    private static List<String> tags( File shapefile )
+        throws IOException
+    {
+        List<String> tags = new ArrayList<String>();
+        ShapefileDataStore store = new ShapefileDataStore( shapefile.toURI().toURL() );
+        try
+        {
+            SimpleFeatureIterator features = store.getFeatureSource().getFeatures().features();
+            try
+            {
+                while ( features.hasNext() )
+                {
+                    tags.add( (String) features.next().getAttribute( "excCoord" ) );
+                }
+            }
+            finally
+            {
+                features.close();
+            }
+        }
+        finally
+        {
+            store.dispose();
+        }
+        Collections.sort( tags );
+        return tags;
+    }
+
+    private static List<String> descriptions( File shapefile )
+        throws IOException
+    {
+        List<String> descriptions = new ArrayList<String>();
+        ShapefileDataStore store = new ShapefileDataStore( shapefile.toURI().toURL() );
+        try
+        {
+            SimpleFeatureIterator features = store.getFeatureSource().getFeatures().features();
+            try
+            {
+                while ( features.hasNext() )
+                {
+                    descriptions.add( (String) features.next().getAttribute( 1 ) );
+                }
+            }
+            finally
+            {
+                features.close();
+            }
+        }
+        finally
+        {
+            store.dispose();
+        }
+        return descriptions;
+    }
+
+    private static List<String> tags( String... tags )
+    {
+        return Arrays.asList( tags );
+    }
+
+    private static void write( File file, String... lines )
+        throws IOException
+    {
+        Files.write( file.toPath(), Arrays.asList( lines ), StandardCharsets.UTF_8 );
+    }
+}
@@ -0,0 +1,80 @@
+package org.Arch.ArchShape;
+
+import org.geotools.ArchShape.CsvFields;
+import org.geotools.ArchShape.LocationTagParser;
+import org.geotools.ArchShape.LocationTagParser.Kind;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the location tag parser and the csv field splitter
+ */
+public class LocationTagParserTest 
+    extends TestCase
+{
+    private final LocationTagParser parser = new LocationTagParser();
+
+    public void testPoint()
+    {
+        assertEquals( Kind.POINT, parser.parse( "N1E1" ) );
+        assertEquals( 1.0, parser.getNorthFrom() );
+        assertEquals( 1.0, parser.getEastTo() );
+    }
+
+    public void testDirectionAfterNumberAndNegativeDirections()
+    {
+        assertEquals( Kind.POINT, parser.parse( "2s 4W" ) );
+        assertEquals( -2.0, parser.getNorthFrom() );
+        assertEquals( -4.0, parser.getEastFrom() );
+    }
+
+    public void testEastWestFirst()
+    {
+        assertEquals( Kind.POINT, parser.parse( "E3.25N2" ) );
+        assertEquals( 2.0, parser.getNorthFrom() );
+        assertEquals( 3.25, parser.getEastFrom() );
+    }
+
+    public void testLine()
+    {
+        assertEquals( Kind.LINE, parser.parse( "2-4N 4W" ) );
+        assertEquals( 2.0, parser.getNorthFrom() );
+        assertEquals( 4.0, parser.getNorthTo() );
+        assertEquals( -4.0, parser.getEastFrom() );
+        assertEquals( -4.0, parser.getEastTo() );
+    }
+
+    public void testPolygonWithSpacesAroundDash()
+    {
+        assertEquals( Kind.POLYGON, parser.parse( "N2 - 4E2-4" ) );
+        assertEquals( 4.0, parser.getNorthTo() );
+        assertEquals( 2.0, parser.getEastFrom() );
+    }
+
+    public void testMalformed()
+    {
+        String[] tags = { "", "N1", "N1N1", "NE", "N1E1x", "1E1" };
+        for ( String tag : tags )
+        {
+            try
+            {
+                parser.parse( tag );
+                fail( "Expected " + tag + " to be rejected" );
+            }
+            catch ( IllegalArgumentException expected )
+            {
+                // expected
+            }
+        }
+    }
+
+    public void testCsvFields()
+    {
+        CsvFields fields = new CsvFields();
+        assertEquals( 3, fields.split( "1,\"N1E1, north\",\"a \"\"red\"\" pot\"" ) );
+        assertEquals( "N1E1, north", fields.get( 1 ) );
+        assertEquals( "a \"red\" pot", fields.get( 2 ) );
+        assertEquals( 3, fields.split( "1,," ) );
+        assertEquals( "", fields.get( 2 ) );
+    }
+}
@@ -0,0 +1,134 @@
+package org.Arch.ArchShape;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.ArchShape.MappedCsvReader;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for reading csv files in parallel chunks
+ */
+public class MappedCsvReaderTest
+    extends TestCase
+{
+    private File csv;
+    private ForkJoinPool pool;
+
+    protected void setUp()
+        throws IOException
+    {
+        csv = File.createTempFile( "mapped", ".csv" );
+        pool = new ForkJoinPool( 2 );
+    }
+
+    protected void tearDown()
+    {
+        pool.shutdown();
+        csv.delete();
+    }
+
+    public void testQuotedCommasAndEscapedQuotes()
+        throws IOException
+    {
+        write( "N1E1,\"hearth, charcoal\",\"a \"\"bone\"\" awl\"\n\"N2E2\",\"\",sherd\n" );
+        List<String> records = read( 4 );
+        assertEquals( Arrays.asList( "N1E1|hearth, charcoal|a \"bone\" awl", "N2E2||sherd" ), records );
+    }
+
+    public void testQuotedNewlinesAcrossChunks()
+        throws IOException
+    {
+        StringBuilder text = new StringBuilder();
+        for ( int i = 0; i < 20; i++ )
+        {
+            text.append( "N" ).append( i ).append( "E1,\"wall\nwith \"\"two\"\"\nlines\",find\n" );
+        }
+        write( text.toString() );
+        List<String> records = read( 8 );
+        assertEquals( 20, records.size() );
+        for ( int i = 0; i < 20; i++ )
+        {
+            assertEquals( "N" + i + "E1|wall\nwith \"two\"\nlines|find", records.get( i ) );
+        }
+    }
+
+    public void testStrayQuotesDoNotMergeChunks()
+        throws IOException
+    {
+        StringBuilder text = new StringBuilder();
+        for ( int i = 0; i < 20; i++ )
+        {
+            text.append( "12,5\" posthole,N" ).append( i ).append( "E1\n" );
+        }
+        write( text.toString() );
+        AtomicInteger chunks = new AtomicInteger();
+        List<String> records = read( 16, chunks );
+        assertEquals( 20, records.size() );
+        assertEquals( "12|5\" posthole|N0E1", records.get( 0 ) );
+        assertEquals( "12|5\" posthole|N19E1", records.get( 19 ) );
+        assertEquals( 20, chunks.get() ); //one line per chunk, as none of the quotes opens a quoted field
+    }
+
+    public void testBytesInFlightAreBounded()
+        throws IOException
+    {
+        StringBuilder text = new StringBuilder();
+        for ( int i = 0; i < 50; i++ )
+        {
+            text.append( i ).append( ",N" ).append( i ).append( "E1,sherd\n" ); //13 to 15 bytes
+        }
+        write( text.toString() );
+        final AtomicInteger started = new AtomicInteger();
+        final int[] handed = new int[1];
+        final int[] mostHeld = new int[1];
+        MappedCsvReader reader = new MappedCsvReader( csv.toPath() );
+        reader.setChunkSize( 1 );
+        reader.setMaxBytesInFlight( 30 ); //room for two lines, never three
+        reader.setPool( pool );
+        reader.<String>read( 0, () -> {
+            started.incrementAndGet();
+            return ( fields, endOffset ) -> fields[1];
+        }, ( value, endOffset ) -> {
+            mostHeld[0] = Math.max( mostHeld[0], started.get() - handed[0] );
+            handed[0]++;
+        } );
+        assertEquals( 50, handed[0] );
+        assertTrue( "held " + mostHeld[0] + " chunks of one line", mostHeld[0] <= 2 );
+    }
+
+    private void write( String text )
+        throws IOException
+    {
+        Files.write( csv.toPath(), text.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    private List<String> read( int chunkSize )
+        throws IOException
+    {
+        return read( chunkSize, new AtomicInteger() );
+    }
+
+    //each record's fields joined with |, counting the chunks by the mappers they take
+    private List<String> read( int chunkSize, final AtomicInteger chunks )
+        throws IOException
+    {
+        MappedCsvReader reader = new MappedCsvReader( csv.toPath() );
+        reader.setChunkSize( chunkSize );
+        reader.setPool( pool );
+        final List<String> records = new ArrayList<String>();
+        reader.<String>read( 0, () -> {
+            chunks.incrementAndGet();
+            return ( fields, endOffset ) -> String.join( "|", fields );
+        }, ( value, endOffset ) -> records.add( value ) );
+        return records;
+    }
+}
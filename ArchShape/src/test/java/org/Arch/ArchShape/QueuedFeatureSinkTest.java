@@ -0,0 +1,110 @@
+package org.Arch.ArchShape;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.ArchShape.QueuedFeatureSink;
+import org.geotools.ArchShape.StreamingShapefileWriter;
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for handing features to shapefile writers on threads of their own
+ */
+public class QueuedFeatureSinkTest
+    extends TestCase
+{
+    private File dir;
+    private SimpleFeatureType type;
+    private SimpleFeature feature;
+
+    protected void setUp()
+        throws Exception
+    {
+        dir = File.createTempFile( "queued", "" );
+        if ( !dir.delete() || !dir.mkdir() )
+        {
+            throw new IOException( "Cannot create " + dir );
+        }
+        type = DataUtilities.createType( "Location", "the_geom:Point,point type:String,excCoord:String" );
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder( type );
+        builder.set( "the_geom", new GeometryFactory().createPoint( new Coordinate( 1, 2 ) ) );
+        builder.set( "excCoord", "N1E1" );
+        feature = builder.buildFeature( null );
+    }
+
+    protected void tearDown()
+    {
+        File[] files = dir.listFiles();
+        for ( File file : files == null ? new File[0] : files )
+        {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    //as at the end of a conversion: one writer fails on close, so the others, already finished, are aborted
+    public void testAbortAfterFinishWhenAnotherWriterFails()
+        throws Exception
+    {
+        final CountDownLatch gate = new CountDownLatch( 1 );
+        QueuedFeatureSink failing = new QueuedFeatureSink( new StreamingShapefileWriter( new File( dir, "Failing.shp" ), type )
+        {
+            @Override
+            public void add( SimpleFeature feature )
+                throws IOException
+            {
+                throw new IOException( "disk full" );
+            }
+        }, "failing" );
+        final QueuedFeatureSink slow = new QueuedFeatureSink( new StreamingShapefileWriter( new File( dir, "Slow.shp" ), type )
+        {
+            @Override
+            public void add( SimpleFeature feature )
+                throws IOException
+            {
+                try
+                {
+                    gate.await();
+                }
+                catch ( InterruptedException e )
+                {
+                    throw new IOException( e );
+                }
+                super.add( feature );
+            }
+        }, "slow" );
+
+        failing.add( feature );
+        for ( int i = 0; i < 3; i++ )
+        {
+            slow.add( feature ); //the first holds the writer thread at the gate, the others and END wait in the queue
+        }
+        failing.finish();
+        slow.finish();
+        try
+        {
+            failing.close();
+            fail( "the failing writer closed" );
+        }
+        catch ( IOException e )
+        {
+            //expected
+        }
+
+        Thread aborting = new Thread( () -> slow.abort() );
+        aborting.start();
+        Thread.sleep( 200 ); //the queue has been cleared by now
+        gate.countDown();
+        aborting.join( TimeUnit.SECONDS.toMillis( 10 ) );
+        assertFalse( "abort is still waiting for the writer thread", aborting.isAlive() );
+    }
+}
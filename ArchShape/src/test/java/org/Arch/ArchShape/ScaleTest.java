@@ -0,0 +1,178 @@
+package org.Arch.ArchShape;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.geotools.ArchShape.ConversionJob;
+import org.geotools.ArchShape.ConversionMetrics;
+import org.geotools.ArchShape.LocalProjection;
+import org.geotools.ArchShape.LocationTagParser;
+import org.geotools.ArchShape.SyntheticSite;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeature;
+
+import junit.framework.TestCase;
+
+/**
+ * Converts made up sites of growing size and checks each conversion against time and heap budgets and
+ * the geometry of every feature written. The sizes are slow to run, so nothing happens unless they are
+ * given as a comma separated list in the archshape.scale system property, as the scale profile does:
+ *
+ * <pre>
+ * mvn -Pscale test -Darchshape.scale=1000,100000,10000000
+ * </pre>
+ *
+ * Budgets are set with archshape.scale.nanosPerRow and archshape.scale.heapMegabytes.
+ */
+public class ScaleTest
+    extends TestCase
+{
+    private static final double TOLERANCE = 1e-9; //degrees, well under a millimetre
+
+    public void testConversionAtScale()
+        throws Exception
+    {
+        String sizes = System.getProperty( "archshape.scale", "" ).trim();
+        if ( sizes.isEmpty() )
+        {
+            return;
+        }
+        long nanosPerRow = Long.getLong( "archshape.scale.nanosPerRow", 20000 );
+        long heapBytes = Long.getLong( "archshape.scale.heapMegabytes", 1024 ) << 20;
+
+        for ( String size : sizes.split( "," ) )
+        {
+            long rows = Long.parseLong( size.trim() );
+            File dir = createDirectory( "archshape-scale-" + rows );
+            try
+            {
+                convert( rows, dir, nanosPerRow, heapBytes );
+            }
+            finally
+            {
+                delete( dir );
+            }
+        }
+    }
+
+    private void convert( long rows, File dir, long nanosPerRow, long heapBytes )
+        throws Exception
+    {
+        SyntheticSite site = new SyntheticSite();
+        site.setRows( rows );
+        site.setSites( 4 );
+        site.setMix( 0.2, 0.1 );
+        site.setRepeatRate( 0.3 );
+        site.setMalformedRate( 0.001 );
+        File datumFile = new File( dir, "datum.csv" );
+        File tagFile = new File( dir, "tags.csv" );
+        site.write( datumFile, tagFile );
+
+        ConversionJob job = new ConversionJob( datumFile, tagFile, dir );
+        job.setRejectBadRows( true );
+        job.setMonitored( false );
+        File[] written = job.call();
+        ConversionMetrics metrics = job.getMetrics();
+        System.out.println( rows + " rows in " + metrics.getElapsedMillis() + " ms, peak live heap "
+            + ( metrics.getPeakHeapBytes() >> 20 ) + " MB" );
+
+        //a fixed allowance for starting up, then a budget per row
+        assertTrue( rows + " rows took " + metrics.getElapsedMillis() + " ms",
+                    metrics.getElapsedMillis() * 1000000 <= 10000000000L + rows * nanosPerRow );
+        //the heap left after collections, so garbage the collector has not got round to does not count
+        assertTrue( rows + " rows kept " + metrics.getPeakHeapBytes() + " bytes of heap after a collection",
+                    metrics.getPeakHeapBytes() <= heapBytes );
+
+        assertEquals( rows, metrics.getRowsRead() );
+        assertEquals( site.getPoints() + 4, metrics.getPointCount() );
+        assertEquals( site.getLines(), metrics.getLineCount() );
+        assertEquals( site.getPolygons(), metrics.getPolygonCount() );
+        assertEquals( site.getMalformedTags(), metrics.getFailureCount( ConversionMetrics.Failure.MALFORMED_TAG ) );
+        assertEquals( site.getMissingColumns(), metrics.getFailureCount( ConversionMetrics.Failure.MISSING_COLUMN ) );
+
+        assertEquals( site.getPoints() + 4, check( written[0], site ) );
+        assertEquals( site.getLines(), check( written[1], site ) );
+        assertEquals( site.getPolygons(), check( written[2], site ) );
+    }
+
+    //checks every feature lies where its tag puts it around one of the datums, and counts them
+    private static long check( File shapefile, SyntheticSite site )
+        throws IOException
+    {
+        Envelope extent = site.getExtent();
+        LocalProjection[] datums = site.getDatums();
+        LocationTagParser parser = new LocationTagParser();
+        long count = 0;
+        ShapefileDataStore store = new ShapefileDataStore( shapefile.toURI().toURL() );
+        try
+        {
+            SimpleFeatureIterator features = store.getFeatureSource().getFeatures().features();
+            try
+            {
+                while ( features.hasNext() )
+                {
+                    SimpleFeature feature = features.next();
+                    Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                    String tag = (String) feature.getAttribute( "excCoord" );
+                    assertTrue( tag + " is not valid", geometry.isValid() );
+                    assertTrue( tag + " lies outside the site", extent.contains( geometry.getEnvelopeInternal() ) );
+
+                    parser.parse( tag );
+                    boolean found = false;
+                    for ( int i = 0; i < datums.length && !found; i++ )
+                    {
+                        found = matches( geometry.getEnvelopeInternal(), datums[i], parser );
+                    }
+                    assertTrue( tag + " is not where its tag puts it: " + geometry, found );
+                    count++;
+                }
+            }
+            finally
+            {
+                features.close();
+            }
+        }
+        finally
+        {
+            store.dispose();
+        }
+        return count;
+    }
+
+    private static boolean matches( Envelope envelope, LocalProjection datum, LocationTagParser parser )
+    {
+        Envelope expected = new Envelope();
+        expected.expandToInclude( datum.toCoordinate( parser.getEastFrom(), parser.getNorthFrom() ) );
+        expected.expandToInclude( datum.toCoordinate( parser.getEastTo(), parser.getNorthTo() ) );
+        expected.expandToInclude( datum.toCoordinate( parser.getEastFrom(), parser.getNorthTo() ) );
+        expected.expandToInclude( datum.toCoordinate( parser.getEastTo(), parser.getNorthFrom() ) );
+        return Math.abs( envelope.getMinX() - expected.getMinX() ) < TOLERANCE
+            && Math.abs( envelope.getMaxX() - expected.getMaxX() ) < TOLERANCE
+            && Math.abs( envelope.getMinY() - expected.getMinY() ) < TOLERANCE
+            && Math.abs( envelope.getMaxY() - expected.getMaxY() ) < TOLERANCE;
+    }
+
+    private static File createDirectory( String prefix )
+        throws IOException
+    {
+        File dir = File.createTempFile( prefix, "" );
+        if ( !dir.delete() || !dir.mkdir() )
+        {
+            throw new IOException( "Cannot create " + dir );
+        }
+        return dir;
+    }
+
+    private static void delete( File dir )
+    {
+        File[] files = dir.listFiles();
+        for ( File file : files == null ? new File[0] : files )
+        {
+            file.delete();
+        }
+        dir.delete();
+    }
+}
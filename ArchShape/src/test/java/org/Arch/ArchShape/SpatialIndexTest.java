@@ -0,0 +1,141 @@
+package org.Arch.ArchShape;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.geotools.ArchShape.LocationTagParser;
+import org.geotools.ArchShape.SpatialIndex;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the packed R-tree written next to converted shapefiles
+ */
+public class SpatialIndexTest
+    extends TestCase
+{
+    private final GeometryFactory factory = new GeometryFactory();
+    private File file;
+    private SpatialIndex index;
+
+    //a point on every metre of a 100 by 100 m grid in a projected CRS, and a unit over part of it
+    protected void setUp()
+        throws IOException
+    {
+        file = File.createTempFile( "index", ".sidx" );
+        SpatialIndex.Builder builder = new SpatialIndex.Builder( file, false );
+        try
+        {
+            for ( int x = 0; x < 100; x++ )
+            {
+                for ( int y = 0; y < 100; y++ )
+                {
+                    builder.add( LocationTagParser.Kind.POINT, "N" + y + "E" + x, "find",
+                                 factory.createPoint( new Coordinate( x, y ) ) );
+                }
+            }
+            builder.add( LocationTagParser.Kind.POLYGON, "N2-4E2-4", "unit",
+                         factory.toGeometry( new Envelope( 2, 4, 2, 4 ) ) );
+            builder.finish();
+        }
+        finally
+        {
+            builder.close();
+        }
+        index = SpatialIndex.open( file );
+    }
+
+    protected void tearDown()
+    {
+        file.delete();
+    }
+
+    public void testWindow()
+        throws IOException
+    {
+        assertEquals( 10001, index.size() );
+        assertEquals( tags( "N10E10", "N10E11", "N11E10", "N11E11" ),
+                      tags( index.window( new Envelope( 9.5, 11.5, 9.5, 11.5 ) ) ) );
+    }
+
+    public void testWithinUnit()
+        throws IOException
+    {
+        List<SpatialIndex.Hit> units = index.find( "n2-4 e2-4" );
+        assertEquals( 1, units.size() );
+        assertEquals( 10, index.within( units.get( 0 ).getGeometry() ).size() ); //nine points and the unit
+    }
+
+    public void testWithinDistance()
+        throws IOException
+    {
+        assertEquals( tags( "N49E50", "N50E49", "N50E50", "N50E51", "N51E50" ),
+                      tags( index.withinDistance( factory.createPoint( new Coordinate( 50, 50 ) ), 1 ) ) );
+    }
+
+    public void testNearest()
+        throws IOException
+    {
+        List<SpatialIndex.Hit> nearest = index.nearest( new Coordinate( 70.1, 30.2 ), 3 );
+        assertEquals( "N30E70", nearest.get( 0 ).getTag() );
+        assertEquals( Math.hypot( 0.1, 0.2 ), nearest.get( 0 ).getDistance(), 1e-9 );
+        assertEquals( "N30E71", nearest.get( 2 ).getTag() );
+        assertTrue( nearest.get( 1 ).getDistance() <= nearest.get( 2 ).getDistance() );
+    }
+
+    public void testGeographicDistanceIsInMetres()
+        throws IOException
+    {
+        File geographic = File.createTempFile( "geographic", ".sidx" );
+        try
+        {
+            SpatialIndex.Builder builder = new SpatialIndex.Builder( geographic, true );
+            try
+            {
+                //a thousandth of a degree of latitude is about 111 m
+                builder.add( LocationTagParser.Kind.POINT, "N0E0", "datum", factory.createPoint( new Coordinate( -85.5872, 42.2917 ) ) );
+                builder.add( LocationTagParser.Kind.POINT, "N111E0", "find", factory.createPoint( new Coordinate( -85.5872, 42.2927 ) ) );
+                builder.finish();
+            }
+            finally
+            {
+                builder.close();
+            }
+            SpatialIndex degrees = SpatialIndex.open( geographic );
+            List<SpatialIndex.Hit> nearest = degrees.nearest( new Coordinate( -85.5872, 42.2917 ), 2 );
+            assertEquals( 0, nearest.get( 0 ).getDistance(), 1e-9 );
+            assertEquals( 111.1, nearest.get( 1 ).getDistance(), 0.5 );
+            assertEquals( 1, degrees.withinDistance( nearest.get( 0 ).getGeometry(), 100 ).size() );
+            assertEquals( 2, degrees.withinDistance( nearest.get( 0 ).getGeometry(), 120 ).size() );
+        }
+        finally
+        {
+            geographic.delete();
+        }
+    }
+
+    private static List<String> tags( String... tags )
+    {
+        List<String> sorted = new ArrayList<String>();
+        Collections.addAll( sorted, tags );
+        Collections.sort( sorted );
+        return sorted;
+    }
+
+    private static List<String> tags( List<SpatialIndex.Hit> hits )
+    {
+        List<String> sorted = new ArrayList<String>();
+        for ( SpatialIndex.Hit hit : hits )
+        {
+            sorted.add( hit.getTag() );
+        }
+        Collections.sort( sorted );
+        return sorted;
+    }
+}